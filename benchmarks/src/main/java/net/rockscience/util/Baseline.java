@@ -0,0 +1,53 @@
+package net.rockscience.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.rockscience.util.cache.KeyedObjectCacheBenchmark;
+
+/**
+ * Runs every benchmark and writes all the results to one JSON file, for keeping as a
+ * baseline and comparing against the next release. Everything runs single threaded,
+ * then {@link KeyedObjectCacheBenchmark#hit} runs again at 2 to 64 threads to show
+ * contention.
+ * <p>
+ * Takes the usual JMH options, e.g. -wi 1 -i 3 for a quicker run. The results go to the
+ * file given with -rff, baseline.json by default.
+ *
+ * @author Bob Damiano
+ */
+public class Baseline {
+
+	static final int[] THREADS = { 2, 4, 8, 16, 32, 64 };
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		String out = cmd.getResult().orElse("baseline.json");
+		String contended = KeyedObjectCacheBenchmark.class.getName() + "\\.hit$";
+
+		List<RunResult> results = new ArrayList<>();
+		results.addAll(new Runner(new OptionsBuilder().parent(cmd)
+				.include("net\\.rockscience\\.util\\..*Benchmark")
+				.threads(1)
+				.build()).run());
+
+		for (int threads : THREADS) {
+			results.addAll(new Runner(new OptionsBuilder().parent(cmd)
+					.include(contended)
+					.threads(threads)
+					.build()).run());
+		}
+
+		ResultFormatFactory.getInstance(ResultFormatType.JSON, out).writeOut(results);
+		System.out.println("Wrote " + results.size() + " results to " + out);
+	}
+}
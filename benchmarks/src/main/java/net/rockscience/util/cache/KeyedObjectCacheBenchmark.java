@@ -0,0 +1,96 @@
+package net.rockscience.util.cache;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.rockscience.util.cache.KeyedObjectCache.Cacheable;
+
+/**
+ * Hits and misses on a {@link KeyedObjectCache}, single lock and segmented, with each
+ * eviction policy. Throughput is summed over all threads, so running {@link #hit} with
+ * more threads (-t, or {@link net.rockscience.util.Baseline}) shows how hits scale under
+ * contention.
+ *
+ * @author bdamiano
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyedObjectCacheBenchmark {
+
+	static final int KEYS = 1024;
+
+	@Param({ "LRU", "TINY_LFU" })
+	EvictionPolicy policy;
+
+	@Param({ "1", "16" })
+	int segments;
+
+	private String[] keys;
+	private KeyedObjectCache<String, Thing> cached;
+	private KeyedObjectCache<String, Thing> uncached;
+
+	@Setup
+	public void setUp() {
+		keys = new String[KEYS];
+		for (int i = 0; i < KEYS; i++) {
+			keys[i] = "key-" + i;
+		}
+
+		// room to spare, so every key fits in its segment even when they spread unevenly
+		cached = new KeyedObjectCache<String, Thing>(KEYS * 2, k -> new Thing(-1))
+				.withEvictionPolicy(policy)
+				.withConcurrencyLevel(segments);
+		for (String k : keys) {
+			cached.getObject(k);
+		}
+
+		// objects with no cache time are never fresh, so every lookup goes to the repo
+		uncached = new KeyedObjectCache<String, Thing>(KEYS, k -> new Thing(0))
+				.withEvictionPolicy(policy)
+				.withConcurrencyLevel(segments);
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next = ThreadLocalRandom.current().nextInt(KEYS);
+	}
+
+	@Benchmark
+	public Thing hit(Cursor c) {
+		return cached.getObject(keys[c.next++ & (KEYS - 1)]);
+	}
+
+	@Benchmark
+	public Thing miss(Cursor c) {
+		return uncached.getObject(keys[c.next++ & (KEYS - 1)]);
+	}
+
+	public static class Thing implements Cacheable {
+		private final int cacheSeconds;
+
+		Thing(int cacheSeconds) {
+			this.cacheSeconds = cacheSeconds;
+		}
+
+		@Override
+		public int getCacheSeconds() {
+			return cacheSeconds;
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package net.rockscience.util.cache;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.rockscience.util.cache.KeyedObjectCacheBenchmark.Thing;
+
+/**
+ * Hits on a {@link LongKeyedObjectCache} against the same on a {@link KeyedObjectCache}
+ * with boxed Long keys.
+ *
+ * @author bdamiano
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LongKeyedObjectCacheBenchmark {
+
+	static final int KEYS = 1024;
+
+	private LongKeyedObjectCache<Thing> primitive;
+	private KeyedObjectCache<Long, Thing> boxed;
+
+	@Setup
+	public void setUp() {
+		primitive = new LongKeyedObjectCache<>(KEYS, k -> new Thing(-1));
+		boxed = new KeyedObjectCache<>(KEYS, k -> new Thing(-1));
+		for (long k = 0; k < KEYS; k++) {
+			primitive.getObject(k);
+			boxed.getObject(k);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		long next = ThreadLocalRandom.current().nextInt(KEYS);
+	}
+
+	@Benchmark
+	public Thing primitiveHit(Cursor c) {
+		return primitive.getObject(c.next++ & (KEYS - 1));
+	}
+
+	@Benchmark
+	public Thing boxedHit(Cursor c) {
+		return boxed.getObject(c.next++ & (KEYS - 1));
+	}
+}
@@ -0,0 +1,72 @@
+package net.rockscience.util.date;
+
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building {@link MultizoneDateTime}s and converting them between zones
+ *
+ * @author Bob Damiano
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultizoneDateTimeBenchmark {
+
+	private LocalDateTime local;
+	private MultizoneDateTime utc;
+	private DateTimeFormatter format;
+
+	@Setup
+	public void setUp() {
+		local = LocalDateTime.of(2024, 3, 10, 6, 30);
+		utc = MultizoneDateTime.fromUtc(local);
+		format = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+	}
+
+	@Benchmark
+	public MultizoneDateTime fromUtc() {
+		return MultizoneDateTime.fromUtc(local);
+	}
+
+	@Benchmark
+	public MultizoneDateTime fromEt() {
+		return MultizoneDateTime.fromEt(local);
+	}
+
+	@Benchmark
+	public ZonedDateTime getUtcSameZone() {
+		return utc.getUtc();
+	}
+
+	@Benchmark
+	public ZonedDateTime getEt() {
+		return utc.getEt();
+	}
+
+	@Benchmark
+	public LocalDateTime utcLocalToEtLocal() {
+		return MultizoneDateTime.toEtLocal(MultizoneDateTime.fromUtc(local));
+	}
+
+	@Benchmark
+	public String format() {
+		return utc.format(format);
+	}
+}
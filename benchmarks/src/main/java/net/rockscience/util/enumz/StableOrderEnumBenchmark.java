@@ -0,0 +1,76 @@
+package net.rockscience.util.enumz;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.rockscience.util.enumz.StableOrderEnum.HasStableCode;
+
+/**
+ * {@link StableOrderEnum#fromCode} for the first and last of 16 values and for a code
+ * that isn't there.
+ *
+ * @author Bob Damiano
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StableOrderEnumBenchmark {
+
+	@Param({ "100", "1500", "9999" })
+	int code;
+
+	private Color[] values;
+	private Integer boxedCode;
+
+	@Setup
+	public void setUp() {
+		values = Color.values();
+		boxedCode = code;
+	}
+
+	@Benchmark
+	public Color fromCode() {
+		return StableOrderEnum.fromCode(values, boxedCode);
+	}
+
+	@Benchmark
+	public Color fromCodeWithValues() {
+		// what most callers write: values() copies the array every time
+		return StableOrderEnum.fromCode(Color.values(), boxedCode);
+	}
+
+	@Benchmark
+	public Integer toCode() {
+		return StableOrderEnum.toCode(Color.WHITE);
+	}
+
+	public enum Color implements HasStableCode {
+		RED(100), ORANGE(200), YELLOW(300), GREEN(400), BLUE(500), INDIGO(600), VIOLET(700), BLACK(800),
+		GREY(900), BROWN(1000), PINK(1100), CYAN(1200), MAGENTA(1300), OLIVE(1400), NAVY(1450), WHITE(1500);
+
+		private final Integer stableCode;
+
+		Color(int stableCode) {
+			this.stableCode = stableCode;
+		}
+
+		@Override
+		public Integer getStableCode() {
+			return stableCode;
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package net.rockscience.util.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding a camera-sized JPEG to a target width: the full decode then scale, against the
+ * subsampled decode. Run with {@code -prof gc} to compare allocation per decode.
+ *
+ * @author bob damiano
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageDecodeBenchmark {
+
+	@Param({ "4032" })
+	int sourceWidth;
+
+	@Param({ "1500", "300" })
+	int targetWidth;
+
+	private byte[] jpeg;
+
+	@Setup
+	public void setUp() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		ImageIO.write(ImageUtilBenchmark.testImage(sourceWidth, sourceWidth * 3 / 4), "jpg", os);
+		jpeg = os.toByteArray();
+	}
+
+	@Benchmark
+	public BufferedImage fullDecodeThenScale() throws IOException {
+		BufferedImage full = ImageUtil.bufferedImageFromStream(new ByteArrayInputStream(jpeg));
+		return ImageUtil.scaleImageToMaxTargetWidth(full, targetWidth);
+	}
+
+	@Benchmark
+	public BufferedImage subsampledDecode() throws IOException {
+		return ImageUtil.bufferedImageFromStream(new ByteArrayInputStream(jpeg), targetWidth);
+	}
+}
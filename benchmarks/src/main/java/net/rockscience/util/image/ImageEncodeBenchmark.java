@@ -0,0 +1,55 @@
+package net.rockscience.util.image;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Encoding a max width image: {@link ImageUtil#streamFromBufferedImage} against the pooled
+ * {@link ImageUtil#encode}. Run with {@code -prof gc} to compare allocation per encode.
+ *
+ * @author bob damiano
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageEncodeBenchmark {
+
+	@Param({ "jpg", "png" })
+	String format;
+
+	private BufferedImage image;
+
+	@Setup
+	public void setUp() {
+		image = ImageUtilBenchmark.testImage(1500, 1125);
+	}
+
+	@Benchmark
+	public ImageUtil.InputStreamAndSize streamFromBufferedImage() throws IOException {
+		return ImageUtil.streamFromBufferedImage(image, format);
+	}
+
+	@Benchmark
+	public void encodePooled(Blackhole bh) throws IOException {
+		try (EncodedImage encoded = ImageUtil.encode(image, format)) {
+			bh.consume(encoded.size());
+		}
+	}
+}
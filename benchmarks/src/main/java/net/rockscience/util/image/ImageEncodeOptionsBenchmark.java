@@ -0,0 +1,66 @@
+package net.rockscience.util.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The size/speed tradeoff of each {@link EncodeOptions} preset on a max width image. Encode
+ * time is the benchmark score; the encoded size of each preset is printed at setup. The
+ * imageIoWrite benchmark is the old per-call writer lookup, for the format of the preset.
+ *
+ * @author bob damiano
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageEncodeOptionsBenchmark {
+
+	@Param({ "JPEG_HIGH", "JPEG_BALANCED", "JPEG_SMALL", "PNG_FAST", "PNG_BALANCED", "PNG_SMALL" })
+	String preset;
+
+	private BufferedImage image;
+	private EncodeOptions options;
+
+	@Setup
+	public void setUp() throws Exception {
+		image = ImageUtilBenchmark.testImage(1500, 1125);
+		options = (EncodeOptions) EncodeOptions.class.getField(preset).get(null);
+		try (EncodedImage encoded = ImageUtil.encode(image, options)) {
+			System.out.println(preset + " encodes to " + encoded.size() + " bytes");
+		}
+	}
+
+	@Benchmark
+	public void encode(Blackhole bh) throws IOException {
+		try (EncodedImage encoded = ImageUtil.encode(image, options)) {
+			bh.consume(encoded.size());
+		}
+	}
+
+	@Benchmark
+	public int imageIoWrite() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		ImageIO.write(image, options.getFormat(), os);
+		return os.size();
+	}
+}
@@ -0,0 +1,71 @@
+package net.rockscience.util.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Getting a 4032px JPEG's dimensions: {@link ImageUtil#probe} from a stream and a file,
+ * against decoding the whole image
+ *
+ * @author bob damiano
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageProbeBenchmark {
+
+	private byte[] jpeg;
+	private Path file;
+
+	@Setup
+	public void setUp() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		ImageIO.write(ImageUtilBenchmark.testImage(4032, 3024), "jpg", os);
+		jpeg = os.toByteArray();
+		file = Files.createTempFile("probe", ".jpg");
+		Files.write(file, jpeg);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public ImageInfo probeStream() throws IOException {
+		return ImageUtil.probe(new ByteArrayInputStream(jpeg));
+	}
+
+	@Benchmark
+	public ImageInfo probeFile() throws IOException {
+		return ImageUtil.probe(file);
+	}
+
+	@Benchmark
+	public int fullDecode() throws IOException {
+		BufferedImage bi = ImageUtil.bufferedImageFromStream(new ByteArrayInputStream(jpeg));
+		return bi.getWidth();
+	}
+}
@@ -0,0 +1,52 @@
+package net.rockscience.util.image;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Each {@link ScalingMethod} from a camera-sized decoded JPEG. Output quality for the same
+ * methods is measured (as PSNR) in ImageScalerTest.
+ *
+ * @author bob damiano
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageScalingBenchmark {
+
+	@Param({ "4032" })
+	int sourceWidth;
+
+	@Param({ "1500", "300" })
+	int targetWidth;
+
+	@Param({ "DEFAULT", "PROGRESSIVE_BILINEAR", "BOX", "LANCZOS3" })
+	ScalingMethod method;
+
+	private BufferedImage source;
+
+	@Setup
+	public void setUp() {
+		source = ImageUtilBenchmark.testImage(sourceWidth, sourceWidth * 3 / 4);
+	}
+
+	@Benchmark
+	public BufferedImage scale() {
+		return ImageUtil.scaleImageToMaxTargetWidth(source, targetWidth, method);
+	}
+}
@@ -0,0 +1,69 @@
+package net.rockscience.util.image;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link ImageUtil#scaleImageToMaxTargetWidth} from camera-sized sources down to the
+ * standard max width and thumbnail width
+ *
+ * @author bob damiano
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageUtilBenchmark {
+
+	@Param({ "2048", "4032" })
+	int sourceWidth;
+
+	@Param({ "1500", "300" })
+	int targetWidth;
+
+	private BufferedImage source;
+
+	@Setup
+	public void setUp() {
+		source = testImage(sourceWidth, sourceWidth * 3 / 4);
+	}
+
+	@Benchmark
+	public BufferedImage scaleImageToMaxTargetWidth() {
+		return ImageUtil.scaleImageToMaxTargetWidth(source, targetWidth);
+	}
+
+	/**
+	 * A photo-like image: gradients plus noise, as decoded from a JPEG
+	 */
+	static BufferedImage testImage(int width, int height) {
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+		Graphics2D g = img.createGraphics();
+		g.setPaint(new GradientPaint(0, 0, Color.ORANGE, width, height, Color.BLUE));
+		g.fillRect(0, 0, width, height);
+		g.dispose();
+		Random r = new Random(1);
+		for (int i = 0; i < width * height / 20; i++) {
+			img.setRGB(r.nextInt(width), r.nextInt(height), r.nextInt());
+		}
+		return img;
+	}
+}
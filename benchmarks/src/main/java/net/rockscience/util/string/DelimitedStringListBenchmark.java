@@ -0,0 +1,114 @@
+package net.rockscience.util.string;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Splitting and joining {@link DelimitedStringList}s of various lengths, with the default
+ * pipe delimiter and a comma. Splitting is measured into a list, through the per-token
+ * callback and through the lazy token views, and encoding and decoding round trip is
+ * measured with plain values and with a quarter of them needing escapes.
+ *
+ * @author Bob Damiano
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DelimitedStringListBenchmark {
+
+	@Param({ "1", "10", "100", "1000" })
+	int size;
+
+	@Param({ "|", "," })
+	String delimiter;
+
+	private DelimitedStringList list;
+	private List<String> strings;
+	private String delimited;
+	// every fourth value holds the delimiter and a quote, so needs escaping
+	private List<String> escapable;
+	private String encoded;
+	private String encodedEscaped;
+
+	@Setup
+	public void setUp() {
+		list = new DelimitedStringList(delimiter);
+		strings = new ArrayList<>();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			strings.add("item" + i);
+			// padded the way hand-edited values tend to be
+			sb.append(i == 0 ? "" : delimiter).append(" item").append(i).append(' ');
+		}
+		delimited = sb.toString();
+
+		escapable = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			escapable.add(i % 4 == 3 ? "it\"em" + delimiter + i : "item" + i);
+		}
+		encoded = list.encode(strings);
+		encodedEscaped = list.encode(escapable);
+	}
+
+	@Benchmark
+	public List<String> toList() {
+		return list.toList(delimited);
+	}
+
+	@Benchmark
+	public int forEachToken() {
+		int[] chars = new int[1];
+		list.forEachToken(delimited, (source, start, end) -> chars[0] += end - start);
+		return chars[0];
+	}
+
+	@Benchmark
+	public int tokens() {
+		int chars = 0;
+		for (CharSequence token : list.tokens(delimited)) {
+			chars += token.length();
+		}
+		return chars;
+	}
+
+	@Benchmark
+	public String toDelimitedString() {
+		return list.toDelimitedString(strings);
+	}
+
+	@Benchmark
+	public String encode() {
+		return list.encode(strings);
+	}
+
+	@Benchmark
+	public String encodeEscaped() {
+		return list.encode(escapable);
+	}
+
+	@Benchmark
+	public List<String> decode() {
+		return list.decode(encoded);
+	}
+
+	@Benchmark
+	public List<String> decodeEscaped() {
+		return list.decode(encodedEscaped);
+	}
+}
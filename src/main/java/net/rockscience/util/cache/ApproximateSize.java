@@ -0,0 +1,132 @@
+package net.rockscience.util.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Rough heap sizes, in bytes, of common payloads, for building a
+ * {@link KeyedObjectCache.Weigher} so a cache can be bounded in bytes.
+ * <p>
+ * The numbers assume a 64-bit JVM with compressed object pointers (the default for heaps
+ * under 32GB): 12 byte object headers, 16 byte array headers, 4 byte references and
+ * everything padded to 8 bytes. They are close enough to size a cache, not exact.
+ *
+ * @author bdamiano
+ */
+public class ApproximateSize {
+	private ApproximateSize() {}
+
+	public static final int OBJECT_HEADER = 12;
+	public static final int ARRAY_HEADER = 16;
+	public static final int REFERENCE = 4;
+
+	/**
+	 * Size of a plain object with the given fields, not counting anything it refers to
+	 * @param references - number of reference fields
+	 * @param primitiveBytes - total bytes of primitive fields
+	 * @return
+	 */
+	public static long shallow(int references, int primitiveBytes) {
+		return align(OBJECT_HEADER + (long) references * REFERENCE + primitiveBytes);
+	}
+
+	/**
+	 * Size of a String and its backing array. Strings with only Latin-1 characters are
+	 * stored a byte per char, others two.
+	 * @param s
+	 * @return
+	 */
+	public static long of(String s) {
+		if (s == null) {
+			return 0;
+		}
+		int bytesPerChar = 1;
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) > 0xFF) {
+				bytesPerChar = 2;
+				break;
+			}
+		}
+		// value ref, hash, coder and hashIsZero
+		return shallow(1, 6) + array(s.length(), bytesPerChar);
+	}
+
+	public static long of(byte[] a) {
+		return a == null ? 0 : array(a.length, 1);
+	}
+
+	public static long of(char[] a) {
+		return a == null ? 0 : array(a.length, 2);
+	}
+
+	public static long of(int[] a) {
+		return a == null ? 0 : array(a.length, 4);
+	}
+
+	public static long of(long[] a) {
+		return a == null ? 0 : array(a.length, 8);
+	}
+
+	/**
+	 * Size of a ByteBuffer. A heap buffer counts its array; a direct buffer's memory is
+	 * off the heap, so only the buffer object counts.
+	 * @param b
+	 * @return
+	 */
+	public static long of(ByteBuffer b) {
+		if (b == null) {
+			return 0;
+		}
+		long buffer = shallow(4, 30);
+		return b.hasArray() ? buffer + of(b.array()) : buffer;
+	}
+
+	/**
+	 * Size of a list or set of Strings: the collection, its backing array and the Strings
+	 * @param strings
+	 * @return
+	 */
+	public static long ofStrings(Collection<String> strings) {
+		if (strings == null) {
+			return 0;
+		}
+		long size = shallow(2, 8) + array(strings.size(), REFERENCE);
+		for (String s : strings) {
+			size += of(s);
+		}
+		return size;
+	}
+
+	/**
+	 * Size of a HashMap of Strings: the map, its table, a node per entry, and the keys and values
+	 * @param map
+	 * @return
+	 */
+	public static long ofStrings(Map<String, String> map) {
+		if (map == null) {
+			return 0;
+		}
+		// table is sized to the next power of two over size / 0.75
+		long table = Integer.highestOneBit(Math.max(1, (int) (map.size() / 0.75f)) * 2 - 1);
+		long size = shallow(4, 16) + array(table, REFERENCE);
+		for (Map.Entry<String, String> e : map.entrySet()) {
+			size += shallow(3, 4) + of(e.getKey()) + of(e.getValue());
+		}
+		return size;
+	}
+
+	/**
+	 * Size of an array of the given length and element size
+	 * @param length
+	 * @param elementBytes
+	 * @return
+	 */
+	public static long array(long length, int elementBytes) {
+		return align(ARRAY_HEADER + length * elementBytes);
+	}
+
+	private static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+}
@@ -0,0 +1,31 @@
+package net.rockscience.util.cache;
+
+/**
+ * Where a {@link KeyedObjectCache} gets the time from, in epoch millis. The system clock is
+ * the default. Tests can plug in a clock they move by hand, and a busy cache can use
+ * {@link #coarse()} to trade a few milliseconds of accuracy for a cheaper read.
+ *
+ * @author bdamiano
+ */
+@FunctionalInterface
+public interface CacheClock {
+
+	long millis();
+
+	/**
+	 * @return a clock reading {@link System#currentTimeMillis()}
+	 */
+	static CacheClock system() {
+		return System::currentTimeMillis;
+	}
+
+	/**
+	 * A clock that is only a volatile read: a shared background thread stores the system time
+	 * in it every 10ms. Its time may be that far behind.
+	 *
+	 * @return the shared coarse clock
+	 */
+	static CacheClock coarse() {
+		return CoarseClock.INSTANCE;
+	}
+}
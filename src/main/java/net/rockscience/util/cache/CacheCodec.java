@@ -0,0 +1,65 @@
+package net.rockscience.util.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Turns cached objects into bytes and back, for the parts of a {@link KeyedObjectCache}
+ * that keep data off the Java heap or on disk.
+ *
+ * @author bdamiano
+ * @param <T> the object type
+ */
+public interface CacheCodec<T> {
+
+	byte[] encode(T value);
+
+	/**
+	 * @param bytes - the encoded object, from the buffer's position to its limit
+	 */
+	T decode(ByteBuffer bytes);
+
+	/**
+	 * A codec using plain Java serialization. Works for anything {@link java.io.Serializable}
+	 * but is neither small nor fast; a hand-written codec is worth it for hot types.
+	 * 
+	 * @param <T> the object type
+	 * @return the codec
+	 */
+	static <T> CacheCodec<T> javaSerialization() {
+		return new CacheCodec<T>() {
+			@Override
+			public byte[] encode(T value) {
+				ByteArrayOutputStream bos = new ByteArrayOutputStream();
+				try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+					oos.writeObject(value);
+				}
+				catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+				return bos.toByteArray();
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public T decode(ByteBuffer bytes) {
+				byte[] b = new byte[bytes.remaining()];
+				bytes.get(b);
+				try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(b))) {
+					return (T) ois.readObject();
+				}
+				catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+				catch (ClassNotFoundException ex) {
+					throw new IllegalStateException(ex);
+				}
+			}
+		};
+	}
+}
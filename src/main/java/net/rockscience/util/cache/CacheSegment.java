@@ -0,0 +1,89 @@
+package net.rockscience.util.cache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * One independently locked part of a {@link CacheStore}. Subclasses decide the order
+ * entries are kept in and which one goes when the segment is over its bounds; this class
+ * keeps the entry count and weight bookkeeping and tells the listener about evictions.
+ * All access is synchronized on the segment.
+ *
+ * @author bdamiano
+ * @param <V> the stored value type
+ */
+abstract class CacheSegment<V> {
+
+	protected final int maxSize;
+	protected final long maxWeight;
+	private final ToLongFunction<V> weigher;
+	private final BiConsumer<Object, V> evictionListener;
+	protected long weight;
+
+	protected CacheSegment(int maxSize, long maxWeight, ToLongFunction<V> weigher,
+			BiConsumer<Object, V> evictionListener) {
+		this.maxSize = maxSize;
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+		this.evictionListener = evictionListener;
+	}
+
+	abstract V get(Object key);
+
+	/**
+	 * @return the value that was replaced, or null
+	 */
+	abstract V put(Object key, V value);
+
+	/**
+	 * Put the value only if the key has none. A hit on the existing value counts as a use
+	 * @return the existing value, or null if this one was put
+	 */
+	synchronized V putIfAbsent(Object key, V value) {
+		V existing = get(key);
+		return existing != null ? existing : put(key, value);
+	}
+
+	abstract V remove(Object key);
+
+	/**
+	 * Remove the key only if it maps to this value (by equals)
+	 */
+	abstract boolean remove(Object key, V value);
+
+	abstract int size();
+
+	/**
+	 * Copy out the entries, least valuable to evict first
+	 */
+	abstract void copyEntries(List<Map.Entry<Object, V>> into);
+
+	/**
+	 * Remove everything. Nothing is reported as evicted
+	 */
+	abstract void clear();
+
+	synchronized long weight() {
+		return weight;
+	}
+
+	protected boolean isOverBounds() {
+		return size() > maxSize || weight > maxWeight;
+	}
+
+	/**
+	 * Bookkeeping for an entry the policy has just removed to stay within bounds
+	 */
+	protected void evicted(Object key, V value) {
+		weight -= weigh(value);
+		if (evictionListener != null) {
+			evictionListener.accept(key, value);
+		}
+	}
+
+	protected long weigh(V value) {
+		return value == null || weigher == null ? 0 : weigher.applyAsLong(value);
+	}
+}
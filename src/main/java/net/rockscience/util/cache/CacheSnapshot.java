@@ -0,0 +1,250 @@
+package net.rockscience.util.cache;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The binary file format {@link KeyedObjectCache} saves its entries in for a warm restart.
+ * <p>
+ * The file is a header (the magic number and a format version, both ints) followed by one
+ * record per entry: the entry's last update time (long), the key and value lengths (ints),
+ * then the encoded key and value bytes. An end marker (a last update time of
+ * {@link Long#MIN_VALUE}) and the record count close the file, so a truncated file is
+ * detected rather than half loaded. Everything is big-endian.
+ * <p>
+ * Files are read and written through a {@link FileChannel} with a reused direct buffer.
+ * A {@link Writer} writes to a temporary file and only moves it into place on
+ * {@link Writer#commit()}, so a crash mid-save never leaves a broken snapshot behind. If
+ * the save fails or is abandoned the temporary file is deleted. A {@link Reader} checks
+ * every length it reads against what is left of the file, so a corrupt file is an
+ * IOException rather than a runtime exception or a huge allocation.
+ *
+ * @author bdamiano
+ */
+class CacheSnapshot {
+	private CacheSnapshot() {}
+
+	static final int MAGIC = 0x52534B43; // "RSKC"
+	static final int VERSION = 1;
+
+	private static final long END = Long.MIN_VALUE;
+	private static final int RECORD_HEADER = 8 + 4 + 4;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Writes a snapshot file record by record
+	 */
+	static class Writer implements Closeable {
+		private final Path file;
+		private final Path temp;
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private int count;
+		private boolean committed;
+
+		Writer(Path file) throws IOException {
+			this.file = file;
+			Path dir = file.toAbsolutePath().getParent();
+			this.temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+			try {
+				this.channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			}
+			catch (IOException | RuntimeException ex) {
+				Files.deleteIfExists(temp);
+				throw ex;
+			}
+			buffer.putInt(MAGIC).putInt(VERSION);
+		}
+
+		void add(long lastUpdateMs, byte[] key, byte[] value) throws IOException {
+			int length = RECORD_HEADER + key.length + value.length;
+			try {
+				if (buffer.remaining() < length) {
+					flush();
+				}
+				buffer.putLong(lastUpdateMs).putInt(key.length).putInt(value.length);
+				if (length <= buffer.capacity()) {
+					buffer.put(key).put(value);
+				}
+				else {
+					// too big for the buffer, so write it straight through
+					flush();
+					writeFully(ByteBuffer.wrap(key));
+					writeFully(ByteBuffer.wrap(value));
+				}
+			}
+			catch (IOException | RuntimeException ex) {
+				discard();
+				throw ex;
+			}
+			count++;
+		}
+
+		/**
+		 * Finish the file and move it into place, replacing any earlier snapshot
+		 * @return the number of records written
+		 */
+		int commit() throws IOException {
+			try {
+				if (buffer.remaining() < 12) {
+					flush();
+				}
+				buffer.putLong(END).putInt(count);
+				flush();
+				channel.force(false);
+				channel.close();
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				committed = true;
+			}
+			finally {
+				if (!committed) {
+					discard();
+				}
+			}
+			return count;
+		}
+
+		/**
+		 * Close without committing throws the partial file away
+		 */
+		@Override
+		public void close() throws IOException {
+			if (!committed) {
+				discard();
+			}
+		}
+
+		private void discard() throws IOException {
+			try {
+				channel.close();
+			}
+			finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			writeFully(buffer);
+			buffer.clear();
+		}
+
+		private void writeFully(ByteBuffer b) throws IOException {
+			while (b.hasRemaining()) {
+				channel.write(b);
+			}
+		}
+	}
+
+	/**
+	 * Reads a snapshot file record by record
+	 */
+	static class Reader implements Closeable {
+		private final FileChannel channel;
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private int count;
+
+		Reader(Path file) throws IOException {
+			channel = FileChannel.open(file, StandardOpenOption.READ);
+			try {
+				buffer.limit(0);
+				ensure(8);
+				if (buffer.getInt() != MAGIC) {
+					throw new IOException("Not a cache snapshot: " + file);
+				}
+				int version = buffer.getInt();
+				if (version != VERSION) {
+					throw new IOException("Unsupported cache snapshot version " + version);
+				}
+			}
+			catch (IOException | RuntimeException ex) {
+				channel.close();
+				throw ex;
+			}
+		}
+
+		/**
+		 * @return the next record, or null at the end of the file. The key and value buffers
+		 * are only valid until the next call
+		 */
+		Record next() throws IOException {
+			ensure(8);
+			long lastUpdateMs = buffer.getLong();
+			if (lastUpdateMs == END) {
+				ensure(4);
+				int expected = buffer.getInt();
+				if (expected != count) {
+					throw new IOException("Cache snapshot has " + count + " records, expected " + expected);
+				}
+				return null;
+			}
+
+			ensure(8);
+			int keyLength = buffer.getInt();
+			int valueLength = buffer.getInt();
+			if (keyLength < 0 || valueLength < 0) {
+				throw new IOException("Corrupt cache snapshot: record " + count + " has key length "
+						+ keyLength + " and value length " + valueLength);
+			}
+			// checked before buffering, so a corrupt length can't ask for a huge buffer
+			if ((long) keyLength + valueLength > unread()) {
+				throw new EOFException("Truncated cache snapshot");
+			}
+			ensure(keyLength + valueLength);
+
+			ByteBuffer key = buffer.slice(buffer.position(), keyLength);
+			ByteBuffer value = buffer.slice(buffer.position() + keyLength, valueLength);
+			buffer.position(buffer.position() + keyLength + valueLength);
+			count++;
+			return new Record(lastUpdateMs, key, value);
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+
+		/**
+		 * @return the bytes left to read, buffered or not
+		 */
+		private long unread() throws IOException {
+			return buffer.remaining() + channel.size() - channel.position();
+		}
+
+		/**
+		 * Make sure at least n bytes are buffered, reading more (and growing the buffer for
+		 * an oversized record) as needed
+		 */
+		private void ensure(int n) throws IOException {
+			if (buffer.remaining() >= n) {
+				return;
+			}
+			if (n > buffer.capacity()) {
+				ByteBuffer bigger = ByteBuffer.allocateDirect(n);
+				bigger.put(buffer);
+				buffer = bigger;
+			}
+			else {
+				buffer.compact();
+			}
+			while (buffer.position() < n) {
+				if (channel.read(buffer) < 0) {
+					throw new EOFException("Truncated cache snapshot");
+				}
+			}
+			buffer.flip();
+		}
+	}
+
+	/**
+	 * One entry read back from a snapshot
+	 */
+	record Record(long lastUpdateMs, ByteBuffer key, ByteBuffer value) {}
+}
@@ -0,0 +1,117 @@
+package net.rockscience.util.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * An immutable point-in-time snapshot of a {@link KeyedObjectCache}'s counters,
+ * cheap enough to take on every metrics scrape.
+ * <p>
+ * Load times are bucketed in a power-of-two histogram: bucket i counts loads that took
+ * less than {@link #LOAD_TIME_BUCKET_MS}[i] milliseconds (and at least the bucket before it).
+ * The last bucket counts everything slower.
+ *
+ * @author bdamiano
+ */
+@Value
+@Builder
+public class CacheStats {
+
+	/** Upper bounds (exclusive) of the load time histogram buckets, in ms */
+	public static final long[] LOAD_TIME_BUCKET_MS = {
+			1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024, 2048, 4096, 8192, 16384, Long.MAX_VALUE };
+
+	/** lookups served from the cache */
+	long hitCount;
+	/** lookups that had to read through to the repo */
+	long missCount;
+	/** lookups answered with null from the negative cache */
+	long negativeHitCount;
+	/** lookups that missed the heap but were found in the off-heap tier */
+	long offHeapHitCount;
+	/** entries found expired or swept, each counted once */
+	long expirationCount;
+	/** expired entries served while being reloaded (stale-while-revalidate), also counted as hits */
+	long staleServeCount;
+	/** entries evicted to stay within the cache bounds */
+	long evictionCount;
+	/** calls made to the repo */
+	long loadCount;
+	/** calls made to the repo that threw */
+	long loadFailureCount;
+	/** misses that waited on another thread's load of the same key */
+	long coalescedLoadCount;
+	/** total time spent in repo calls */
+	long totalLoadTimeNanos;
+	/** load counts per {@link #LOAD_TIME_BUCKET_MS} bucket */
+	long[] loadTimeHistogram;
+	/** entries in the cache when the snapshot was taken */
+	int size;
+	/** total weight of the cache when the snapshot was taken, 0 without a weigher */
+	long weight;
+	/** not-found keys in the negative cache when the snapshot was taken */
+	int negativeSize;
+	/** entries in the off-heap tier when the snapshot was taken */
+	int offHeapSize;
+
+	/**
+	 * Return the load counts per {@link #LOAD_TIME_BUCKET_MS} bucket. A copy, so the snapshot
+	 * stays as it was taken
+	 * @return
+	 */
+	public long[] getLoadTimeHistogram() {
+		return loadTimeHistogram == null ? null : loadTimeHistogram.clone();
+	}
+
+	/**
+	 * Return hits from either tier as a fraction of all positive lookups, or 1.0 if there were none
+	 * @return
+	 */
+	public double getHitRate() {
+		long hits = hitCount + offHeapHitCount;
+		long requests = hits + missCount;
+		return requests == 0 ? 1.0 : (double) hits / requests;
+	}
+
+	/**
+	 * Return the mean time of a repo call in milliseconds
+	 * @return
+	 */
+	public double getAverageLoadMs() {
+		return loadCount == 0 ? 0.0 : totalLoadTimeNanos / 1_000_000.0 / loadCount;
+	}
+
+	/**
+	 * Flatten the snapshot into name/value pairs for a metrics exporter. Histogram
+	 * buckets are named by their upper bound, e.g. load_time_lt_16ms
+	 * @return an ordered map of metric name to value
+	 */
+	public Map<String, Number> toMap() {
+		Map<String, Number> m = new LinkedHashMap<>();
+		m.put("hits", hitCount);
+		m.put("misses", missCount);
+		m.put("negative_hits", negativeHitCount);
+		m.put("off_heap_hits", offHeapHitCount);
+		m.put("expirations", expirationCount);
+		m.put("stale_serves", staleServeCount);
+		m.put("evictions", evictionCount);
+		m.put("loads", loadCount);
+		m.put("load_failures", loadFailureCount);
+		m.put("coalesced_loads", coalescedLoadCount);
+		m.put("load_time_total_ns", totalLoadTimeNanos);
+		for (int i = 0; i < LOAD_TIME_BUCKET_MS.length; i++) {
+			String name = LOAD_TIME_BUCKET_MS[i] == Long.MAX_VALUE ? "load_time_inf"
+					: "load_time_lt_" + LOAD_TIME_BUCKET_MS[i] + "ms";
+			m.put(name, loadTimeHistogram == null ? 0L : loadTimeHistogram[i]);
+		}
+		m.put("size", size);
+		m.put("weight", weight);
+		m.put("negative_size", negativeSize);
+		m.put("off_heap_size", offHeapSize);
+		m.put("hit_rate", getHitRate());
+		return m;
+	}
+}
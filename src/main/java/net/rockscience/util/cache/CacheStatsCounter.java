@@ -0,0 +1,113 @@
+package net.rockscience.util.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The live counters behind {@link CacheStats}. Every counter is a {@link LongAdder}
+ * so recording from many threads at once doesn't contend on a shared field.
+ *
+ * @author bdamiano
+ */
+class CacheStatsCounter {
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder negativeHits = new LongAdder();
+	private final LongAdder offHeapHits = new LongAdder();
+	private final LongAdder expirations = new LongAdder();
+	private final LongAdder staleServes = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder loads = new LongAdder();
+	private final LongAdder loadFailures = new LongAdder();
+	private final LongAdder coalescedLoads = new LongAdder();
+	private final LongAdder totalLoadNanos = new LongAdder();
+	private final LongAdder[] loadTimeBuckets = new LongAdder[CacheStats.LOAD_TIME_BUCKET_MS.length];
+
+	CacheStatsCounter() {
+		for (int i = 0; i < loadTimeBuckets.length; i++) {
+			loadTimeBuckets[i] = new LongAdder();
+		}
+	}
+
+	void recordHit() {
+		hits.increment();
+	}
+
+	void recordMiss() {
+		misses.increment();
+	}
+
+	void recordNegativeHit() {
+		negativeHits.increment();
+	}
+
+	void recordOffHeapHit() {
+		offHeapHits.increment();
+	}
+
+	void recordExpiration() {
+		expirations.increment();
+	}
+
+	void recordStaleServe() {
+		staleServes.increment();
+	}
+
+	void recordEviction() {
+		evictions.increment();
+	}
+
+	void recordCoalescedLoad() {
+		coalescedLoads.increment();
+	}
+
+	void recordLoad(long nanos, boolean failed) {
+		loads.increment();
+		if (failed) {
+			loadFailures.increment();
+		}
+		totalLoadNanos.add(nanos);
+		loadTimeBuckets[bucketFor(nanos / 1_000_000)].increment();
+	}
+
+	long getNegativeHitCount() {
+		return negativeHits.sum();
+	}
+
+	long getCoalescedLoadCount() {
+		return coalescedLoads.sum();
+	}
+
+	CacheStats snapshot(int size, long weight, int negativeSize, int offHeapSize) {
+		long[] histogram = new long[loadTimeBuckets.length];
+		for (int i = 0; i < histogram.length; i++) {
+			histogram[i] = loadTimeBuckets[i].sum();
+		}
+		return CacheStats.builder()
+				.hitCount(hits.sum())
+				.missCount(misses.sum())
+				.negativeHitCount(negativeHits.sum())
+				.offHeapHitCount(offHeapHits.sum())
+				.expirationCount(expirations.sum())
+				.staleServeCount(staleServes.sum())
+				.evictionCount(evictions.sum())
+				.loadCount(loads.sum())
+				.loadFailureCount(loadFailures.sum())
+				.coalescedLoadCount(coalescedLoads.sum())
+				.totalLoadTimeNanos(totalLoadNanos.sum())
+				.loadTimeHistogram(histogram)
+				.size(size)
+				.weight(weight)
+				.negativeSize(negativeSize)
+				.offHeapSize(offHeapSize)
+				.build();
+	}
+
+	/**
+	 * Power of two buckets: under 1ms is bucket 0, [1,2) is 1, [2,4) is 2 and so on
+	 */
+	static int bucketFor(long ms) {
+		int b = 64 - Long.numberOfLeadingZeros(Math.max(0, ms));
+		return Math.min(b, CacheStats.LOAD_TIME_BUCKET_MS.length - 1);
+	}
+}
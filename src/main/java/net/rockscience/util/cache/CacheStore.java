@@ -0,0 +1,205 @@
+package net.rockscience.util.cache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * The bounded backing map for a {@link KeyedObjectCache}. Entries are spread over a
+ * number of independently locked segments. By default each is an access-ordered
+ * {@link LinkedHashMap} which evicts its least recently used entries when full; with
+ * {@link EvictionPolicy#TINY_LFU} each runs W-TinyLFU instead.
+ * <p>
+ * Besides the entry count, the store can be bounded by total weight, where each value's
+ * weight comes from a weigher (typically its approximate size in bytes). The weigher is
+ * asked once when a value goes in, and must give the same answer for the same value
+ * when it comes out. Eviction continues until both bounds are met, so a single value
+ * heavier than a segment's share of the weight is evicted straight away.
+ * <p>
+ * With one segment the policy is exact and guarded by a single monitor. With more segments,
+ * hits on keys in different segments never contend with each other and the policy becomes
+ * approximate: eviction picks from the segment being written to.
+ * <p>
+ * An optional eviction listener is told about every entry pushed out to make room. It is
+ * called while the segment lock is held, so it must be quick and must not call back into
+ * the store.
+ *
+ * @author bdamiano
+ * @param <V> the stored value type
+ */
+class CacheStore<V> {
+
+	private final CacheSegment<V>[] segments;
+	private final int segmentMask;
+
+	/**
+	 * @param maxSize - the max number of entries across all segments
+	 * @param concurrencyLevel - the desired number of segments. Rounded up to a power of
+	 * two, and never more than maxSize (or maxWeight) so every segment can hold something
+	 */
+	CacheStore(int maxSize, int concurrencyLevel) {
+		this(maxSize, concurrencyLevel, null);
+	}
+
+	/**
+	 * @param maxSize - the max number of entries across all segments
+	 * @param concurrencyLevel - the desired number of segments
+	 * @param evictionListener - told the key and value of each evicted entry. May be null
+	 */
+	CacheStore(int maxSize, int concurrencyLevel, BiConsumer<Object, V> evictionListener) {
+		this(maxSize, Long.MAX_VALUE, null, EvictionPolicy.LRU, concurrencyLevel, evictionListener);
+	}
+
+	/**
+	 * @param maxSize - the max number of entries across all segments
+	 * @param maxWeight - the max total weight across all segments
+	 * @param weigher - gives the weight of a value. If null, weight is not bounded
+	 * @param policy - how each segment picks what to evict
+	 * @param concurrencyLevel - the desired number of segments
+	 * @param evictionListener - told the key and value of each evicted entry. May be null
+	 */
+	CacheStore(int maxSize, long maxWeight, ToLongFunction<V> weigher, EvictionPolicy policy,
+			int concurrencyLevel, BiConsumer<Object, V> evictionListener) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be at least 1");
+		}
+		int n = 1;
+		while (n < concurrencyLevel && n * 2 <= maxSize && (weigher == null || n * 2 <= maxWeight)) {
+			n *= 2;
+		}
+
+		@SuppressWarnings("unchecked")
+		CacheSegment<V>[] s = (CacheSegment<V>[]) new CacheSegment<?>[n];
+		segments = s;
+		segmentMask = n - 1;
+
+		// share the size and weight out so the segments add up to exactly the max
+		for (int i = 0; i < n; i++) {
+			int segmentSize = maxSize / n + (i < maxSize % n ? 1 : 0);
+			long segmentWeight = weigher == null ? Long.MAX_VALUE : maxWeight / n + (i < maxWeight % n ? 1 : 0);
+			segments[i] = policy == EvictionPolicy.TINY_LFU
+					? new TinyLfuSegment<>(segmentSize, segmentWeight, weigher, evictionListener)
+					: new LruSegment<>(segmentSize, segmentWeight, weigher, evictionListener);
+		}
+	}
+
+	V get(Object key) {
+		return segmentFor(key).get(key);
+	}
+
+	/**
+	 * Look up a batch of keys, taking each segment's lock once no matter how many
+	 * of the keys land in it.
+	 * @return the values in the same order as the keys, null where not found
+	 */
+	List<V> getAll(List<Object> keys) {
+		List<V> values = new ArrayList<>(keys.size());
+		int[] segmentOf = new int[keys.size()];
+		boolean[] used = new boolean[segments.length];
+
+		for (int i = 0; i < keys.size(); i++) {
+			values.add(null);
+			segmentOf[i] = segmentIndex(keys.get(i));
+			used[segmentOf[i]] = true;
+		}
+
+		for (int s = 0; s < segments.length; s++) {
+			if (used[s]) {
+				CacheSegment<V> segment = segments[s];
+				synchronized (segment) {
+					for (int i = 0; i < segmentOf.length; i++) {
+						if (segmentOf[i] == s) {
+							values.set(i, segment.get(keys.get(i)));
+						}
+					}
+				}
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * @return the value that was replaced, or null
+	 */
+	V put(Object key, V value) {
+		return segmentFor(key).put(key, value);
+	}
+
+	/**
+	 * @return the value already there, or null if this one was put
+	 */
+	V putIfAbsent(Object key, V value) {
+		return segmentFor(key).putIfAbsent(key, value);
+	}
+
+	V remove(Object key) {
+		return segmentFor(key).remove(key);
+	}
+
+	/**
+	 * Remove the key only if it still maps to this value. Cache entries don't override
+	 * equals, so that means this exact instance
+	 * @return true if removed
+	 */
+	boolean remove(Object key, V value) {
+		return segmentFor(key).remove(key, value);
+	}
+
+	int size() {
+		int size = 0;
+		for (CacheSegment<V> s : segments) {
+			size += s.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Copy out every entry, one segment at a time. Within a segment the entries are in
+	 * eviction order, the ones that would go first first.
+	 */
+	List<Map.Entry<Object, V>> entries() {
+		List<Map.Entry<Object, V>> entries = new ArrayList<>(size());
+		for (CacheSegment<V> s : segments) {
+			s.copyEntries(entries);
+		}
+		return entries;
+	}
+
+	/**
+	 * Remove every entry, one segment at a time
+	 */
+	void clear() {
+		for (CacheSegment<V> s : segments) {
+			s.clear();
+		}
+	}
+
+	/**
+	 * @return the total weight of all values, or 0 if there is no weigher
+	 */
+	long weight() {
+		long weight = 0;
+		for (CacheSegment<V> s : segments) {
+			weight += s.weight();
+		}
+		return weight;
+	}
+
+	int getSegmentCount() {
+		return segments.length;
+	}
+
+	private CacheSegment<V> segmentFor(Object key) {
+		return segments[segmentIndex(key)];
+	}
+
+	private int segmentIndex(Object key) {
+		// spread the high bits down so keys with poor hashCodes still use every segment
+		int h = key == null ? 0 : key.hashCode();
+		h ^= (h >>> 16);
+		return h & segmentMask;
+	}
+}
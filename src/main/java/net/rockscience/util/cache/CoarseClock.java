@@ -0,0 +1,28 @@
+package net.rockscience.util.cache;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link CacheClock#coarse()} clock: a daemon thread copies the system time into a
+ * volatile field every {@value #RESOLUTION_MS}ms, so reading it is a single volatile read.
+ *
+ * @author bdamiano
+ */
+final class CoarseClock implements CacheClock {
+	static final int RESOLUTION_MS = 10;
+	static final CoarseClock INSTANCE = new CoarseClock();
+
+	private volatile long now = System.currentTimeMillis();
+
+	private CoarseClock() {
+		Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().name("cache-coarse-clock").factory())
+				.scheduleAtFixedRate(() -> now = System.currentTimeMillis(), RESOLUTION_MS, RESOLUTION_MS,
+						TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public long millis() {
+		return now;
+	}
+}
@@ -0,0 +1,22 @@
+package net.rockscience.util.cache;
+
+/**
+ * How a {@link KeyedObjectCache} chooses which entry to evict when it is full
+ *
+ * @author bdamiano
+ */
+public enum EvictionPolicy {
+	/**
+	 * Evict the least recently used entry. Simple and cheap, but a burst of keys that are
+	 * each used once (a scan) can push out everything that was popular.
+	 */
+	LRU,
+
+	/**
+	 * W-TinyLFU: new entries pass through a small LRU window, then are only admitted to
+	 * the main space if they have been used more often than the entry they would replace,
+	 * going by a compact frequency sketch. Keeps the hot set through scans, for a little
+	 * more work per write.
+	 */
+	TINY_LFU
+}
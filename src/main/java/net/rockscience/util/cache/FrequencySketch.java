@@ -0,0 +1,96 @@
+package net.rockscience.util.cache;
+
+/**
+ * A count-min sketch of how often keys have been seen recently, for the TinyLFU admission
+ * filter. Each key is counted in four 4-bit counters, sixteen to a long, picked by four
+ * hash functions; its frequency is the smallest of the four, so collisions can only
+ * overestimate it. Counters saturate at 15.
+ * <p>
+ * So that old popularity fades, every counter is halved once the sketch has counted
+ * ten times its capacity in increments.
+ *
+ * @author bdamiano
+ */
+class FrequencySketch {
+
+	private static final long[] SEEDS = {
+			0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	private final long[] table;
+	private final int tableMask;
+	private final int sampleSize;
+	private int additions;
+
+	/**
+	 * @param capacity - the number of entries the owning cache holds
+	 */
+	FrequencySketch(int capacity) {
+		int c = Math.max(8, Math.min(capacity, 1 << 24));
+		int n = Integer.highestOneBit(c - 1) << 1;
+		table = new long[n];
+		tableMask = n - 1;
+		sampleSize = 10 * c;
+	}
+
+	/**
+	 * @return the estimated number of times the key has been seen, 0 to 15
+	 */
+	int frequency(Object key) {
+		int h = spread(key);
+		int min = 15;
+		for (int i = 0; i < 4; i++) {
+			int slot = slot(h, i);
+			int count = (int) ((table[slot & tableMask] >>> ((slot >>> 28) << 2)) & 0xF);
+			min = Math.min(min, count);
+		}
+		return min;
+	}
+
+	/**
+	 * Count one more sighting of the key
+	 */
+	void increment(Object key) {
+		int h = spread(key);
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			int slot = slot(h, i);
+			int index = slot & tableMask;
+			int shift = (slot >>> 28) << 2;
+			if (((table[index] >>> shift) & 0xF) < 15) {
+				table[index] += 1L << shift;
+				added = true;
+			}
+		}
+		if (added && ++additions >= sampleSize) {
+			reset();
+		}
+	}
+
+	/**
+	 * Halve every counter
+	 */
+	private void reset() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		additions /= 2;
+	}
+
+	/**
+	 * The i-th hash of the key. The low bits pick the long, the top four the counter in it
+	 */
+	private static int slot(int h, int i) {
+		long x = (h + SEEDS[i]) * SEEDS[i];
+		x += x >>> 32;
+		return (int) x;
+	}
+
+	private static int spread(Object key) {
+		int h = key == null ? 0 : key.hashCode();
+		h ^= h >>> 17;
+		h *= 0xed5ad4bb;
+		h ^= h >>> 11;
+		return h;
+	}
+}
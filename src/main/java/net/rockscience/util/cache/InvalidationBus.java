@@ -0,0 +1,243 @@
+package net.rockscience.util.cache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One node's connection to the other nodes' caches. When a node changes data behind a
+ * cache, invalidating the key through the bus drops it from that cache on every node, so
+ * caches can hold objects for longer without serving them stale.
+ * <p>
+ * Caches join with {@link KeyedObjectCache#withInvalidationBus(InvalidationBus, String)}
+ * under a name shared by all the nodes. Each bus has a node id that goes out on its
+ * messages, and it ignores messages coming back with its own id.
+ * <p>
+ * By default every invalidation is published straight away. {@link #withBatching(int, int)}
+ * holds them briefly and sends them together, one message per cache: a key invalidated
+ * several times in a batch goes once, and invalidating a whole cache replaces any of its
+ * keys still waiting.
+ *
+ * @author bdamiano
+ */
+public class InvalidationBus implements AutoCloseable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(InvalidationBus.class);
+	private static ScheduledExecutorService flusher;
+
+	private final String nodeId;
+	private final InvalidationTransport transport;
+	private final Consumer<InvalidationMessage> receiver = this::receive;
+	private final Map<String, Consumer<InvalidationMessage>> caches = new ConcurrentHashMap<>();
+
+	// Invalidations waiting to be sent. Guarded by this
+	private final Map<String, Set<Object>> pendingKeys = new LinkedHashMap<>();
+	private final Set<String> pendingAll = new LinkedHashSet<>();
+	private int pendingCount;
+	private int maxBatchSize = 1;
+	private ScheduledFuture<?> flushTask;
+
+	/**
+	 * A bus with a random node id
+	 * @param transport - carries messages to and from the other nodes
+	 */
+	public InvalidationBus(InvalidationTransport transport) {
+		this(UUID.randomUUID().toString(), transport);
+	}
+
+	/**
+	 * @param nodeId - this node's id, unique in the deployment
+	 * @param transport - carries messages to and from the other nodes
+	 */
+	public InvalidationBus(String nodeId, InvalidationTransport transport) {
+		this.nodeId = nodeId;
+		this.transport = transport;
+		transport.subscribe(receiver);
+	}
+
+	/**
+	 * Send invalidations in batches: every flushIntervalMs, or as soon as maxBatchSize are
+	 * waiting. Until a batch goes out the other nodes may serve the old objects, so keep the
+	 * interval short.
+	 *
+	 * @param flushIntervalMs - the longest an invalidation waits to be sent
+	 * @param maxBatchSize - send early once this many are waiting
+	 * @return this
+	 */
+	public synchronized InvalidationBus withBatching(int flushIntervalMs, int maxBatchSize) {
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+		if (flushTask != null) {
+			flushTask.cancel(false);
+		}
+		long interval = Math.max(1, flushIntervalMs);
+		flushTask = getFlusher().scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+		return this;
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	/**
+	 * Have a cache told about invalidations for its name from other nodes. Replaces any
+	 * cache already registered under the name.
+	 *
+	 * @param cacheName - the cache's name, the same on every node
+	 * @param cache - applies a message to the cache
+	 */
+	public void register(String cacheName, Consumer<InvalidationMessage> cache) {
+		caches.put(cacheName, cache);
+	}
+
+	public void unregister(String cacheName) {
+		caches.remove(cacheName);
+	}
+
+	/**
+	 * Tell the other nodes to drop a key from the named cache. This node's cache is not
+	 * touched; {@link KeyedObjectCache#invalidate(Object)} does both.
+	 *
+	 * @param cacheName - the cache's name
+	 * @param key - the cache key (the {@link KeyedObjectCache.HasCacheKey} key where used)
+	 */
+	public void invalidate(String cacheName, Object key) {
+		List<InvalidationMessage> ready = null;
+		synchronized (this) {
+			if (!pendingAll.contains(cacheName)
+					&& pendingKeys.computeIfAbsent(cacheName, n -> new LinkedHashSet<>()).add(key)) {
+				pendingCount++;
+			}
+			if (pendingCount >= maxBatchSize) {
+				ready = drain();
+			}
+		}
+		send(ready);
+	}
+
+	/**
+	 * Tell the other nodes to empty the named cache
+	 *
+	 * @param cacheName - the cache's name
+	 */
+	public void invalidateAll(String cacheName) {
+		List<InvalidationMessage> ready = null;
+		synchronized (this) {
+			Set<Object> superseded = pendingKeys.remove(cacheName);
+			if (superseded != null) {
+				pendingCount -= superseded.size();
+			}
+			if (pendingAll.add(cacheName)) {
+				pendingCount++;
+			}
+			if (pendingCount >= maxBatchSize) {
+				ready = drain();
+			}
+		}
+		send(ready);
+	}
+
+	/**
+	 * Send whatever is waiting now
+	 */
+	public void flush() {
+		List<InvalidationMessage> ready;
+		synchronized (this) {
+			ready = drain();
+		}
+		send(ready);
+	}
+
+	/**
+	 * Stop batching, send what is waiting and stop listening to the transport
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (flushTask != null) {
+				flushTask.cancel(false);
+				flushTask = null;
+			}
+			maxBatchSize = 1;
+		}
+		flush();
+		transport.unsubscribe(receiver);
+	}
+
+	/**
+	 * Take everything waiting as one message per cache
+	 */
+	private List<InvalidationMessage> drain() {
+		if (pendingCount == 0) {
+			return null;
+		}
+		List<InvalidationMessage> ready = new ArrayList<>(pendingAll.size() + pendingKeys.size());
+		for (String cacheName : pendingAll) {
+			ready.add(new InvalidationMessage(nodeId, cacheName, List.of(), true));
+		}
+		for (Map.Entry<String, Set<Object>> e : pendingKeys.entrySet()) {
+			// not List.copyOf, which rejects the null key
+			ready.add(new InvalidationMessage(nodeId, e.getKey(), new ArrayList<>(e.getValue()), false));
+		}
+		pendingAll.clear();
+		pendingKeys.clear();
+		pendingCount = 0;
+		return ready;
+	}
+
+	/**
+	 * Publish outside the lock, so a slow transport doesn't hold up invalidations
+	 */
+	private void send(List<InvalidationMessage> ready) {
+		if (ready == null) {
+			return;
+		}
+		for (InvalidationMessage m : ready) {
+			try {
+				transport.publish(m);
+			}
+			catch (RuntimeException ex) {
+				LOGGER.warn("Could not publish invalidation for {}", m.cacheName(), ex);
+			}
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		}
+		catch (RuntimeException ex) {
+			LOGGER.warn("Invalidation flush failed", ex);
+		}
+	}
+
+	private void receive(InvalidationMessage m) {
+		if (nodeId.equals(m.sourceId())) {
+			return;
+		}
+		Consumer<InvalidationMessage> cache = caches.get(m.cacheName());
+		if (cache != null) {
+			cache.accept(m);
+		}
+	}
+
+	private static synchronized ScheduledExecutorService getFlusher() {
+		if (flusher == null) {
+			flusher = Executors.newSingleThreadScheduledExecutor(
+					Thread.ofPlatform().daemon().name("cache-invalidation-flush").factory());
+		}
+		return flusher;
+	}
+}
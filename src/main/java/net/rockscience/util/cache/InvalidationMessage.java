@@ -0,0 +1,19 @@
+package net.rockscience.util.cache;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A batch of invalidations for one named cache, sent between nodes by an
+ * {@link InvalidationTransport}.
+ *
+ * @author bdamiano
+ * @param sourceId - the node that sent it, so it can ignore its own messages
+ * @param cacheName - the cache the keys belong to
+ * @param keys - the cache keys to drop (the {@link KeyedObjectCache.HasCacheKey} key where used).
+ * Empty when all is set
+ * @param all - drop everything in the cache
+ */
+public record InvalidationMessage(String sourceId, String cacheName, List<Object> keys, boolean all)
+		implements Serializable {
+}
@@ -0,0 +1,20 @@
+package net.rockscience.util.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries {@link InvalidationMessage}s between the nodes of a deployment for an
+ * {@link InvalidationBus}: a message topic, a pub/sub channel, or {@link LoopbackTransport}
+ * within one process. Every subscriber, including the sender's own, should get every message;
+ * the bus drops its own. Keys must survive whatever encoding the transport uses.
+ *
+ * @author bdamiano
+ */
+public interface InvalidationTransport {
+
+	void publish(InvalidationMessage message);
+
+	void subscribe(Consumer<InvalidationMessage> listener);
+
+	void unsubscribe(Consumer<InvalidationMessage> listener);
+}
@@ -1,18 +1,89 @@
 package net.rockscience.util.cache;
 
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import lombok.Data;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
 import net.rockscience.util.cache.KeyedObjectCache.Cacheable;
 
 /**
  * A simple Read-Thru Cache for {@link Cacheable} objects. The caching strategy is based
  * on the cacheSeconds property of the @{link Casheable} and the number of cached items
  * is limited.  Cache Misses are read from the provided {@link CacheableRepo}
+ * <p>
+ * Loads are single-flight per key: when many threads miss on the same key at the
+ * same time, only the first one reads through to the repo and the rest wait for
+ * its result.
+ * <p>
+ * By default the cache is an exact LRU behind a single lock. Call {@link #concurrent()}
+ * or {@link #withConcurrencyLevel(int)} before use to split it into independently
+ * locked segments so hits scale across cores, at the cost of an approximate LRU.
+ * <p>
+ * Two opt-in modes keep repo latency off the caller's thread:
+ * {@link #withStaleWhileRevalidate()} returns an expired object immediately and reloads it
+ * in the background, and {@link #withRefreshAhead(int)} starts that background reload a
+ * little before the object expires. Background reloads run on virtual threads unless
+ * another executor is given with {@link #withRefreshExecutor(Executor)}.
+ * <p>
+ * {@link #getObjectAsync(Object)} returns a {@link CompletableFuture} instead of blocking,
+ * reading misses through to the repo on the same executor. A cache made with
+ * {@link #ofAsyncRepo(int, AsyncCacheableRepo)} reads from an {@link AsyncCacheableRepo}
+ * instead, so a miss holds no thread at all while the repo works.
+ * <p>
+ * Keys the repo doesn't have are looked up again on every call unless negative caching
+ * is turned on with {@link #withNegativeCaching(int, int)}.
+ * <p>
+ * The cache is bounded by entry count. When cached objects vary a lot in size it can
+ * also be bounded by total weight with {@link #withMaximumWeight(long, Weigher)}, e.g.
+ * approximate bytes from {@link ApproximateSize}. Eviction is least recently used unless
+ * {@link #withEvictionPolicy(EvictionPolicy)} picks W-TinyLFU, which resists scans.
+ * <p>
+ * To hold more than fits comfortably on the heap, {@link #withOffHeapTier(int, CacheCodec)}
+ * adds a second tier of encoded objects in off-heap memory. Objects evicted from the heap
+ * go down to it, and misses look there before going to the repo.
+ * <p>
+ * Expired objects are normally only noticed when they are read. {@link #withExpirySweep(int)}
+ * also removes them in the background as they expire, using a timer wheel so the sweep
+ * never has to scan the whole cache. Each entry keeps its absolute expiry time, so a hit
+ * is a clock read and a compare and allocates nothing. The clock can be swapped with
+ * {@link #withClock(CacheClock)}.
+ * <p>
+ * {@link #saveSnapshot(Path, CacheCodec, CacheCodec)} writes the cached objects to a file
+ * and {@link #loadSnapshot(Path, CacheCodec, CacheCodec)} reads them back, so a restarted
+ * process doesn't begin with every lookup going to the repo.
+ * <p>
+ * {@link #invalidate(Object)} and {@link #invalidateAll()} drop objects that have changed.
+ * With {@link #withInvalidationBus(InvalidationBus, String)} they are dropped from the same
+ * cache on every node of a deployment, not just this one.
+ * <p>
+ * Hits, misses, loads and evictions are counted as they happen; {@link #getStats()}
+ * returns a snapshot of them.
  * 
  * @author bdamiano
  * @param <K> the Key Type
@@ -24,9 +95,55 @@ public class KeyedObjectCache<K, T extends Cacheable> {
 	 private static final Logger LOGGER = LoggerFactory.getLogger(KeyedObjectCache.class);
 
 	private final CacheableRepo<K, T> repository;
+	// Null unless made with ofAsyncRepo, in which case repository blocks on this one
+	private final AsyncCacheableRepo<K, T> asyncRepository;
 	private final int maxSize;
 
-	private Map<Object, CacheEntry<T>> cache;
+	private CacheStore<CacheEntry<T>> cache;
+	private int concurrencyLevel = 1;
+	private long maxWeight = Long.MAX_VALUE;
+	private Weigher<T> weigher;
+	private EvictionPolicy evictionPolicy = EvictionPolicy.LRU;
+
+	// Stands in for a null cache key, which the concurrent maps can't hold
+	private static final Object NULL_KEY = new Object() {
+		@Override
+		public String toString() {
+			return "null";
+		}
+	};
+
+	// Loads currently running against the repo, keyed by the real cache key
+	private final ConcurrentMap<Object, CompletableFuture<T>> inFlight = new ConcurrentHashMap<>();
+	private final CacheStatsCounter stats = new CacheStatsCounter();
+
+	private boolean staleWhileRevalidate;
+	private long refreshAheadMs;
+	private volatile Executor refreshExecutor;
+
+	// Keys the repo returned null for, mapped to when that answer expires. Null when off
+	private CacheStore<Long> negativeCache;
+	private long negativeCacheMs;
+	private int negativeCacheSize;
+
+	// Encoded entries evicted from the heap. Null unless the off-heap tier is on
+	private OffHeapStore offHeap;
+	private CacheCodec<T> codec;
+	// Entries evicted from the heap but not yet written off-heap. They are queued under the
+	// segment lock and encoded after it is released
+	private final ConcurrentLinkedQueue<Evicted<T>> evicted = new ConcurrentLinkedQueue<>();
+
+	// Schedules each entry at its expiration time. Null unless sweeping is on
+	private TimerWheel<CacheEntry<T>> expiryWheel;
+	private SweepTask sweepTask;
+
+	private CacheClock clock = CacheClock.system();
+
+	// Counts invalidations, so a load can tell if one happened while it was reading
+	private final AtomicLong invalidations = new AtomicLong();
+	// Null unless joined to a bus
+	private InvalidationBus invalidationBus;
+	private String cacheName;
 
 	/**
 	 * Construct with a reference to the repo.
@@ -35,19 +152,408 @@ public class KeyedObjectCache<K, T extends Cacheable> {
 	 * @param repo the provided implementation of a {@link CacheableRepo} to read through to
 	 */
 	public KeyedObjectCache(int maxSize, CacheableRepo<K, T> repo) {
+		this(maxSize, repo, null);
+	}
+
+	/**
+	 * Construct a cache that reads through to an {@link AsyncCacheableRepo}. Misses from
+	 * {@link #getObjectAsync(Object)} don't hold a thread while the repo works; the
+	 * blocking methods wait on the repo's future.
+	 * 
+	 * @param maxSize - the max number of items to keep in the cache
+	 * @param repo - the repo to read through to
+	 * @return the new cache
+	 */
+	public static <K, T extends Cacheable> KeyedObjectCache<K, T> ofAsyncRepo(int maxSize, AsyncCacheableRepo<K, T> repo) {
+		return new KeyedObjectCache<>(maxSize, new BlockingRepo<>(repo), repo);
+	}
+
+	private KeyedObjectCache(int maxSize, CacheableRepo<K, T> repo, AsyncCacheableRepo<K, T> asyncRepo) {
 		repository = repo;
+		asyncRepository = asyncRepo;
 		this.maxSize = maxSize;
 
-		// Create the inner cache itself. This is a LinkedHashMap which allows eviction
-		// of the oldest inserted element once the max size is hit.
-		cache = new LinkedHashMap<>(maxSize, 0.7f, true) {
-			private static final long serialVersionUID = 1L;
+		// Create the inner cache itself. A single segment behaves as one LinkedHashMap
+		// which evicts the least recently used element once the max size is hit.
+		rebuildStore();
+	}
+
+	/**
+	 * Split the cache into segments sized for the number of available processors.
+	 * Call before the cache is used.
+	 * @return this
+	 */
+	public KeyedObjectCache<K, T> concurrent() {
+		return withConcurrencyLevel(Runtime.getRuntime().availableProcessors() * 2);
+	}
+
+	/**
+	 * Split the cache into (about) the given number of independently locked segments.
+	 * Each segment holds an equal share of maxSize and evicts its own least recently
+	 * used entry. Call before the cache is used.
+	 * 
+	 * @param segments - the desired number of segments, rounded up to a power of two
+	 * @return this
+	 */
+	public KeyedObjectCache<K, T> withConcurrencyLevel(int segments) {
+		this.concurrencyLevel = segments;
+		rebuildStore();
+		return this;
+	}
+
+	/**
+	 * Bound the cache by the total weight of its objects as well as by count. Least
+	 * recently used objects are evicted until the total fits. Each object is weighed
+	 * once when it is cached. Call before the cache is used.
+	 * 
+	 * @param maxWeight - the max total weight, in whatever unit the weigher uses
+	 * @param weigher - gives the weight of an object, e.g. its approximate size in bytes
+	 * @return this
+	 */
+	public KeyedObjectCache<K, T> withMaximumWeight(long maxWeight, Weigher<T> weigher) {
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+		rebuildStore();
+		return this;
+	}
+
+	/**
+	 * Choose how entries are picked for eviction. The default, {@link EvictionPolicy#LRU},
+	 * can lose its whole hot set to a one-off scan; {@link EvictionPolicy#TINY_LFU} only
+	 * lets new entries in over ones that are used less often. Call before the cache is used.
+	 * 
+	 * @param policy - the eviction policy
+	 * @return this
+	 */
+	public KeyedObjectCache<K, T> withEvictionPolicy(EvictionPolicy policy) {
+		this.evictionPolicy = policy;
+		rebuildStore();
+		return this;
+	}
+
+	private void rebuildStore() {
+		cache = new CacheStore<>(maxSize, maxWeight, weigher == null ? null : CacheEntry::getWeight,
+				evictionPolicy, concurrencyLevel, this::onEvict);
+		rebuildNegativeCache();
+	}
+
+	/**
+	 * The negative cache is split like the main store, so it's rebuilt along with it
+	 */
+	private void rebuildNegativeCache() {
+		if (negativeCacheSize > 0) {
+			negativeCache = new CacheStore<>(negativeCacheSize, cache.getSegmentCount());
+		}
+	}
+
+	/**
+	 * Serve expired objects straight from the cache while a background reload from the
+	 * repo replaces them. Only one reload per key runs at a time. If the reload finds
+	 * nothing in the repo, the expired object is dropped.
+	 * @return this
+	 */
+	public KeyedObjectCache<K, T> withStaleWhileRevalidate() {
+		this.staleWhileRevalidate = true;
+		return this;
+	}
+
+	/**
+	 * Start a background reload for an object when it is read within the given number
+	 * of seconds of its expiration, so hot objects are replaced before they ever expire.
+	 * Objects with a negative cache time never expire and are never refreshed.
+	 * 
+	 * @param seconds - the window before expiration in which a read triggers a reload
+	 * @return this
+	 */
+	public KeyedObjectCache<K, T> withRefreshAhead(int seconds) {
+		this.refreshAheadMs = seconds * 1000L;
+		return this;
+	}
+
+	/**
+	 * Set the executor background reloads, and the repo reads for {@link #getObjectAsync(Object)},
+	 * run on. Defaults to a new virtual thread per reload.
+	 * 
+	 * @param executor - the executor for background reloads
+	 * @return this
+	 */
+	public KeyedObjectCache<K, T> withRefreshExecutor(Executor executor) {
+		this.refreshExecutor = executor;
+		return this;
+	}
+
+	/**
+	 * Remember keys the repo returned null for, so repeated lookups of keys that don't
+	 * exist are answered from memory. Not-found keys are kept apart from cached objects,
+	 * in their own LRU of at most maxEntries, so they can't push real objects out. It is
+	 * split into as many segments as the cache, whether this is called before or after
+	 * {@link #withConcurrencyLevel(int)}.
+	 * 
+	 * @param seconds - how long to remember that a key wasn't found
+	 * @param maxEntries - the max number of not-found keys to remember
+	 * @return this
+	 */
+	public KeyedObjectCache<K, T> withNegativeCaching(int seconds, int maxEntries) {
+		this.negativeCacheMs = seconds * 1000L;
+		this.negativeCacheSize = maxEntries;
+		rebuildNegativeCache();
+		return this;
+	}
+
+	/**
+	 * Add a second tier in a direct (off-heap) buffer. Unexpired objects evicted from the
+	 * heap are encoded into it, and a miss on the heap is looked up there, and moved back to
+	 * the heap if found, before going to the repo. The tier is a circular log, so when it is
+	 * full the oldest entries are overwritten first. Only a small index stays on the heap.
+	 * Call before the cache is used.
+	 * 
+	 * @param capacityBytes - the size of the off-heap buffer
+	 * @param codec - encodes and decodes the cached objects
+	 * @return this
+	 */
+	public KeyedObjectCache<K, T> withOffHeapTier(int capacityBytes, CacheCodec<T> codec) {
+		this.offHeap = new OffHeapStore(capacityBytes);
+		this.codec = codec;
+		return this;
+	}
+
+	/**
+	 * Like {@link #withOffHeapTier(int, CacheCodec)} but the tier is a memory-mapped file,
+	 * so the OS can page it out rather than it counting against process memory. The file's
+	 * previous contents are ignored.
+	 * 
+	 * @param file - the file to map. Created if it doesn't exist
+	 * @param capacityBytes - the size of the mapped region
+	 * @param codec - encodes and decodes the cached objects
+	 * @return this
+	 * @throws IOException if the file can't be opened or mapped
+	 */
+	public KeyedObjectCache<K, T> withOffHeapTier(Path file, int capacityBytes, CacheCodec<T> codec) throws IOException {
+		this.offHeap = new OffHeapStore(file, capacityBytes);
+		this.codec = codec;
+		return this;
+	}
+
+	/**
+	 * Set where the cache gets the time from. Defaults to the system clock;
+	 * {@link CacheClock#coarse()} makes each lookup's clock read a little cheaper. Call before
+	 * the cache is used. With {@link #withExpirySweep(int)} on, anything already cached is
+	 * moved to a wheel started at the new clock's time, keeping its deadline.
+	 * 
+	 * @param clock - the clock to use
+	 * @return this
+	 */
+	public KeyedObjectCache<K, T> withClock(CacheClock clock) {
+		this.clock = clock;
+		TimerWheel<CacheEntry<T>> old = expiryWheel;
+		if (old != null) {
+			TimerWheel<CacheEntry<T>> wheel = new TimerWheel<>(clock.millis());
+			for (Map.Entry<Object, CacheEntry<T>> e : cache.entries()) {
+				old.deschedule(e.getValue());
+				if (e.getValue().getDeadlineMs() != Long.MAX_VALUE) {
+					wheel.schedule(e.getValue());
+				}
+			}
+			expiryWheel = wheel;
+		}
+		return this;
+	}
+
+	/**
+	 * Remove entries from the cache as they expire rather than waiting for them to be read
+	 * or pushed out by newer entries. Every entry with a cache time is scheduled in a timer
+	 * wheel, and a shared background thread advances the wheel every intervalSeconds,
+	 * removing whatever has come due. Entries expire up to about a second late, plus the interval.
+	 * <p>
+	 * Note a swept entry is gone, so with {@link #withStaleWhileRevalidate()} it is only served
+	 * stale until the next sweep. The sweep stops on its own once the cache is garbage collected.
+	 * Calling this again only changes the interval.
+	 * 
+	 * @param intervalSeconds - how often to sweep
+	 * @return this
+	 */
+	public KeyedObjectCache<K, T> withExpirySweep(int intervalSeconds) {
+		if (expiryWheel == null) {
+			expiryWheel = new TimerWheel<>(clock.millis());
+		}
+		if (sweepTask != null) {
+			sweepTask.cancel();
+		}
+		sweepTask = SweepTask.start(this, Math.max(1, intervalSeconds));
+		return this;
+	}
+
+	/**
+	 * Remove everything the expiry sweep finds expired right now. Runs automatically when
+	 * sweeping is on; does nothing when it is off.
+	 */
+	public void cleanUp() {
+		TimerWheel<CacheEntry<T>> wheel = expiryWheel;
+		if (wheel == null) {
+			return;
+		}
+		for (CacheEntry<T> e : wheel.advance(clock.millis())) {
+			if (cache.remove(e.getKey(), e)) {
+				if (e.markExpired()) {
+					stats.recordExpiration();
+				}
+				LOGGER.debug("Swept expired Cache Element {}", e.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Save the heap entries to a file so a restarted process can start warm with
+	 * {@link #loadSnapshot(Path, CacheCodec, CacheCodec)}. Each entry is written with the
+	 * time it was read from the repo, so it expires on its original schedule after a reload.
+	 * Entries already expired are left out, and the least recently used go first so a reload
+	 * rebuilds roughly the same recency order.
+	 * <p>
+	 * The file is written beside the target and moved into place once complete, replacing
+	 * any earlier snapshot. The cache stays usable while saving; entries changing during the
+	 * save may or may not make it in.
+	 *
+	 * @param file - where to write the snapshot
+	 * @param keyCodec - encodes the cache keys (the {@link HasCacheKey} key where used)
+	 * @param valueCodec - encodes the cached objects
+	 * @return the number of entries saved
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public <R> int saveSnapshot(Path file, CacheCodec<R> keyCodec, CacheCodec<T> valueCodec) throws IOException {
+		long now = clock.millis();
+		try (CacheSnapshot.Writer writer = new CacheSnapshot.Writer(file)) {
+			for (Map.Entry<Object, CacheEntry<T>> entry : cache.entries()) {
+				CacheEntry<T> e = entry.getValue();
+				if (e.getDeadlineMs() > now) {
+					writer.add(e.getLastUpdateMs(), keyCodec.encode((R) unmaskNull(entry.getKey())), valueCodec.encode(e.getObject()));
+				}
+			}
+			int saved = writer.commit();
+			LOGGER.debug("Saved {} Cache Elements to {}", saved, file);
+			return saved;
+		}
+	}
+
+	/**
+	 * Load entries saved by {@link #saveSnapshot(Path, CacheCodec, CacheCodec)}. Each keeps
+	 * its original last update time, so only what is left of its cache time counts; entries
+	 * that expired while the snapshot sat on disk are skipped. Loaded entries replace any
+	 * already cached for the same keys.
+	 *
+	 * @param file - the snapshot to read
+	 * @param keyCodec - decodes the cache keys
+	 * @param valueCodec - decodes the cached objects
+	 * @return the number of entries loaded
+	 * @throws IOException if the file can't be read or isn't a complete snapshot
+	 */
+	public <R> int loadSnapshot(Path file, CacheCodec<R> keyCodec, CacheCodec<T> valueCodec) throws IOException {
+		long now = clock.millis();
+		int loaded = 0;
+		try (CacheSnapshot.Reader reader = new CacheSnapshot.Reader(file)) {
+			CacheSnapshot.Record r;
+			while ((r = reader.next()) != null) {
+				T obj = valueCodec.decode(r.value());
+				if (deadlineOf(obj, r.lastUpdateMs()) <= now) {
+					continue;
+				}
+				put(maskNull(keyCodec.decode(r.key())), obj, r.lastUpdateMs());
+				loaded++;
+			}
+		}
+		LOGGER.debug("Loaded {} Cache Elements from {}", loaded, file);
+		return loaded;
+	}
+
+	/**
+	 * Join an {@link InvalidationBus} so invalidations reach the same cache on every node.
+	 * {@link #invalidate(Object)} and {@link #invalidateAll()} here are sent to the other
+	 * nodes, and theirs are applied here.
+	 * 
+	 * @param bus - this node's bus
+	 * @param cacheName - the name of this cache, the same on every node
+	 * @return this
+	 */
+	public KeyedObjectCache<K, T> withInvalidationBus(InvalidationBus bus, String cacheName) {
+		this.invalidationBus = bus;
+		this.cacheName = cacheName;
+		bus.register(cacheName, this::onInvalidation);
+		return this;
+	}
+
+	/**
+	 * Drop the key from the cache (and the off-heap tier and negative cache), so the next
+	 * lookup reads it from the repo. Call after changing the object in the repo. A load
+	 * already running when the key is invalidated still returns what it read but doesn't
+	 * cache it. With an {@link InvalidationBus} the key is dropped on the other nodes too.
+	 * 
+	 * @param key - the key to drop
+	 */
+	public void invalidate(K key) {
+		Object realCacheKey = realKeyOf(key);
+		invalidateLocal(realCacheKey);
+		if (invalidationBus != null) {
+			invalidationBus.invalidate(cacheName, unmaskNull(realCacheKey));
+		}
+	}
+
+	/**
+	 * Empty the cache, and with an {@link InvalidationBus} the same cache on the other nodes
+	 */
+	public void invalidateAll() {
+		invalidateAllLocal();
+		if (invalidationBus != null) {
+			invalidationBus.invalidateAll(cacheName);
+		}
+	}
+
+	/**
+	 * Apply an invalidation from another node
+	 */
+	private void onInvalidation(InvalidationMessage m) {
+		if (m.all()) {
+			invalidateAllLocal();
+		}
+		else {
+			for (Object realCacheKey : m.keys()) {
+				invalidateLocal(maskNull(realCacheKey));
+			}
+		}
+		LOGGER.debug("Applied invalidation from {} for {}", m.sourceId(), m.all() ? "everything" : m.keys());
+	}
 
-			@Override
-			protected boolean removeEldestEntry(Map.Entry<Object, CacheEntry<T>> eldest) {
-				return size() > KeyedObjectCache.this.maxSize;
+	private void invalidateLocal(Object realCacheKey) {
+		// count it first, so a load finishing after the removal sees it
+		invalidations.incrementAndGet();
+		// later lookups shouldn't wait on a load that may read the old object
+		inFlight.remove(realCacheKey);
+		CacheEntry<T> removed = cache.remove(realCacheKey);
+		if (removed != null && expiryWheel != null) {
+			expiryWheel.deschedule(removed);
+		}
+		if (offHeap != null) {
+			offHeap.remove(realCacheKey);
+		}
+		if (negativeCache != null) {
+			negativeCache.remove(realCacheKey);
+		}
+	}
+
+	private void invalidateAllLocal() {
+		invalidations.incrementAndGet();
+		inFlight.clear();
+		if (expiryWheel != null) {
+			for (Map.Entry<Object, CacheEntry<T>> e : cache.entries()) {
+				expiryWheel.deschedule(e.getValue());
 			}
-		};
+		}
+		cache.clear();
+		if (offHeap != null) {
+			offHeap.clear();
+		}
+		if (negativeCache != null) {
+			negativeCache.clear();
+		}
 	}
 
 	/**
@@ -60,68 +566,729 @@ public class KeyedObjectCache<K, T extends Cacheable> {
 	 * @return
 	 */
 	public T getObject(K key) {
-		CacheEntry<T> e = null;
+		Object realCacheKey = realKeyOf(key);
+
+		long now = clock.millis();
+		T obj = fromEntry(key, realCacheKey, cache.get(realCacheKey), now);
+		if (obj != null || isKnownMissing(realCacheKey, now)) {
+			return obj;
+		}
+		obj = fromOffHeap(realCacheKey, now);
+		if (obj != null) {
+			return obj;
+		}
 
-		// Obtain the key to use for the cache lookup. Will either be the key object itself or
-		// obtain the real key from it if the key implements HasCacheKey.
-		Object realCacheKey = key instanceof HasCacheKey ? ((HasCacheKey<Object>) key).getCacheKey() : key;
+		// We are here either because of a cache miss or an expired hit. go to the
+		// repo to get a fresh object, add it to the cache and return it.
+		stats.recordMiss();
+		return load(key, realCacheKey);
+	}
 
-		synchronized (this) {
-			e = cache.get(realCacheKey);
+	/**
+	 * Get a {@link Cacheable} object by key without blocking. Hits come back as an already
+	 * completed future. On a miss the repo read runs elsewhere: on the
+	 * {@link AsyncCacheableRepo} if there is one, otherwise on a virtual thread (or the
+	 * executor given to {@link #withRefreshExecutor(Executor)}). Like {@link #getObject(Object)},
+	 * a load already in flight for the key is shared rather than started again.
+	 * <p>
+	 * Each caller gets its own future, so cancelling it doesn't cancel the load for anyone else.
+	 * 
+	 * @param key - The object of type K to use as a lookup.
+	 * @return a future for the object, completed with null if the repo doesn't have it
+	 */
+	public CompletableFuture<T> getObjectAsync(K key) {
+		Object realCacheKey = realKeyOf(key);
+
+		long now = clock.millis();
+		T obj = fromEntry(key, realCacheKey, cache.get(realCacheKey), now);
+		if (obj != null || isKnownMissing(realCacheKey, now)) {
+			return CompletableFuture.completedFuture(obj);
+		}
+		obj = fromOffHeap(realCacheKey, now);
+		if (obj != null) {
+			return CompletableFuture.completedFuture(obj);
 		}
 
-		long now = System.currentTimeMillis();
+		stats.recordMiss();
+		return loadAsync(key, realCacheKey);
+	}
 
-		if (null != e && e.getObject() != null) {
+	/**
+	 * Get {@link Cacheable} objects for a number of keys at once. Hits are read from the
+	 * cache taking each lock only once for the whole batch, and all the misses are read
+	 * from the repo in a single {@link CacheableRepo#getAll(Collection)} call. Misses that
+	 * are already being loaded by another thread are waited for rather than read again.
+	 * 
+	 * @param keys - the keys to look up
+	 * @return a map from each key that was found to its object. Keys that are in neither
+	 * the cache nor the repo are left out
+	 */
+	public Map<K, T> getAll(Collection<K> keys) {
+		List<K> keyList = new ArrayList<>(new LinkedHashSet<>(keys));
+		List<Object> realKeys = new ArrayList<>(keyList.size());
+		for (K key : keyList) {
+			realKeys.add(realKeyOf(key));
+		}
 
-			// We found the item in the cache. Now check the expiration
-			final long msSinceLastUpdate = now - e.getLastUpdateMs();
-			final long cacheTTL = e.getObject().getCacheSeconds() * 1000;
+		List<CacheEntry<T>> entries = cache.getAll(realKeys);
+		long now = clock.millis();
 
-			if (e.getObject().getCacheSeconds() < 0 || msSinceLastUpdate < cacheTTL) {
-				// In the cache and still fresh enough
-				return e.getObject();
+		Map<K, T> result = new LinkedHashMap<>();
+		List<Integer> misses = new ArrayList<>();
+		for (int i = 0; i < keyList.size(); i++) {
+			T obj = fromEntry(keyList.get(i), realKeys.get(i), entries.get(i), now);
+			if (obj != null) {
+				result.put(keyList.get(i), obj);
 			}
-			else {
-				// Expired, so set the object as null so we read-thru the repo to get it
-				LOGGER.debug("Expired Cache Element found for {}", realCacheKey);
-				e = null;
+			else if (!isKnownMissing(realKeys.get(i), now)) {
+				obj = fromOffHeap(realKeys.get(i), now);
+				if (obj != null) {
+					result.put(keyList.get(i), obj);
+				}
+				else {
+					stats.recordMiss();
+					misses.add(i);
+				}
 			}
 		}
 
-		// We are here either because of a cache miss or an expired hit. go to the
-		// repo to get a fresh object, add it
-		// to the cache and return it.
+		if (!misses.isEmpty()) {
+			loadAll(keyList, realKeys, misses, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Obtain the key to use for the cache lookup. Will either be the key object itself or
+	 * obtain the real key from it if the key implements HasCacheKey. A null key becomes
+	 * {@link #NULL_KEY}.
+	 */
+	@SuppressWarnings("unchecked")
+	private Object realKeyOf(K key) {
+		return maskNull(key instanceof HasCacheKey ? ((HasCacheKey<Object>) key).getCacheKey() : key);
+	}
+
+	private static Object maskNull(Object realCacheKey) {
+		return realCacheKey == null ? NULL_KEY : realCacheKey;
+	}
+
+	/**
+	 * The key as callers know it, for anything that leaves the cache: snapshots and the bus
+	 */
+	private static Object unmaskNull(Object realCacheKey) {
+		return realCacheKey == NULL_KEY ? null : realCacheKey;
+	}
+
+	/**
+	 * True if negative caching is on and the repo recently said it doesn't have this key
+	 */
+	private boolean isKnownMissing(Object realCacheKey, long now) {
+		if (negativeCache == null) {
+			return false;
+		}
+		Long expiresMs = negativeCache.get(realCacheKey);
+		if (expiresMs != null && now < expiresMs) {
+			stats.recordNegativeHit();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Look for the key in the off-heap tier. If it's there and unexpired, move it back to
+	 * the heap and return it. Like {@link #store(Object, Object, long)}, what was read is not
+	 * kept if anything was invalidated meanwhile, and it never replaces a newer object a load
+	 * put on the heap while it was being decoded
+	 */
+	private T fromOffHeap(Object realCacheKey, long now) {
+		if (offHeap == null) {
+			return null;
+		}
+		long generation = invalidations.get();
+		OffHeapStore.Found found = offHeap.get(realCacheKey, now);
+		if (found == null) {
+			return null;
+		}
+
+		T obj;
+		try {
+			obj = codec.decode(ByteBuffer.wrap(found.payload()));
+		}
+		catch (RuntimeException ex) {
+			LOGGER.warn("Could not decode off-heap entry for {}", realCacheKey, ex);
+			offHeap.remove(realCacheKey);
+			return null;
+		}
+		if (invalidations.get() != generation) {
+			LOGGER.debug("Not restoring {} from off-heap, invalidated while decoding", realCacheKey);
+			return null;
+		}
+
+		CacheEntry<T> e = put(realCacheKey, obj, found.lastUpdateMs(), true);
 		if (e == null) {
-			// try to get a Fresh Object from the repo. Use the actual key object
-			T obj = repository.get(key);
-			e = new CacheEntry<T>();
+			// a load got there first, and what it put is newer
+			T fresh = getFresh(realCacheKey);
+			if (fresh != null) {
+				stats.recordHit();
+				return fresh;
+			}
+			return null;
+		}
+		// checked after the put, as in store
+		if (invalidations.get() != generation) {
+			if (cache.remove(realCacheKey, e) && expiryWheel != null) {
+				expiryWheel.deschedule(e);
+			}
+			return null;
+		}
+		stats.recordOffHeapHit();
+		return obj;
+	}
+
+	/**
+	 * Decide what a cache lookup can serve. Returns the cached object if it is fresh, or
+	 * stale but allowed to be served while it's refreshed. Returns null when the caller
+	 * has to read through to the repo.
+	 */
+	private T fromEntry(K key, Object realCacheKey, CacheEntry<T> e, long now) {
+		if (null == e || e.getObject() == null) {
+			return null;
+		}
+
+		// We found the item in the cache. Now check the expiration
+		if (isFresh(e, now)) {
+			// In the cache and still fresh enough. If it is about to expire, get a
+			// new one loading now so the next reader doesn't find it expired
+			if (refreshAheadMs > 0 && !isFresh(e, now + refreshAheadMs)) {
+				refreshInBackground(key, realCacheKey);
+			}
+			stats.recordHit();
+			return e.getObject();
+		}
+
+		LOGGER.debug("Expired Cache Element found for {}", realCacheKey);
+		if (e.markExpired()) {
+			stats.recordExpiration();
+		}
+		if (staleWhileRevalidate) {
+			refreshInBackground(key, realCacheKey);
+			stats.recordStaleServe();
+			stats.recordHit();
+			return e.getObject();
+		}
+		// Expired, so the caller has to read-thru the repo to get it
+		return null;
+	}
 
+	/**
+	 * Return a snapshot of the cache's counters
+	 * @return
+	 */
+	public CacheStats getStats() {
+		return stats.snapshot(cache.size(), cache.weight(), getNegativeCacheSize(),
+				offHeap == null ? 0 : offHeap.size());
+	}
+
+	/**
+	 * Return the number of lookups answered with null from the negative cache
+	 * @return
+	 */
+	public long getNegativeHitCount() {
+		return stats.getNegativeHitCount();
+	}
+
+	/**
+	 * Return the number of not-found keys currently remembered
+	 * @return
+	 */
+	public int getNegativeCacheSize() {
+		return negativeCache == null ? 0 : negativeCache.size();
+	}
+
+	/**
+	 * Return the number of loads that were satisfied by waiting on a load already
+	 * in progress for the same key rather than going to the repo again.
+	 * @return
+	 */
+	public long getCoalescedLoadCount() {
+		return stats.getCoalescedLoadCount();
+	}
+
+	/**
+	 * Read through to the repo for a key, making sure only one load per key runs at a time.
+	 * Callers that arrive while a load is in progress wait for it and share its result.
+	 */
+	private T load(K key, Object realCacheKey) {
+		CompletableFuture<T> ours = new CompletableFuture<>();
+		CompletableFuture<T> running = inFlight.putIfAbsent(realCacheKey, ours);
+
+		if (running != null) {
+			stats.recordCoalescedLoad();
+			LOGGER.debug("Waiting on in-flight load for {}", realCacheKey);
+			return await(running);
+		}
+
+		// Another thread may have finished a load between our cache read and
+		// registering ours. If so, use what it put in the cache.
+		T obj = getFresh(realCacheKey);
+		if (obj != null) {
+			inFlight.remove(realCacheKey, ours);
+			ours.complete(obj);
+			return obj;
+		}
+		return readThrough(key, realCacheKey, ours);
+	}
+
+	/**
+	 * The non-blocking version of {@link #load(Object, Object)}: join the load in flight for
+	 * the key, or start one without waiting for it
+	 */
+	private CompletableFuture<T> loadAsync(K key, Object realCacheKey) {
+		CompletableFuture<T> ours = new CompletableFuture<>();
+		CompletableFuture<T> running = inFlight.putIfAbsent(realCacheKey, ours);
+
+		if (running != null) {
+			stats.recordCoalescedLoad();
+			LOGGER.debug("Joining in-flight load for {}", realCacheKey);
+			return running.copy();
+		}
+
+		T obj = getFresh(realCacheKey);
+		if (obj != null) {
+			inFlight.remove(realCacheKey, ours);
+			ours.complete(obj);
+			return CompletableFuture.completedFuture(obj);
+		}
+
+		if (asyncRepository != null) {
+			readThroughAsync(key, realCacheKey, ours);
+		}
+		else {
+			try {
+				getRefreshExecutor().execute(() -> {
+					try {
+						readThrough(key, realCacheKey, ours);
+					}
+					catch (RuntimeException ex) {
+						// handed to the callers through the future
+						LOGGER.debug("Async load failed for {}", realCacheKey, ex);
+					}
+				});
+			}
+			catch (RejectedExecutionException ex) {
+				inFlight.remove(realCacheKey, ours);
+				ours.completeExceptionally(ex);
+			}
+		}
+		return ours.copy();
+	}
+
+	/**
+	 * Start a read from the async repo. When it finishes, cache the object and complete
+	 * the in-flight future for the key with it
+	 */
+	private void readThroughAsync(K key, Object realCacheKey, CompletableFuture<T> ours) {
+		long start = System.nanoTime();
+		long generation = invalidations.get();
+		CompletableFuture<T> reading;
+		try {
+			reading = asyncRepository.get(key);
+			if (reading == null) {
+				throw new NullPointerException("AsyncCacheableRepo returned no future for " + key);
+			}
+		}
+		catch (RuntimeException ex) {
+			reading = CompletableFuture.failedFuture(ex);
+		}
+
+		reading.whenComplete((obj, ex) -> {
+			stats.recordLoad(System.nanoTime() - start, ex != null);
+			try {
+				if (ex == null) {
+					store(realCacheKey, obj, generation);
+					ours.complete(obj);
+				}
+				else {
+					ours.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+				}
+			}
+			finally {
+				inFlight.remove(realCacheKey, ours);
+			}
+		});
+	}
+
+	/**
+	 * Load the missed keys (indexes into keyList and realKeys) into the result. Keys no other
+	 * thread is loading are claimed and read from the repo in one batch; the rest are waited for.
+	 */
+	private void loadAll(List<K> keyList, List<Object> realKeys, List<Integer> misses, Map<K, T> result) {
+		List<K> ours = new ArrayList<>();
+		Map<K, CompletableFuture<T>> futures = new LinkedHashMap<>();
+
+		for (int i : misses) {
+			CompletableFuture<T> f = new CompletableFuture<>();
+			CompletableFuture<T> running = inFlight.putIfAbsent(realKeys.get(i), f);
+			if (running != null) {
+				stats.recordCoalescedLoad();
+				futures.put(keyList.get(i), running);
+			}
+			else {
+				ours.add(keyList.get(i));
+				futures.put(keyList.get(i), f);
+			}
+		}
+
+		if (!ours.isEmpty()) {
+			long start = System.nanoTime();
+			long generation = invalidations.get();
+			boolean failed = true;
+			try {
+				Map<K, T> loaded = repository.getAll(ours);
+				failed = false;
+				stats.recordLoad(System.nanoTime() - start, false);
+				for (K key : ours) {
+					T obj = loaded == null ? null : loaded.get(key);
+					store(realKeyOf(key), obj, generation);
+					futures.get(key).complete(obj);
+				}
+			}
+			catch (RuntimeException | Error ex) {
+				if (failed) {
+					stats.recordLoad(System.nanoTime() - start, true);
+				}
+				for (K key : ours) {
+					futures.get(key).completeExceptionally(ex);
+				}
+				throw ex;
+			}
+			finally {
+				for (K key : ours) {
+					inFlight.remove(realKeyOf(key), futures.get(key));
+				}
+			}
+		}
+
+		for (Map.Entry<K, CompletableFuture<T>> f : futures.entrySet()) {
+			T obj = await(f.getValue());
 			if (obj != null) {
-				e.setLastUpdateMs(now);
-				e.setObject(obj);
+				result.put(f.getKey(), obj);
+			}
+		}
+	}
+
+	/**
+	 * Start a reload of the key on the refresh executor unless one is already running
+	 */
+	private void refreshInBackground(K key, Object realCacheKey) {
+		CompletableFuture<T> ours = new CompletableFuture<>();
+		if (inFlight.putIfAbsent(realCacheKey, ours) != null) {
+			return;
+		}
+
+		LOGGER.debug("Background refresh for {}", realCacheKey);
+		try {
+			getRefreshExecutor().execute(() -> {
+				try {
+					readThrough(key, realCacheKey, ours);
+				}
+				catch (RuntimeException ex) {
+					LOGGER.warn("Background refresh failed for {}", realCacheKey, ex);
+				}
+			});
+		}
+		catch (RejectedExecutionException ex) {
+			inFlight.remove(realCacheKey, ours);
+			ours.completeExceptionally(ex);
+			LOGGER.warn("Background refresh rejected for {}", realCacheKey);
+		}
+	}
+
+	private Executor getRefreshExecutor() {
+		Executor ex = refreshExecutor;
+		if (ex == null) {
+			synchronized (this) {
+				if (refreshExecutor == null) {
+					refreshExecutor = Executors.newThreadPerTaskExecutor(
+							Thread.ofVirtual().name("cache-refresh-", 0).factory());
+				}
+				ex = refreshExecutor;
+			}
+		}
+		return ex;
+	}
+
+	/**
+	 * Get a fresh object from the repo, cache it and complete the in-flight future for the
+	 * key with it. Use the actual key object for the repo read
+	 */
+	private T readThrough(K key, Object realCacheKey, CompletableFuture<T> ours) {
+		long start = System.nanoTime();
+		long generation = invalidations.get();
+		boolean failed = true;
+		try {
+			T obj = repository.get(key);
+			failed = false;
+			stats.recordLoad(System.nanoTime() - start, false);
+			store(realCacheKey, obj, generation);
+			ours.complete(obj);
+			return obj;
+		}
+		catch (RuntimeException | Error ex) {
+			if (failed) {
+				stats.recordLoad(System.nanoTime() - start, true);
+			}
+			ours.completeExceptionally(ex);
+			throw ex;
+		}
+		finally {
+			inFlight.remove(realCacheKey, ours);
+		}
+	}
+
+	/**
+	 * Called by the store, under its lock, for each entry it evicts to stay within bounds.
+	 * Only queues the entry for the off-heap tier; {@link #moveEvictedOffHeap()} encodes it
+	 * once the lock is released
+	 */
+	private void onEvict(Object realCacheKey, CacheEntry<T> e) {
+		stats.recordEviction();
+		if (expiryWheel != null) {
+			expiryWheel.deschedule(e);
+		}
+		if (offHeap != null) {
+			evicted.add(new Evicted<>(realCacheKey, e, invalidations.get()));
+		}
+	}
+
+	/**
+	 * Encode the queued evictions into the off-heap tier. Any thread that put to the heap
+	 * drains whatever is queued, its own evictions and anyone else's. Entries that have since
+	 * expired, or that an invalidation may have made out of date, are dropped
+	 */
+	private void moveEvictedOffHeap() {
+		Evicted<T> ev;
+		while ((ev = evicted.poll()) != null) {
+			CacheEntry<T> e = ev.entry();
+			if (e.getDeadlineMs() <= clock.millis() || invalidations.get() != ev.generation()) {
+				continue;
+			}
+			try {
+				offHeap.put(ev.key(), codec.encode(e.getObject()), e.getLastUpdateMs(), e.getDeadlineMs());
+			}
+			catch (RuntimeException ex) {
+				LOGGER.warn("Could not move {} off-heap", ev.key(), ex);
+			}
+		}
+	}
 
-				synchronized (this) {
-					cache.put(realCacheKey, e);
-					LOGGER.debug("Cache Put for {}", realCacheKey);
+	/**
+	 * Put a freshly read object in the cache. A null means the repo doesn't have it, so
+	 * any stale copy is dropped rather than served again. If anything was invalidated since
+	 * the read started (generation is the invalidation count from then), what was read may
+	 * already be out of date, so it isn't kept.
+	 */
+	private void store(Object realCacheKey, T obj, long generation) {
+		if (obj != null) {
+			CacheEntry<T> e = put(realCacheKey, obj, clock.millis());
+			// checked after the put: an invalidation either shows up here or removes the entry itself
+			if (invalidations.get() != generation) {
+				LOGGER.debug("Not caching {}, invalidated while loading", realCacheKey);
+				if (cache.remove(realCacheKey, e) && expiryWheel != null) {
+					expiryWheel.deschedule(e);
 				}
+				return;
+			}
+			if (negativeCache != null) {
+				negativeCache.remove(realCacheKey);
+			}
+		}
+		else {
+			if (offHeap != null) {
+				offHeap.remove(realCacheKey);
+			}
+			CacheEntry<T> removed = cache.remove(realCacheKey);
+			if (removed != null && expiryWheel != null) {
+				expiryWheel.deschedule(removed);
+			}
+			if (negativeCache != null && invalidations.get() == generation) {
+				negativeCache.put(realCacheKey, clock.millis() + negativeCacheMs);
+				LOGGER.debug("Negative Cache Put for {}", realCacheKey);
+			}
+		}
+	}
+
+	/**
+	 * Put an object in the heap cache as of the time it was read from the repo. Any copy
+	 * in the off-heap tier is dropped, since the heap now has the current one
+	 * @return the new entry
+	 */
+	private CacheEntry<T> put(Object realCacheKey, T obj, long lastUpdateMs) {
+		return put(realCacheKey, obj, lastUpdateMs, false);
+	}
+
+	/**
+	 * @param ifAbsent - only put if the heap has nothing for the key
+	 * @return the new entry, or null if ifAbsent and the key already had one
+	 */
+	private CacheEntry<T> put(Object realCacheKey, T obj, long lastUpdateMs, boolean ifAbsent) {
+		CacheEntry<T> e = new CacheEntry<T>();
+		e.setKey(realCacheKey);
+		e.setLastUpdateMs(lastUpdateMs);
+		e.setObject(obj);
+		e.setDeadlineMs(deadlineOf(obj, lastUpdateMs));
+		if (weigher != null) {
+			e.setWeight(weigher.weigh(obj));
+		}
+		if (offHeap != null) {
+			// write out older evictions first, so none of them can land on top of this one
+			moveEvictedOffHeap();
+			offHeap.remove(realCacheKey);
+		}
+
+		CacheEntry<T> replaced;
+		if (ifAbsent) {
+			if (cache.putIfAbsent(realCacheKey, e) != null) {
+				return null;
+			}
+			replaced = null;
+		}
+		else {
+			replaced = cache.put(realCacheKey, e);
+		}
+		LOGGER.debug("Cache Put for {}", realCacheKey);
+		if (offHeap != null) {
+			moveEvictedOffHeap();
+		}
+		if (expiryWheel != null) {
+			if (replaced != null) {
+				expiryWheel.deschedule(replaced);
+			}
+			if (e.getDeadlineMs() != Long.MAX_VALUE) {
+				expiryWheel.schedule(e);
+			}
+		}
+		return e;
+	}
+
+	/**
+	 * Return the cached object for the key if it is present and not expired, otherwise null
+	 */
+	private T getFresh(Object realCacheKey) {
+		CacheEntry<T> e = cache.get(realCacheKey);
+		return e != null && isFresh(e, clock.millis()) ? e.getObject() : null;
+	}
+
+	/**
+	 * Fresh means before the deadline worked out when the entry was stored, so a hit
+	 * doesn't ask the object for its cache time
+	 */
+	private boolean isFresh(CacheEntry<T> e, long now) {
+		return now < e.getDeadlineMs();
+	}
+
+	/**
+	 * When an object read at lastUpdateMs expires. Objects with a negative cache time never do
+	 */
+	static long deadlineOf(Cacheable obj, long lastUpdateMs) {
+		return obj.getCacheSeconds() < 0 ? Long.MAX_VALUE : lastUpdateMs + obj.getCacheSeconds() * 1000L;
+	}
+
+	/**
+	 * Wait for another thread's load, rethrowing its failure as-is
+	 */
+	static <V> V await(CompletableFuture<V> f) {
+		try {
+			return f.join();
+		}
+		catch (CompletionException ex) {
+			if (ex.getCause() instanceof RuntimeException re) {
+				throw re;
+			}
+			if (ex.getCause() instanceof Error err) {
+				throw err;
 			}
+			throw ex;
 		}
-		return e.getObject();
 	}
 
 	/**
-	 * A class to store an entry in the cache. Consists of a {@link Cacheable<K>}
-	 * and the time of its last refresh
+	 * A class to store an entry in the cache. Consists of a {@link Cacheable<K>},
+	 * the time of its last refresh and when that refresh expires. It is also its own
+	 * node in the expiry wheel, so it keeps its key for the sweep to remove it by.
+	 * Equality is identity. Whoever first finds it expired marks it, so its expiration is
+	 * only counted once however often it is served stale.
 	 * 
 	 * @author bdamiano
 	 *
 	 * @param <T> The type we're caching
 	 */
-	@Data
-	private static class CacheEntry<T> {
+	@Getter
+	@Setter
+	private static class CacheEntry<T> extends TimerWheel.Node {
+		private Object key;
 		private T object;
 		private long lastUpdateMs;
+		private long deadlineMs;
+		private long weight;
+		@Getter(AccessLevel.NONE)
+		@Setter(AccessLevel.NONE)
+		private boolean expired;
+
+		/**
+		 * @return true the first time only
+		 */
+		synchronized boolean markExpired() {
+			if (expired) {
+				return false;
+			}
+			expired = true;
+			return true;
+		}
+	}
+
+	/**
+	 * Periodically advances a cache's expiry wheel on a shared daemon thread. Holds the
+	 * cache weakly and cancels itself once the cache has been collected.
+	 */
+	private static class SweepTask implements Runnable {
+		private static ScheduledExecutorService scheduler;
+
+		private final WeakReference<KeyedObjectCache<?, ?>> cacheRef;
+		private ScheduledFuture<?> future;
+
+		private SweepTask(KeyedObjectCache<?, ?> cache) {
+			cacheRef = new WeakReference<>(cache);
+		}
+
+		static synchronized SweepTask start(KeyedObjectCache<?, ?> cache, int intervalSeconds) {
+			if (scheduler == null) {
+				scheduler = Executors.newSingleThreadScheduledExecutor(
+						Thread.ofPlatform().daemon().name("cache-expiry-sweep").factory());
+			}
+			SweepTask task = new SweepTask(cache);
+			task.future = scheduler.scheduleWithFixedDelay(task, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+			return task;
+		}
+
+		void cancel() {
+			future.cancel(false);
+		}
+
+		@Override
+		public void run() {
+			KeyedObjectCache<?, ?> cache = cacheRef.get();
+			if (cache == null) {
+				future.cancel(false);
+				return;
+			}
+			try {
+				cache.cleanUp();
+			}
+			catch (RuntimeException ex) {
+				LOGGER.warn("Expiry sweep failed", ex);
+			}
+		}
 	}
 
 	/**
@@ -134,6 +1301,83 @@ public class KeyedObjectCache<K, T extends Cacheable> {
 	 */
 	public static interface CacheableRepo<K, T> {
 		T get(K key);
+
+		/**
+		 * Read a batch of objects in one round trip. The default just calls
+		 * {@link #get(Object)} for each key; override it when the repo can do better.
+		 * 
+		 * @param keys - the keys to read
+		 * @return a map from key to object, keyed by the same key objects that were passed in.
+		 * Keys that aren't found may be left out or mapped to null
+		 */
+		default Map<K, T> getAll(Collection<K> keys) {
+			Map<K, T> result = new HashMap<>();
+			for (K key : keys) {
+				result.put(key, get(key));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * A repo that reads without blocking, for {@link KeyedObjectCache#ofAsyncRepo(int, AsyncCacheableRepo)}.
+	 * The future is completed with null when the repo doesn't have the key.
+	 * 
+	 * @author bdamiano
+	 *
+	 * @param <K> the key type
+	 * @param <T> the object type
+	 */
+	public static interface AsyncCacheableRepo<K, T> {
+		CompletableFuture<T> get(K key);
+	}
+
+	/**
+	 * An entry evicted from the heap, waiting to be written off-heap. Generation is the
+	 * invalidation count when it was evicted
+	 */
+	private record Evicted<T>(Object key, CacheEntry<T> entry, long generation) {}
+
+	/**
+	 * Adapts an {@link AsyncCacheableRepo} for the blocking read paths. A batch starts every
+	 * read before waiting on any of them.
+	 */
+	private static class BlockingRepo<K, T> implements CacheableRepo<K, T> {
+		private final AsyncCacheableRepo<K, T> repo;
+
+		BlockingRepo(AsyncCacheableRepo<K, T> repo) {
+			this.repo = repo;
+		}
+
+		@Override
+		public T get(K key) {
+			return await(repo.get(key));
+		}
+
+		@Override
+		public Map<K, T> getAll(Collection<K> keys) {
+			Map<K, CompletableFuture<T>> reads = new LinkedHashMap<>();
+			for (K key : keys) {
+				reads.put(key, repo.get(key));
+			}
+			Map<K, T> result = new HashMap<>();
+			for (Map.Entry<K, CompletableFuture<T>> r : reads.entrySet()) {
+				result.put(r.getKey(), await(r.getValue()));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Gives the weight of a cached object for {@link KeyedObjectCache#withMaximumWeight(long, Weigher)}.
+	 * Must be non-negative and must not change while the object is cached.
+	 * 
+	 * @author bdamiano
+	 *
+	 * @param <T> the object type
+	 */
+	public static interface Weigher<T> {
+		long weigh(T object);
 	}
 
 	/**
@@ -0,0 +1,164 @@
+package net.rockscience.util.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.rockscience.util.cache.KeyedObjectCache.Cacheable;
+
+/**
+ * A {@link KeyedObjectCache} for objects looked up by a primitive long, such as a numeric
+ * ID. It keeps the same cache time and least recently used eviction as the default
+ * {@link KeyedObjectCache}, but stores its entries in a primitive open-addressing table so
+ * keys are never boxed and a hit allocates nothing and follows no pointers but to the
+ * object itself.
+ * <p>
+ * Like the default cache it is guarded by a single lock, and concurrent misses on the same
+ * key share one load from the {@link LongCacheableRepo}.
+ *
+ * @author bdamiano
+ * @param <T> The cached object
+ */
+public class LongKeyedObjectCache<T extends Cacheable> {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(LongKeyedObjectCache.class);
+
+	private final LongCacheableRepo<T> repository;
+	// guarded by itself
+	private final LongLruTable<T> table;
+
+	// Loads currently running against the repo. Only touched on a miss
+	private final ConcurrentMap<Long, CompletableFuture<T>> inFlight = new ConcurrentHashMap<>();
+	private final CacheStatsCounter stats = new CacheStatsCounter();
+
+	private CacheClock clock = CacheClock.system();
+
+	/**
+	 * @param maxSize - the max number of items to keep in the cache. The least recently
+	 * used will be evicted when full
+	 * @param repo - the repo to read through to
+	 */
+	public LongKeyedObjectCache(int maxSize, LongCacheableRepo<T> repo) {
+		repository = repo;
+		table = new LongLruTable<>(maxSize);
+	}
+
+	/**
+	 * Set where the cache gets the time from. Call before the cache is used.
+	 *
+	 * @param clock - the clock to use
+	 * @return this
+	 */
+	public LongKeyedObjectCache<T> withClock(CacheClock clock) {
+		this.clock = clock;
+		return this;
+	}
+
+	/**
+	 * Get a {@link Cacheable} object by key, reading through to the repo on a miss or if
+	 * the cached one has expired.
+	 *
+	 * @param key - the key to look up
+	 * @return the object, or null if the repo doesn't have it
+	 */
+	public T getObject(long key) {
+		long now = clock.millis();
+		synchronized (table) {
+			int n = table.find(key);
+			if (n != LongLruTable.NONE) {
+				if (now < table.deadline(n)) {
+					table.touch(n);
+					stats.recordHit();
+					return table.value(n);
+				}
+				LOGGER.debug("Expired Cache Element found for {}", key);
+				stats.recordExpiration();
+			}
+		}
+		stats.recordMiss();
+		return load(key);
+	}
+
+	/**
+	 * Return a snapshot of the cache's counters
+	 * @return
+	 */
+	public CacheStats getStats() {
+		int size;
+		synchronized (table) {
+			size = table.size();
+		}
+		return stats.snapshot(size, 0, 0, 0);
+	}
+
+	/**
+	 * Read through to the repo for a key, making sure only one load per key runs at a time
+	 */
+	private T load(long key) {
+		CompletableFuture<T> ours = new CompletableFuture<>();
+		CompletableFuture<T> running = inFlight.putIfAbsent(key, ours);
+		if (running != null) {
+			stats.recordCoalescedLoad();
+			return KeyedObjectCache.await(running);
+		}
+
+		try {
+			// another thread may have finished a load between our lookup and registering ours
+			long now = clock.millis();
+			synchronized (table) {
+				int n = table.find(key);
+				if (n != LongLruTable.NONE && now < table.deadline(n)) {
+					T obj = table.value(n);
+					ours.complete(obj);
+					return obj;
+				}
+			}
+			return readThrough(key, ours);
+		}
+		finally {
+			inFlight.remove(key, ours);
+		}
+	}
+
+	private T readThrough(long key, CompletableFuture<T> ours) {
+		long start = System.nanoTime();
+		T obj;
+		try {
+			obj = repository.get(key);
+		}
+		catch (RuntimeException | Error ex) {
+			stats.recordLoad(System.nanoTime() - start, true);
+			ours.completeExceptionally(ex);
+			throw ex;
+		}
+		stats.recordLoad(System.nanoTime() - start, false);
+
+		long now = clock.millis();
+		synchronized (table) {
+			if (obj == null) {
+				// the repo doesn't have it any more, so don't serve a stale copy
+				table.remove(key);
+			}
+			else if (table.put(key, obj, KeyedObjectCache.deadlineOf(obj, now))) {
+				stats.recordEviction();
+			}
+		}
+		LOGGER.debug("Cache Put for {}", key);
+		ours.complete(obj);
+		return obj;
+	}
+
+	/**
+	 * The backing repository for a {@link LongKeyedObjectCache}
+	 *
+	 * @author bdamiano
+	 *
+	 * @param <T> the object type
+	 */
+	public static interface LongCacheableRepo<T> {
+		T get(long key);
+	}
+}
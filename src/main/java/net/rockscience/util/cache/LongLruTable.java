@@ -0,0 +1,200 @@
+package net.rockscience.util.cache;
+
+/**
+ * The backing map for a {@link LongKeyedObjectCache}: a fixed-capacity open-addressing hash
+ * table of primitive long keys, with a least recently used list for eviction.
+ * <p>
+ * Entries are numbered nodes stored across parallel arrays (key, value, deadline and the
+ * LRU links), so nothing is allocated per entry and a lookup touches no objects but the
+ * value. The hash table holds node numbers and is probed linearly; deletes shift later
+ * entries back rather than leaving tombstones, so probes stay short however many entries
+ * come and go. The table is kept at most half full.
+ * <p>
+ * Not thread safe; the cache guards it with a lock.
+ *
+ * @author bdamiano
+ * @param <V> the stored value type
+ */
+class LongLruTable<V> {
+	static final int NONE = -1;
+
+	private final int capacity;
+	// slot -> node number + 1, 0 for an empty slot
+	private final int[] slots;
+	private final int mask;
+
+	// per node
+	private final long[] keys;
+	private final Object[] values;
+	private final long[] deadlines;
+	// LRU list links. Node number capacity is the list head, so eldest is next[capacity]
+	private final int[] prev;
+	private final int[] next;
+
+	private int size;
+	// unused nodes, chained through next
+	private int free;
+
+	LongLruTable(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be at least 1");
+		}
+		this.capacity = capacity;
+		int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) * 2;
+		slots = new int[tableSize];
+		mask = tableSize - 1;
+
+		keys = new long[capacity];
+		values = new Object[capacity];
+		deadlines = new long[capacity];
+		prev = new int[capacity + 1];
+		next = new int[capacity + 1];
+
+		prev[capacity] = capacity;
+		next[capacity] = capacity;
+		for (int n = 0; n < capacity; n++) {
+			next[n] = n + 1 < capacity ? n + 1 : NONE;
+		}
+		free = 0;
+	}
+
+	/**
+	 * @return the node holding the key, or {@link #NONE}
+	 */
+	int find(long key) {
+		for (int s = home(key);; s = (s + 1) & mask) {
+			int n = slots[s] - 1;
+			if (n == NONE || keys[n] == key) {
+				return n;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	V value(int node) {
+		return (V) values[node];
+	}
+
+	long deadline(int node) {
+		return deadlines[node];
+	}
+
+	/**
+	 * Mark the node most recently used
+	 */
+	void touch(int node) {
+		unlink(node);
+		linkLast(node);
+	}
+
+	/**
+	 * Put or replace the key's value, evicting the least recently used entry if full
+	 * @return true if an entry was evicted to make room
+	 */
+	boolean put(long key, V value, long deadlineMs) {
+		int n = find(key);
+		if (n != NONE) {
+			values[n] = value;
+			deadlines[n] = deadlineMs;
+			touch(n);
+			return false;
+		}
+
+		boolean evicting = size == capacity;
+		if (evicting) {
+			removeNode(next[capacity]);
+		}
+
+		n = free;
+		free = next[n];
+		keys[n] = key;
+		values[n] = value;
+		deadlines[n] = deadlineMs;
+		linkLast(n);
+		size++;
+
+		int s = home(key);
+		while (slots[s] != 0) {
+			s = (s + 1) & mask;
+		}
+		slots[s] = n + 1;
+		return evicting;
+	}
+
+	/**
+	 * @return true if the key was there
+	 */
+	boolean remove(long key) {
+		int n = find(key);
+		if (n == NONE) {
+			return false;
+		}
+		removeNode(n);
+		return true;
+	}
+
+	void clear() {
+		while (size > 0) {
+			removeNode(next[capacity]);
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	private void removeNode(int n) {
+		deleteSlot(slotOf(n));
+		unlink(n);
+		values[n] = null;
+		next[n] = free;
+		free = n;
+		size--;
+	}
+
+	private int slotOf(int node) {
+		int s = home(keys[node]);
+		while (slots[s] != node + 1) {
+			s = (s + 1) & mask;
+		}
+		return s;
+	}
+
+	/**
+	 * Empty a slot, moving back any later entries in the run that would no longer be
+	 * reachable from their home slot
+	 */
+	private void deleteSlot(int hole) {
+		for (int s = (hole + 1) & mask;; s = (s + 1) & mask) {
+			int n = slots[s];
+			if (n == 0) {
+				break;
+			}
+			int home = home(keys[n - 1]);
+			// the entry can stay unless its home is cyclically outside (hole, s]
+			if (((s - home) & mask) >= ((s - hole) & mask)) {
+				slots[hole] = n;
+				hole = s;
+			}
+		}
+		slots[hole] = 0;
+	}
+
+	private int home(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	private void unlink(int n) {
+		next[prev[n]] = next[n];
+		prev[next[n]] = prev[n];
+	}
+
+	private void linkLast(int n) {
+		int last = prev[capacity];
+		prev[n] = last;
+		next[n] = capacity;
+		next[last] = n;
+		prev[capacity] = n;
+	}
+}
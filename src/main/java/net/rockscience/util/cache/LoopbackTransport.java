@@ -0,0 +1,55 @@
+package net.rockscience.util.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link InvalidationTransport} within one process. Messages are handed to every
+ * subscriber on the publishing thread. Several {@link InvalidationBus}es sharing one of
+ * these behave like nodes sharing a real transport, which makes it handy for tests.
+ *
+ * @author bdamiano
+ */
+public class LoopbackTransport implements InvalidationTransport {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(LoopbackTransport.class);
+
+	private final List<Consumer<InvalidationMessage>> listeners = new CopyOnWriteArrayList<>();
+	private final LongAdder published = new LongAdder();
+
+	@Override
+	public void publish(InvalidationMessage message) {
+		published.increment();
+		for (Consumer<InvalidationMessage> l : listeners) {
+			try {
+				l.accept(message);
+			}
+			catch (RuntimeException ex) {
+				LOGGER.warn("Invalidation listener failed for {}", message.cacheName(), ex);
+			}
+		}
+	}
+
+	@Override
+	public void subscribe(Consumer<InvalidationMessage> listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void unsubscribe(Consumer<InvalidationMessage> listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Return the number of messages published so far
+	 * @return
+	 */
+	public long getPublishedCount() {
+		return published.sum();
+	}
+}
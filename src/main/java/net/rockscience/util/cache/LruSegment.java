@@ -0,0 +1,84 @@
+package net.rockscience.util.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * A {@link CacheSegment} that evicts its least recently used entries, kept in an
+ * access-ordered {@link LinkedHashMap}.
+ *
+ * @author bdamiano
+ * @param <V> the stored value type
+ */
+class LruSegment<V> extends CacheSegment<V> {
+
+	private final Map<Object, V> map;
+
+	LruSegment(int maxSize, long maxWeight, ToLongFunction<V> weigher, BiConsumer<Object, V> evictionListener) {
+		super(maxSize, maxWeight, weigher, evictionListener);
+		map = new LinkedHashMap<>(Math.min(maxSize, 1024), 0.7f, true);
+	}
+
+	@Override
+	synchronized V get(Object key) {
+		return map.get(key);
+	}
+
+	@Override
+	synchronized V put(Object key, V value) {
+		V replaced = map.put(key, value);
+		weight += weigh(value) - weigh(replaced);
+		evictIfNeeded();
+		return replaced;
+	}
+
+	@Override
+	synchronized V remove(Object key) {
+		V removed = map.remove(key);
+		weight -= weigh(removed);
+		return removed;
+	}
+
+	@Override
+	synchronized boolean remove(Object key, V value) {
+		if (map.remove(key, value)) {
+			weight -= weigh(value);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	synchronized int size() {
+		return map.size();
+	}
+
+	@Override
+	synchronized void copyEntries(List<Map.Entry<Object, V>> into) {
+		for (Map.Entry<Object, V> e : map.entrySet()) {
+			into.add(Map.entry(e.getKey(), e.getValue()));
+		}
+	}
+
+	@Override
+	synchronized void clear() {
+		map.clear();
+		weight = 0;
+	}
+
+	/**
+	 * Evict from the least recently used end until both bounds are met
+	 */
+	private void evictIfNeeded() {
+		Iterator<Map.Entry<Object, V>> eldest = map.entrySet().iterator();
+		while (isOverBounds() && eldest.hasNext()) {
+			Map.Entry<Object, V> e = eldest.next();
+			eldest.remove();
+			evicted(e.getKey(), e.getValue());
+		}
+	}
+}
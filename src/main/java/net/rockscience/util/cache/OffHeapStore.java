@@ -0,0 +1,142 @@
+package net.rockscience.util.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A second cache tier holding encoded entries outside the Java heap, in one direct
+ * {@link ByteBuffer} or a memory-mapped file.
+ * <p>
+ * The buffer is used as a circular log. Each put appends a record at the write position
+ * and, when the log is full, overwrites the oldest records, which drops them; so the tier
+ * is FIFO and never fragments. Only a small index of key to record position stays on the
+ * heap. Replacing or removing a key just updates the index; the old record's space is
+ * reclaimed when the write position comes round to it.
+ * <p>
+ * All methods are synchronized. Reads copy the record out under the lock and return the
+ * copy, so it can be decoded without holding the lock.
+ *
+ * @author bdamiano
+ */
+class OffHeapStore {
+
+	// record header: payload length, last update time, deadline
+	private static final int HEADER = 4 + 8 + 8;
+
+	private final ByteBuffer buffer;
+	private final Map<Object, Record> index = new HashMap<>();
+	// records in the order they were written, so the oldest is first
+	private final Deque<Record> log = new ArrayDeque<>();
+	private int writePosition;
+
+	/**
+	 * A tier in a direct buffer of the given size
+	 */
+	OffHeapStore(int capacityBytes) {
+		buffer = ByteBuffer.allocateDirect(capacityBytes);
+	}
+
+	/**
+	 * A tier in a file of the given size, mapped into memory. Anything already in the
+	 * file is ignored and overwritten.
+	 */
+	OffHeapStore(Path file, int capacityBytes) throws IOException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			buffer = ch.map(FileChannel.MapMode.READ_WRITE, 0, capacityBytes);
+		}
+	}
+
+	/**
+	 * Append an encoded entry, replacing any earlier one for the key. Entries too big to
+	 * ever fit are ignored.
+	 */
+	synchronized void put(Object key, byte[] payload, long lastUpdateMs, long deadlineMs) {
+		int length = HEADER + payload.length;
+		if (length > buffer.capacity()) {
+			index.remove(key);
+			return;
+		}
+
+		if (writePosition + length > buffer.capacity()) {
+			// not enough room before the end: drop whatever is out there and wrap round
+			dropOverlapping(writePosition, buffer.capacity());
+			writePosition = 0;
+		}
+		dropOverlapping(writePosition, writePosition + length);
+
+		buffer.putInt(writePosition, payload.length);
+		buffer.putLong(writePosition + 4, lastUpdateMs);
+		buffer.putLong(writePosition + 12, deadlineMs);
+		buffer.put(writePosition + HEADER, payload);
+
+		Record r = new Record(key, writePosition, payload.length);
+		log.addLast(r);
+		index.put(key, r);
+		writePosition += length;
+	}
+
+	/**
+	 * Copy out the entry for a key
+	 * @return the entry, or null if there is none or it expired before now
+	 */
+	synchronized Found get(Object key, long now) {
+		Record r = index.get(key);
+		if (r == null) {
+			return null;
+		}
+		long deadlineMs = buffer.getLong(r.offset + 12);
+		if (deadlineMs <= now) {
+			index.remove(key);
+			return null;
+		}
+		byte[] payload = new byte[r.length];
+		buffer.get(r.offset + HEADER, payload);
+		return new Found(payload, buffer.getLong(r.offset + 4), deadlineMs);
+	}
+
+	synchronized void remove(Object key) {
+		index.remove(key);
+	}
+
+	synchronized int size() {
+		return index.size();
+	}
+
+	synchronized void clear() {
+		index.clear();
+		log.clear();
+		writePosition = 0;
+	}
+
+	/**
+	 * Drop the records (oldest first) that lie in the byte range about to be overwritten
+	 */
+	private void dropOverlapping(int from, int to) {
+		while (!log.isEmpty()) {
+			Record oldest = log.peekFirst();
+			if (oldest.offset < from || oldest.offset >= to) {
+				return;
+			}
+			log.removeFirst();
+			index.remove(oldest.key, oldest);
+		}
+	}
+
+	/**
+	 * Where a record is in the buffer
+	 */
+	private record Record(Object key, int offset, int length) {}
+
+	/**
+	 * An entry copied out of the tier
+	 */
+	record Found(byte[] payload, long lastUpdateMs, long deadlineMs) {}
+}
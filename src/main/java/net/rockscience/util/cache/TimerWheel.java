@@ -0,0 +1,170 @@
+package net.rockscience.util.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hierarchical timer wheel for expiring cache entries without scanning the cache.
+ * <p>
+ * Each level is a ring of 64 buckets. A level 0 bucket covers about a second
+ * (2^10 ms), each level up covers 64 times the span of the one below, and the top level
+ * reaches decades out. A node goes in the lowest level whose span covers its deadline.
+ * As time advances, the buckets that have come due are emptied: nodes past their
+ * deadline are handed back as expired and the rest cascade down into a finer level.
+ * Scheduling, descheduling and expiring a node are all O(1), so the cost of
+ * {@link #advance(long)} is proportional to the work it finds, not to the number of
+ * scheduled nodes.
+ * <p>
+ * Nodes are intrusive: the scheduled objects extend {@link Node} and carry their own links,
+ * so scheduling allocates nothing. All methods are synchronized on the wheel.
+ *
+ * @author bdamiano
+ * @param <N> the node type
+ */
+class TimerWheel<N extends TimerWheel.Node> {
+
+	static final int BUCKETS = 64;
+	// ms per bucket at each level, as a power of two
+	static final int[] SHIFT = { 10, 16, 22, 28, 34 };
+
+	private final Node[][] wheel;
+	private long time;
+
+	TimerWheel(long nowMs) {
+		time = nowMs;
+		wheel = new Node[SHIFT.length][BUCKETS];
+		for (Node[] level : wheel) {
+			for (int b = 0; b < BUCKETS; b++) {
+				level[b] = Node.sentinel();
+			}
+		}
+	}
+
+	/**
+	 * Schedule the node to expire at its deadline, moving it if it is already scheduled
+	 */
+	synchronized void schedule(N node) {
+		if (node.isScheduled()) {
+			unlink(node);
+		}
+		link(bucketFor(node.getDeadlineMs()), node);
+	}
+
+	/**
+	 * Take the node out of the wheel if it is scheduled
+	 */
+	synchronized void deschedule(N node) {
+		if (node.isScheduled()) {
+			unlink(node);
+		}
+	}
+
+	/**
+	 * Move the wheel forward to the given time.
+	 * @return the nodes whose deadlines are at or before nowMs, now descheduled
+	 */
+	synchronized List<N> advance(long nowMs) {
+		List<N> expired = new ArrayList<>();
+		long previous = time;
+		time = Math.max(time, nowMs);
+
+		for (int level = 0; level < SHIFT.length; level++) {
+			long previousTicks = previous >>> SHIFT[level];
+			long currentTicks = time >>> SHIFT[level];
+
+			// Include the bucket of the current tick: nodes scheduled with a deadline
+			// already passed land there. Don't go round more than once.
+			long ticks = Math.min(currentTicks - previousTicks + 1, BUCKETS);
+			for (long t = 0; t < ticks; t++) {
+				expireBucket(wheel[level][(int) ((previousTicks + t) & (BUCKETS - 1))], expired);
+			}
+
+			// if this level didn't move, the coarser ones didn't either
+			if (currentTicks == previousTicks) {
+				break;
+			}
+		}
+		return expired;
+	}
+
+	/**
+	 * Empty a bucket. Nodes that have expired go in the list, the rest are rescheduled
+	 * which moves them to a finer level (or back to this bucket if not yet due)
+	 */
+	@SuppressWarnings("unchecked")
+	private void expireBucket(Node sentinel, List<N> expired) {
+		Node node = sentinel.next;
+		sentinel.next = sentinel;
+		sentinel.prev = sentinel;
+
+		while (node != sentinel) {
+			Node next = node.next;
+			node.prev = null;
+			node.next = null;
+
+			if (node.getDeadlineMs() <= time) {
+				expired.add((N) node);
+			}
+			else {
+				link(bucketFor(node.getDeadlineMs()), node);
+			}
+			node = next;
+		}
+	}
+
+	private Node bucketFor(long deadlineMs) {
+		// anything already due goes in the current bucket to be picked up next advance
+		long d = Math.max(deadlineMs, time);
+		long delta = d - time;
+
+		int level = SHIFT.length - 1;
+		for (int i = 0; i < SHIFT.length - 1; i++) {
+			if (delta < (1L << SHIFT[i + 1])) {
+				level = i;
+				break;
+			}
+		}
+		return wheel[level][(int) ((d >>> SHIFT[level]) & (BUCKETS - 1))];
+	}
+
+	private static void link(Node sentinel, Node node) {
+		node.prev = sentinel.prev;
+		node.next = sentinel;
+		sentinel.prev.next = node;
+		sentinel.prev = node;
+	}
+
+	private static void unlink(Node node) {
+		node.prev.next = node.next;
+		node.next.prev = node.prev;
+		node.prev = null;
+		node.next = null;
+	}
+
+	/**
+	 * Base class for anything that can be scheduled in the wheel. A node is scheduled
+	 * when its links are set.
+	 */
+	static class Node {
+		private Node prev;
+		private Node next;
+
+		/**
+		 * @return when this node expires, as epoch millis
+		 */
+		long getDeadlineMs() {
+			return Long.MAX_VALUE;
+		}
+
+		final boolean isScheduled() {
+			return next != null;
+		}
+
+		private static Node sentinel() {
+			Node s = new Node();
+			s.prev = s;
+			s.next = s;
+			return s;
+		}
+	}
+}
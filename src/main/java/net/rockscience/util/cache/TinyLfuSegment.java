@@ -0,0 +1,245 @@
+package net.rockscience.util.cache;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * A {@link CacheSegment} using the W-TinyLFU policy, which protects frequently used
+ * entries from being flushed out by a burst of entries that are only used once.
+ * <p>
+ * New entries go into a small LRU admission window (1% of the segment). Entries leaving
+ * the window become candidates for the main space, an SLRU split into a probation queue
+ * and a protected queue (80% of the main space) for entries that have been hit again
+ * while on probation. When the segment is over its bounds, the candidate and the least
+ * recently used entry on probation are compared by how often each has been seen, as
+ * estimated by a {@link FrequencySketch}, and the less popular one is evicted.
+ * <p>
+ * The window and protected shares are sized by entry count, even when the segment is
+ * also bounded by weight.
+ *
+ * @author bdamiano
+ * @param <V> the stored value type
+ */
+class TinyLfuSegment<V> extends CacheSegment<V> {
+
+	private static final int WINDOW = 0;
+	private static final int PROBATION = 1;
+	private static final int PROTECTED = 2;
+
+	private final Map<Object, Node<V>> map = new HashMap<>();
+	private final FrequencySketch sketch;
+	private final Node<V> window = Node.sentinel();
+	private final Node<V> probation = Node.sentinel();
+	private final Node<V> protectedQueue = Node.sentinel();
+	private final int maxWindow;
+	private final int maxProtected;
+	private int windowSize;
+	private int protectedSize;
+
+	TinyLfuSegment(int maxSize, long maxWeight, ToLongFunction<V> weigher, BiConsumer<Object, V> evictionListener) {
+		super(maxSize, maxWeight, weigher, evictionListener);
+		sketch = new FrequencySketch(maxSize);
+		maxWindow = Math.max(1, maxSize / 100);
+		maxProtected = (int) ((maxSize - maxWindow) * 0.8);
+	}
+
+	@Override
+	synchronized V get(Object key) {
+		sketch.increment(key);
+		Node<V> n = map.get(key);
+		if (n == null) {
+			return null;
+		}
+		onAccess(n);
+		return n.value;
+	}
+
+	@Override
+	synchronized V put(Object key, V value) {
+		Node<V> n = map.get(key);
+		if (n != null) {
+			V replaced = n.value;
+			n.value = value;
+			weight += weigh(value) - weigh(replaced);
+			onAccess(n);
+			evictIfNeeded();
+			return replaced;
+		}
+
+		sketch.increment(key);
+		n = new Node<>(key, value);
+		map.put(key, n);
+		weight += weigh(value);
+		n.queue = WINDOW;
+		n.linkLast(window);
+		windowSize++;
+		evictIfNeeded();
+		return null;
+	}
+
+	@Override
+	synchronized V remove(Object key) {
+		Node<V> n = map.remove(key);
+		if (n == null) {
+			return null;
+		}
+		unlink(n);
+		weight -= weigh(n.value);
+		return n.value;
+	}
+
+	@Override
+	synchronized boolean remove(Object key, V value) {
+		Node<V> n = map.get(key);
+		if (n == null || !n.value.equals(value)) {
+			return false;
+		}
+		remove(key);
+		return true;
+	}
+
+	@Override
+	synchronized int size() {
+		return map.size();
+	}
+
+	@Override
+	synchronized void copyEntries(List<Map.Entry<Object, V>> into) {
+		for (Node<V> queue : List.of(probation, window, protectedQueue)) {
+			for (Node<V> n = queue.next; n != queue; n = n.next) {
+				into.add(Map.entry(n.key, n.value));
+			}
+		}
+	}
+
+	@Override
+	synchronized void clear() {
+		for (Object key : List.copyOf(map.keySet())) {
+			remove(key);
+		}
+	}
+
+	/**
+	 * Move a hit entry up: to the end of its LRU queue, or from probation to protected
+	 */
+	private void onAccess(Node<V> n) {
+		if (n.queue == PROBATION) {
+			n.unlink();
+			n.queue = PROTECTED;
+			n.linkLast(protectedQueue);
+			protectedSize++;
+
+			// make room by demoting the least recently used protected entry
+			if (protectedSize > maxProtected) {
+				Node<V> demoted = protectedQueue.next;
+				demoted.unlink();
+				protectedSize--;
+				demoted.queue = PROBATION;
+				demoted.linkLast(probation);
+			}
+		}
+		else {
+			n.unlink();
+			n.linkLast(n.queue == WINDOW ? window : protectedQueue);
+		}
+	}
+
+	private void evictIfNeeded() {
+		// entries pushed out of the window go to the end of probation as candidates
+		int candidates = 0;
+		while (windowSize > maxWindow) {
+			Node<V> n = window.next;
+			n.unlink();
+			windowSize--;
+			n.queue = PROBATION;
+			n.linkLast(probation);
+			candidates++;
+		}
+
+		while (isOverBounds() && !map.isEmpty()) {
+			Node<V> victim = probation.next;
+			Node<V> candidate = probation.prev;
+			int probationSize = map.size() - windowSize - protectedSize;
+
+			if (victim == probation) {
+				// nothing on probation, so fall back to plain LRU of the other queues
+				evict(protectedQueue.next != protectedQueue ? protectedQueue.next : window.next);
+			}
+			else if (candidates == 0) {
+				evict(victim);
+			}
+			else if (victim == candidate) {
+				evict(victim);
+				candidates--;
+			}
+			else if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+				evict(victim);
+				if (probationSize == candidates) {
+					// the victim was a candidate too
+					candidates--;
+				}
+			}
+			else {
+				// the candidate isn't more popular than what it would replace: reject it
+				evict(candidate);
+				candidates--;
+			}
+		}
+	}
+
+	private void evict(Node<V> n) {
+		map.remove(n.key);
+		unlink(n);
+		evicted(n.key, n.value);
+	}
+
+	private void unlink(Node<V> n) {
+		n.unlink();
+		if (n.queue == WINDOW) {
+			windowSize--;
+		}
+		else if (n.queue == PROTECTED) {
+			protectedSize--;
+		}
+	}
+
+	/**
+	 * An entry, linked into one of the three queues
+	 */
+	private static class Node<V> {
+		private final Object key;
+		private V value;
+		private int queue;
+		private Node<V> prev;
+		private Node<V> next;
+
+		Node(Object key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		static <V> Node<V> sentinel() {
+			Node<V> s = new Node<>(null, null);
+			s.prev = s;
+			s.next = s;
+			return s;
+		}
+
+		void linkLast(Node<V> sentinel) {
+			prev = sentinel.prev;
+			next = sentinel;
+			sentinel.prev.next = this;
+			sentinel.prev = this;
+		}
+
+		void unlink() {
+			prev.next = next;
+			next.prev = prev;
+			prev = null;
+			next = null;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package net.rockscience.util.image;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.imageio.stream.ImageOutputStreamImpl;
+
+/**
+ * An {@link javax.imageio.stream.ImageOutputStream} that writes straight into a growable byte
+ * array, so an encoder's output lands in the array it will be read from with no intermediate
+ * cache and no copy at the end. Unlike ImageIO's own streams it can start from a recycled
+ * array.
+ *
+ * @author bob damiano
+ */
+class ByteArrayImageOutputStream extends ImageOutputStreamImpl {
+	// arrays can't be quite Integer.MAX_VALUE long on most VMs
+	private static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+	private byte[] buf;
+	private int length;
+
+	/**
+	 * @param initial - the array to write into, replaced by a bigger one if it fills. Its
+	 * contents are ignored
+	 */
+	ByteArrayImageOutputStream(byte[] initial) {
+		buf = initial;
+	}
+
+	/**
+	 * @return the array holding the output. Only the first {@link #size()} bytes are used
+	 */
+	byte[] buffer() {
+		return buf;
+	}
+
+	int size() {
+		return length;
+	}
+
+	@Override
+	public long length() {
+		return length;
+	}
+
+	@Override
+	public int read() throws IOException {
+		checkClosed();
+		bitOffset = 0;
+		if (streamPos >= length) {
+			return -1;
+		}
+		return buf[(int) streamPos++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		checkClosed();
+		Objects.checkFromIndexSize(off, len, b.length);
+		bitOffset = 0;
+		if (len == 0) {
+			return 0;
+		}
+		if (streamPos >= length) {
+			return -1;
+		}
+		int n = (int) Math.min(len, length - streamPos);
+		System.arraycopy(buf, (int) streamPos, b, off, n);
+		streamPos += n;
+		return n;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		flushBits();
+		int pos = reserve(1);
+		buf[pos] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		flushBits();
+		Objects.checkFromIndexSize(off, len, b.length);
+		int pos = reserve(len);
+		System.arraycopy(b, off, buf, pos, len);
+	}
+
+	/**
+	 * Make room for n bytes at the stream position and move past them
+	 * @return where to write them
+	 */
+	private int reserve(int n) throws IOException {
+		long end = streamPos + n;
+		if (end > MAX_LENGTH) {
+			throw new IOException("Encoded image is too large for a byte array");
+		}
+		if (end > buf.length) {
+			long grown = Math.max(end, Math.max(buf.length * 2L, 64));
+			buf = Arrays.copyOf(buf, (int) Math.min(grown, MAX_LENGTH));
+		}
+		int pos = (int) streamPos;
+		if (pos > length) {
+			// seeked past the end; a recycled array may hold old bytes in the gap
+			Arrays.fill(buf, length, pos, (byte) 0);
+		}
+		streamPos = end;
+		length = Math.max(length, (int) end);
+		return pos;
+	}
+}
@@ -0,0 +1,58 @@
+package net.rockscience.util.image;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * An {@link javax.imageio.stream.ImageInputStream} reading a {@link ByteBuffer}, such as a
+ * memory-mapped file. Seeking is just moving an index, so readers can jump about the file
+ * without ImageIO caching what they have read.
+ *
+ * @author bob damiano
+ */
+class ByteBufferImageInputStream extends ImageInputStreamImpl {
+	private final ByteBuffer buf;
+
+	/**
+	 * @param buf - the bytes from its position to its limit are the stream. The buffer itself
+	 * is not moved
+	 */
+	ByteBufferImageInputStream(ByteBuffer buf) {
+		this.buf = buf.slice();
+	}
+
+	@Override
+	public long length() {
+		return buf.limit();
+	}
+
+	@Override
+	public int read() throws IOException {
+		checkClosed();
+		bitOffset = 0;
+		if (streamPos >= buf.limit()) {
+			return -1;
+		}
+		return buf.get((int) streamPos++) & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		checkClosed();
+		Objects.checkFromIndexSize(off, len, b.length);
+		bitOffset = 0;
+		if (len == 0) {
+			return 0;
+		}
+		if (streamPos >= buf.limit()) {
+			return -1;
+		}
+		int n = (int) Math.min(len, buf.limit() - streamPos);
+		buf.get((int) streamPos, b, off, n);
+		streamPos += n;
+		return n;
+	}
+}
@@ -0,0 +1,76 @@
+package net.rockscience.util.image;
+
+import java.util.Locale;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import lombok.With;
+
+/**
+ * How {@link ImageUtil#encode(java.awt.image.BufferedImage, EncodeOptions)} encodes an image:
+ * the format plus the writer's tuning knobs. Start from {@link #of(String)} or a preset and
+ * adjust with the {@code with} methods.
+ * <p>
+ * The presets trade size against speed and quality. For JPEG, quality decides size and
+ * fidelity while encode time barely moves; progressive files are a few percent smaller and a
+ * little slower to write. For PNG, which is lossless, quality picks the deflate effort: 1 is
+ * fastest and biggest, 0 slowest and smallest. Run the benchmarks module's
+ * ImageEncodeOptionsBenchmark to see the numbers for your images.
+ *
+ * @author bob damiano
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class EncodeOptions {
+
+	/** JPEG for photos that must look as good as the source */
+	public static final EncodeOptions JPEG_HIGH = of("jpeg").withQuality(0.92f);
+	/** JPEG at the quality most services serve photos at */
+	public static final EncodeOptions JPEG_BALANCED = of("jpeg").withQuality(0.8f);
+	/** progressive JPEG for thumbnails and slow links */
+	public static final EncodeOptions JPEG_SMALL = of("jpeg").withQuality(0.65f).withProgressive(true);
+	/** PNG with light, fast compression */
+	public static final EncodeOptions PNG_FAST = of("png").withQuality(0.9f);
+	/** PNG with the writer's default compression */
+	public static final EncodeOptions PNG_BALANCED = of("png");
+	/** PNG with the most compression, several times slower */
+	public static final EncodeOptions PNG_SMALL = of("png").withQuality(0f);
+
+	/** the format name, e.g. jpeg or png */
+	String format;
+	/** compression quality from 0 to 1, or null for the writer's default */
+	Float quality;
+	/** a compression type the writer offers, or null for its default */
+	@With
+	String compressionType;
+	/** write a progressive (interlaced) image if the format supports it */
+	@With
+	boolean progressive;
+
+	/**
+	 * @param format - the format name, e.g. jpg or png
+	 * @return the writer's default settings for the format
+	 */
+	public static EncodeOptions of(String format) {
+		return new EncodeOptions(format.toLowerCase(Locale.ROOT), null, null, false);
+	}
+
+	/**
+	 * @param quality - from 0 to 1
+	 * @return a copy with the given compression quality
+	 */
+	public EncodeOptions withQuality(float quality) {
+		if (quality < 0f || quality > 1f) {
+			throw new IllegalArgumentException("quality must be between 0 and 1");
+		}
+		return new EncodeOptions(format, quality, compressionType, progressive);
+	}
+
+	/**
+	 * @return true if these are the writer's defaults, so no write param is needed
+	 */
+	boolean isDefault() {
+		return quality == null && compressionType == null && !progressive;
+	}
+}
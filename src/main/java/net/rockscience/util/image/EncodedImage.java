@@ -0,0 +1,85 @@
+package net.rockscience.util.image;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * An encoded image held in a pooled byte array, from {@link ImageUtil#encode}. The streams and
+ * buffers it hands out are views over that array, not copies, so they are only valid until
+ * the image is closed and the array goes back to the pool.
+ *
+ * @author bob damiano
+ */
+public class EncodedImage implements AutoCloseable {
+	private final ImageBufferPool pool;
+	private byte[] bytes;
+	private final int size;
+
+	EncodedImage(ImageBufferPool pool, byte[] bytes, int size) {
+		this.pool = pool;
+		this.bytes = bytes;
+		this.size = size;
+	}
+
+	/**
+	 * @return the encoded size in bytes
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return a stream reading the encoded bytes
+	 */
+	public InputStream inputStream() {
+		return new ByteArrayInputStream(bytes(), 0, size);
+	}
+
+	/**
+	 * @return a read only buffer over the encoded bytes
+	 */
+	public ByteBuffer byteBuffer() {
+		return ByteBuffer.wrap(bytes(), 0, size).slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Write the encoded bytes to a stream
+	 */
+	public void writeTo(OutputStream os) throws IOException {
+		os.write(bytes(), 0, size);
+	}
+
+	/**
+	 * Write the encoded bytes to a channel
+	 */
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		ByteBuffer b = ByteBuffer.wrap(bytes(), 0, size);
+		while (b.hasRemaining()) {
+			channel.write(b);
+		}
+	}
+
+	/**
+	 * Give the array back to the pool. Streams and buffers from this image must not be used
+	 * afterwards
+	 */
+	@Override
+	public void close() {
+		if (bytes != null) {
+			byte[] b = bytes;
+			bytes = null;
+			pool.release(b);
+		}
+	}
+
+	private byte[] bytes() {
+		if (bytes == null) {
+			throw new IllegalStateException("EncodedImage has been closed");
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,105 @@
+package net.rockscience.util.image;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Finds the EXIF orientation tag in a JPEG by walking its marker segments up to the image
+ * data. Only the APP1 Exif segment's first IFD is read; nothing is decoded.
+ *
+ * @author bob damiano
+ */
+class ExifOrientation {
+	private ExifOrientation() {}
+
+	static final int NORMAL = 1;
+
+	private static final int SOI = 0xFFD8;
+	private static final int SOS = 0xFFDA;
+	private static final int EOI = 0xFFD9;
+	private static final int APP1 = 0xFFE1;
+	private static final int EXIF = 0x45786966; // "Exif"
+	private static final int TIFF_MAGIC = 42;
+	private static final int ORIENTATION_TAG = 0x0112;
+	private static final int SHORT = 3;
+
+	/**
+	 * Read the orientation from a JPEG, leaving the stream where it was
+	 *
+	 * @return the orientation, 1 to 8, or {@link #NORMAL} if there is none or the header
+	 * can't be made sense of
+	 */
+	static int read(ImageInputStream iis) throws IOException {
+		ByteOrder order = iis.getByteOrder();
+		iis.mark();
+		try {
+			iis.setByteOrder(ByteOrder.BIG_ENDIAN);
+			return find(iis);
+		}
+		catch (EOFException ex) {
+			return NORMAL;
+		}
+		finally {
+			iis.reset();
+			iis.setByteOrder(order);
+		}
+	}
+
+	private static int find(ImageInputStream iis) throws IOException {
+		if (iis.readUnsignedShort() != SOI) {
+			return NORMAL;
+		}
+		while (true) {
+			int marker = iis.readUnsignedShort();
+			while (marker == 0xFFFF) {
+				// fill bytes before a marker
+				marker = 0xFF00 | iis.readUnsignedByte();
+			}
+			if ((marker & 0xFF00) != 0xFF00 || marker == SOS || marker == EOI) {
+				return NORMAL;
+			}
+			int length = iis.readUnsignedShort();
+			if (length < 2) {
+				return NORMAL;
+			}
+			long end = iis.getStreamPosition() + length - 2;
+			if (marker == APP1 && length >= 16 && iis.readInt() == EXIF && iis.readUnsignedShort() == 0) {
+				return fromTiff(iis, iis.getStreamPosition(), end);
+			}
+			iis.seek(end);
+		}
+	}
+
+	private static int fromTiff(ImageInputStream iis, long tiff, long end) throws IOException {
+		int order = iis.readUnsignedShort();
+		if (order == 0x4949) {
+			iis.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+		}
+		else if (order != 0x4D4D) {
+			return NORMAL;
+		}
+		if (iis.readUnsignedShort() != TIFF_MAGIC) {
+			return NORMAL;
+		}
+		long ifd = tiff + iis.readUnsignedInt();
+		if (ifd + 2 > end) {
+			return NORMAL;
+		}
+		iis.seek(ifd);
+		int entries = iis.readUnsignedShort();
+		for (int i = 0; i < entries && iis.getStreamPosition() + 12 <= end; i++) {
+			int tag = iis.readUnsignedShort();
+			int type = iis.readUnsignedShort();
+			iis.skipBytes(4); // count
+			if (tag == ORIENTATION_TAG) {
+				int value = type == SHORT ? iis.readUnsignedShort() : NORMAL;
+				return value >= 1 && value <= 8 ? value : NORMAL;
+			}
+			iis.skipBytes(4);
+		}
+		return NORMAL;
+	}
+}
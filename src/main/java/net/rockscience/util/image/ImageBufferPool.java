@@ -0,0 +1,50 @@
+package net.rockscience.util.image;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A small bounded pool of byte arrays for encoding images into, so a busy service reuses
+ * arrays already grown to a typical image size instead of allocating and growing new ones
+ * per request. Arrays bigger than the retain limit are left to the garbage collector rather
+ * than kept pinned in the pool.
+ *
+ * @author bob damiano
+ */
+class ImageBufferPool {
+	private final BlockingQueue<byte[]> free;
+	private final int initialSize;
+	private final int maxRetainedSize;
+
+	/**
+	 * @param maxBuffers - the most arrays kept for reuse
+	 * @param initialSize - the size of newly allocated arrays
+	 * @param maxRetainedSize - the largest array taken back
+	 */
+	ImageBufferPool(int maxBuffers, int initialSize, int maxRetainedSize) {
+		this.free = new ArrayBlockingQueue<>(maxBuffers);
+		this.initialSize = initialSize;
+		this.maxRetainedSize = maxRetainedSize;
+	}
+
+	/**
+	 * @return a pooled array, or a new one if the pool is empty
+	 */
+	byte[] acquire() {
+		byte[] b = free.poll();
+		return b != null ? b : new byte[initialSize];
+	}
+
+	/**
+	 * Hand an array back. It is dropped if the pool is full or the array too big
+	 */
+	void release(byte[] b) {
+		if (b.length <= maxRetainedSize) {
+			free.offer(b);
+		}
+	}
+
+	int available() {
+		return free.size();
+	}
+}
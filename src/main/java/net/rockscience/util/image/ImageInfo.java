@@ -0,0 +1,45 @@
+package net.rockscience.util.image;
+
+import lombok.Value;
+
+/**
+ * What {@link ImageUtil#probe} learns from an image's header without decoding it
+ *
+ * @author bob damiano
+ */
+@Value
+public class ImageInfo {
+	/** stored width in pixels */
+	int width;
+	/** stored height in pixels */
+	int height;
+	/** the format name in lower case, e.g. jpeg, png, gif */
+	String format;
+	/** the EXIF orientation, 1 to 8. 1 (as stored) when the image has none */
+	int orientation;
+
+	/**
+	 * Return true if the image is meant to be shown turned a quarter turn, so its displayed
+	 * width and height are swapped
+	 * @return
+	 */
+	public boolean isQuarterTurned() {
+		return orientation >= 5;
+	}
+
+	/**
+	 * Return the width the image is meant to be shown at, after its orientation is applied
+	 * @return
+	 */
+	public int getDisplayWidth() {
+		return isQuarterTurned() ? height : width;
+	}
+
+	/**
+	 * Return the height the image is meant to be shown at, after its orientation is applied
+	 * @return
+	 */
+	public int getDisplayHeight() {
+		return isQuarterTurned() ? width : height;
+	}
+}
@@ -0,0 +1,345 @@
+package net.rockscience.util.image;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * The scaling engines behind {@link ScalingMethod}.
+ * <p>
+ * The filters are separable: a horizontal pass filters each source row to the target width,
+ * and a vertical pass combines those rows into each target row and packs it into the target's
+ * int array. The two are interleaved, so only a rolling window of filtered rows, as many as
+ * one target row's filter reaches, is ever held: a few hundred KB per strip rather than
+ * target width by source height (about 54 MB of floats for a 4032x3024 photo to 1500 wide).
+ * Filter weights are worked out once per column and per row. Target rows are split into
+ * strips that run in parallel on the common fork join pool; the few source rows where strips
+ * meet are filtered by both. Images with alpha are filtered premultiplied so transparent pixels
+ * don't bleed colour into their neighbours, and come out as {@code TYPE_INT_ARGB}; opaque
+ * images come out as {@code TYPE_INT_RGB}.
+ *
+ * @author bob damiano
+ */
+class ImageScaler {
+	private ImageScaler() {}
+
+	// below this many source pixels a pass isn't worth splitting across threads
+	private static final int PARALLEL_THRESHOLD = 256 * 1024;
+
+	static BufferedImage scale(BufferedImage src, int targetWidth, int targetHeight, ScalingMethod method) {
+		switch (method) {
+			case PROGRESSIVE_BILINEAR:
+				return progressiveBilinear(src, targetWidth, targetHeight);
+			case BOX:
+				return filter(src, targetWidth, targetHeight, Kernel.BOX);
+			case LANCZOS3:
+				return filter(src, targetWidth, targetHeight, Kernel.LANCZOS3);
+			default:
+				return drawImage(src, targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB, null);
+		}
+	}
+
+	static BufferedImage progressiveBilinear(BufferedImage src, int targetWidth, int targetHeight) {
+		int type = src.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+		BufferedImage current = src;
+		int w = src.getWidth();
+		int h = src.getHeight();
+		do {
+			// bilinear only reads 2x2 pixels, so never shrink by more than half in a step
+			w = Math.max(targetWidth, w / 2);
+			h = Math.max(targetHeight, h / 2);
+			current = drawImage(current, w, h, type, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		} while (w != targetWidth || h != targetHeight);
+		return current;
+	}
+
+	private static BufferedImage drawImage(BufferedImage src, int w, int h, int type, Object interpolation) {
+		BufferedImage resized = new BufferedImage(w, h, type);
+		Graphics2D graphics = resized.createGraphics();
+		if (interpolation != null) {
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+		}
+		graphics.drawImage(src, 0, 0, w, h, null);
+		graphics.dispose();
+		return resized;
+	}
+
+	static BufferedImage filter(BufferedImage src, int targetWidth, int targetHeight, Kernel kernel) {
+		int sourceWidth = src.getWidth();
+		int sourceHeight = src.getHeight();
+		boolean alpha = src.getColorModel().hasAlpha();
+		int channels = alpha ? 4 : 3;
+		boolean parallel = (long) sourceWidth * sourceHeight >= PARALLEL_THRESHOLD;
+
+		Weights across = new Weights(sourceWidth, targetWidth, kernel);
+		Weights down = new Weights(sourceHeight, targetHeight, kernel);
+		RowReader reader = RowReader.of(src);
+
+		BufferedImage target = new BufferedImage(targetWidth, targetHeight,
+				alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		int[] out = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+		int rowLength = targetWidth * channels;
+		strips(targetHeight, parallel, (from, to) -> {
+			// a window of horizontally filtered source rows, each in slot (row % window).
+			// A target row never needs more than down.stride of them, and they're consecutive
+			int window = down.stride;
+			float[] rows = new float[window * rowLength];
+			int[] held = new int[window];
+			Arrays.fill(held, -1);
+			int[] row = new int[sourceWidth];
+			float[] sum = new float[rowLength];
+
+			for (int y = from; y < to; y++) {
+				int start = down.start[y];
+				int end = start + down.count[y];
+				// horizontal pass for any source rows not already in the window
+				for (int sy = start; sy < end; sy++) {
+					int slot = sy % window;
+					if (held[slot] != sy) {
+						reader.read(sy, row);
+						filterRow(row, across, alpha, rows, slot * rowLength);
+						held[slot] = sy;
+					}
+				}
+
+				// vertical pass: the window's rows -> one target row
+				Arrays.fill(sum, 0f);
+				int wi = y * down.stride;
+				for (int sy = start; sy < end; sy++, wi++) {
+					float w = down.weights[wi];
+					int o = (sy % window) * rowLength;
+					for (int x = 0; x < rowLength; x++) {
+						sum[x] += rows[o + x] * w;
+					}
+				}
+				int o = y * targetWidth;
+				for (int x = 0, s = 0; x < targetWidth; x++) {
+					if (alpha) {
+						float a = sum[s++];
+						// back from premultiplied, from 0-255 * 0-255 to 0-255
+						float unpremultiply = a > 0 ? 1f / a : 0f;
+						out[o + x] = clamp(a) << 24 | clamp(sum[s++] * unpremultiply) << 16
+								| clamp(sum[s++] * unpremultiply) << 8 | clamp(sum[s++] * unpremultiply);
+					}
+					else {
+						out[o + x] = clamp(sum[s++]) << 16 | clamp(sum[s++]) << 8 | clamp(sum[s++]);
+					}
+				}
+			}
+		});
+		return target;
+	}
+
+	/**
+	 * Filter one source row to the target width, into the float buffer at offset o as a, r, g,
+	 * b (premultiplied) or r, g, b
+	 */
+	private static void filterRow(int[] row, Weights across, boolean alpha, float[] into, int o) {
+		int targetWidth = across.start.length;
+		for (int x = 0; x < targetWidth; x++) {
+			int start = across.start[x];
+			int end = start + across.count[x];
+			int wi = x * across.stride;
+			float a = 0, r = 0, g = 0, b = 0;
+			if (alpha) {
+				for (int i = start; i < end; i++, wi++) {
+					int p = row[i];
+					float w = across.weights[wi];
+					float pa = (p >>> 24) * w;
+					a += pa;
+					r += ((p >> 16) & 0xff) * pa;
+					g += ((p >> 8) & 0xff) * pa;
+					b += (p & 0xff) * pa;
+				}
+				into[o++] = a;
+			}
+			else {
+				for (int i = start; i < end; i++, wi++) {
+					int p = row[i];
+					float w = across.weights[wi];
+					r += ((p >> 16) & 0xff) * w;
+					g += ((p >> 8) & 0xff) * w;
+					b += (p & 0xff) * w;
+				}
+			}
+			into[o++] = r;
+			into[o++] = g;
+			into[o++] = b;
+		}
+	}
+
+	private static int clamp(float v) {
+		int i = (int) (v + 0.5f);
+		return i < 0 ? 0 : i > 255 ? 255 : i;
+	}
+
+	/**
+	 * Run a body over row ranges, in parallel strips if asked
+	 */
+	private static void strips(int rows, boolean parallel, RowRange body) {
+		int strips = parallel ? Math.min(rows, ForkJoinPool.getCommonPoolParallelism() * 4) : 1;
+		if (strips <= 1) {
+			body.run(0, rows);
+			return;
+		}
+		IntStream.range(0, strips).parallel().forEach(s -> body.run(
+				(int) ((long) rows * s / strips), (int) ((long) rows * (s + 1) / strips)));
+	}
+
+	@FunctionalInterface
+	private static interface RowRange {
+		void run(int from, int to);
+	}
+
+	/**
+	 * A filter kernel: its weight at a distance from the sample centre, in source pixels at a
+	 * scale of one, and how far it reaches
+	 */
+	enum Kernel {
+		BOX(0.5) {
+			@Override
+			double weight(double x) {
+				return x >= -0.5 && x < 0.5 ? 1.0 : 0.0;
+			}
+		},
+		LANCZOS3(3.0) {
+			@Override
+			double weight(double x) {
+				if (x == 0) {
+					return 1.0;
+				}
+				if (x <= -3.0 || x >= 3.0) {
+					return 0.0;
+				}
+				double px = Math.PI * x;
+				return 3.0 * Math.sin(px) * Math.sin(px / 3.0) / (px * px);
+			}
+		};
+
+		final double support;
+
+		Kernel(double support) {
+			this.support = support;
+		}
+
+		abstract double weight(double x);
+	}
+
+	/**
+	 * The source range and normalised weights for every target pixel along one axis. When
+	 * shrinking, the kernel is stretched to cover every source pixel that falls within the
+	 * target pixel
+	 */
+	static class Weights {
+		final int[] start;
+		final int[] count;
+		final float[] weights;
+		final int stride;
+
+		Weights(int sourceSize, int targetSize, Kernel kernel) {
+			double scale = (double) targetSize / sourceSize;
+			double stretch = Math.max(1.0, 1.0 / scale);
+			double support = kernel.support * stretch;
+			stride = (int) Math.ceil(support * 2) + 3;
+			start = new int[targetSize];
+			count = new int[targetSize];
+			weights = new float[targetSize * stride];
+
+			double[] w = new double[stride];
+			for (int t = 0; t < targetSize; t++) {
+				double centre = (t + 0.5) / scale;
+				int left = Math.max(0, (int) Math.floor(centre - support));
+				int right = Math.min(sourceSize - 1, (int) Math.ceil(centre + support));
+				double total = 0;
+				int first = -1;
+				int n = 0;
+				for (int s = left; s <= right && n < stride; s++) {
+					double v = kernel.weight((s + 0.5 - centre) / stretch);
+					if (v == 0 && first < 0) {
+						continue;
+					}
+					if (first < 0) {
+						first = s;
+					}
+					w[n++] = v;
+					total += v;
+				}
+				// drop trailing zeros
+				while (n > 0 && w[n - 1] == 0) {
+					n--;
+				}
+				if (n == 0 || total == 0) {
+					// the kernel missed every pixel, so take the nearest
+					first = Math.min(sourceSize - 1, (int) centre);
+					w[0] = total = 1;
+					n = 1;
+				}
+				start[t] = first;
+				count[t] = n;
+				for (int i = 0; i < n; i++) {
+					weights[t * stride + i] = (float) (w[i] / total);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads a source row as packed ARGB ints, straight from the raster for the types the JDK
+	 * decoders produce and through {@link BufferedImage#getRGB} for anything else
+	 */
+	@FunctionalInterface
+	private static interface RowReader {
+		void read(int y, int[] row);
+
+		static RowReader of(BufferedImage src) {
+			int width = src.getWidth();
+			WritableRaster raster = src.getRaster();
+			int tx = raster.getSampleModelTranslateX();
+			int ty = raster.getSampleModelTranslateY();
+
+			switch (src.getType()) {
+				case BufferedImage.TYPE_INT_RGB:
+				case BufferedImage.TYPE_INT_ARGB: {
+					DataBufferInt db = (DataBufferInt) raster.getDataBuffer();
+					int[] data = db.getData();
+					int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+					int offset = db.getOffset() - tx - ty * stride;
+					int opaque = src.getType() == BufferedImage.TYPE_INT_RGB ? 0xff000000 : 0;
+					return (y, row) -> {
+						System.arraycopy(data, offset + y * stride, row, 0, width);
+						if (opaque != 0) {
+							for (int x = 0; x < width; x++) {
+								row[x] |= opaque;
+							}
+						}
+					};
+				}
+				case BufferedImage.TYPE_3BYTE_BGR: {
+					DataBufferByte db = (DataBufferByte) raster.getDataBuffer();
+					byte[] data = db.getData();
+					ComponentSampleModel sm = (ComponentSampleModel) raster.getSampleModel();
+					int stride = sm.getScanlineStride();
+					int[] bands = sm.getBandOffsets();
+					int offset = db.getOffset() - tx * 3 - ty * stride;
+					return (y, row) -> {
+						int i = offset + y * stride;
+						for (int x = 0; x < width; x++, i += 3) {
+							row[x] = 0xff000000 | (data[i + bands[0]] & 0xff) << 16
+									| (data[i + bands[1]] & 0xff) << 8 | (data[i + bands[2]] & 0xff);
+						}
+					};
+				}
+				default:
+					return (y, row) -> src.getRGB(0, y, width, 1, row, 0, width);
+			}
+		}
+	}
+}
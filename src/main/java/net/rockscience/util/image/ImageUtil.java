@@ -1,13 +1,27 @@
 package net.rockscience.util.image;
 
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Locale;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 
 import lombok.Data;
 
@@ -21,11 +35,167 @@ public class ImageUtil {
 	public static int MAX_IMG_WIDTH = 1500;
 	public static int THUMBNAIL_WIDTH = 300;
 
+	// up to 16 encode buffers of at most 16MB each are kept for reuse
+	private static final ImageBufferPool BUFFERS = new ImageBufferPool(16, 256 * 1024, 16 * 1024 * 1024);
+
 	public static BufferedImage bufferedImageFromStream(InputStream is) throws IOException {
 		return ImageIO.read(is);
 	}
 
+	/**
+	 * Decode an image no wider than a target width without ever holding the full size image.
+	 * The reader skips source pixels as it decodes (source subsampling), so memory use is
+	 * bounded by the target size rather than the upload size, and the result is then scaled
+	 * down to the exact width.
+	 *
+	 * @param is - the encoded image
+	 * @param maxTargetWidth - the widest the returned image may be
+	 * @return the image, or null if no installed reader can decode the stream
+	 */
+	public static BufferedImage bufferedImageFromStream(InputStream is, int maxTargetWidth) throws IOException {
+		return bufferedImageFromStream(is, maxTargetWidth, null);
+	}
+
+	/**
+	 * Decode just a region of an image, no wider than a target width. Only the rows and columns
+	 * the region covers are decoded, subsampled as in {@link #bufferedImageFromStream(InputStream, int)}.
+	 *
+	 * @param is - the encoded image
+	 * @param maxTargetWidth - the widest the returned image may be
+	 * @param region - the part of the source image to decode, clipped to the image bounds.
+	 * Null for the whole image
+	 * @return the image, or null if no installed reader can decode the stream
+	 */
+	public static BufferedImage bufferedImageFromStream(InputStream is, int maxTargetWidth, Rectangle region) throws IOException {
+		return bufferedImageFromStream(is, maxTargetWidth, region, ScalingMethod.DEFAULT);
+	}
+
+	/**
+	 * Decode a region of an image, no wider than a target width, finishing the scale with the
+	 * given method. For anything but {@link ScalingMethod#DEFAULT} the reader leaves at least
+	 * twice the target width so the filter has detail to work with.
+	 *
+	 * @param is - the encoded image
+	 * @param maxTargetWidth - the widest the returned image may be
+	 * @param region - the part of the source image to decode, clipped to the image bounds.
+	 * Null for the whole image
+	 * @param method - how to scale the decoded image to the target width
+	 * @return the image, or null if no installed reader can decode the stream
+	 */
+	public static BufferedImage bufferedImageFromStream(InputStream is, int maxTargetWidth, Rectangle region,
+			ScalingMethod method) throws IOException {
+		// not ImageIO.createImageInputStream, which may spool through a temp file
+		try (ImageInputStream iis = new MemoryCacheImageInputStream(is)) {
+			return decode(iis, maxTargetWidth, region, method);
+		}
+	}
+
+	static BufferedImage decode(ImageInputStream iis, int maxTargetWidth, Rectangle region,
+			ScalingMethod method) throws IOException {
+		if (maxTargetWidth < 1) {
+			throw new IllegalArgumentException("maxTargetWidth must be at least 1");
+		}
+		ImageReader reader = firstReader(iis);
+		if (reader == null) {
+			return null;
+		}
+		try {
+			reader.setInput(iis, true, true);
+			Rectangle bounds = new Rectangle(reader.getWidth(0), reader.getHeight(0));
+			Rectangle source = region == null ? bounds : region.intersection(bounds);
+			if (source.isEmpty()) {
+				throw new IllegalArgumentException("region " + region + " is outside the image " + bounds);
+			}
+
+			ImageReadParam param = reader.getDefaultReadParam();
+			if (!source.equals(bounds)) {
+				param.setSourceRegion(source);
+			}
+			int step = subsampling(source.width, method == ScalingMethod.DEFAULT ? maxTargetWidth : maxTargetWidth * 2);
+			param.setSourceSubsampling(step, step, 0, 0);
+
+			return scaleImageToMaxTargetWidth(reader.read(0, param), maxTargetWidth, method);
+		}
+		finally {
+			reader.dispose();
+		}
+	}
+
+	/**
+	 * The largest whole number of source pixels to step over that still leaves at least the
+	 * target width, so the final scale is always a reduction
+	 */
+	static int subsampling(int sourceWidth, int targetWidth) {
+		return Math.max(1, sourceWidth / targetWidth);
+	}
+
+	/**
+	 * Read an image's dimensions, format and orientation from its header, without decoding
+	 * any pixels. Only as much of the stream as the header takes is read.
+	 *
+	 * @param is - the encoded image
+	 * @return what the header says, or null if no installed reader recognises the stream
+	 */
+	public static ImageInfo probe(InputStream is) throws IOException {
+		try (ImageInputStream iis = new MemoryCacheImageInputStream(is)) {
+			return probe(iis);
+		}
+	}
+
+	/**
+	 * Read an image file's dimensions, format and orientation from its header, without
+	 * decoding any pixels. The file is memory-mapped, so only the pages the header sits on
+	 * are read and nothing is copied onto the heap.
+	 *
+	 * @param file - the image file
+	 * @return what the header says, or null if no installed reader recognises the file
+	 */
+	public static ImageInfo probe(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Too large to map: " + file);
+			}
+			try (ImageInputStream iis = new ByteBufferImageInputStream(
+					channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()))) {
+				return probe(iis);
+			}
+		}
+	}
+
+	private static ImageInfo probe(ImageInputStream iis) throws IOException {
+		ImageReader reader = firstReader(iis);
+		if (reader == null) {
+			return null;
+		}
+		try {
+			String format = reader.getFormatName().toLowerCase(Locale.ROOT);
+			int orientation = format.equals("jpeg") ? ExifOrientation.read(iis) : ExifOrientation.NORMAL;
+			reader.setInput(iis, true, true);
+			return new ImageInfo(reader.getWidth(0), reader.getHeight(0), format, orientation);
+		}
+		finally {
+			reader.dispose();
+		}
+	}
+
+	private static ImageReader firstReader(ImageInputStream iis) {
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+		return readers.hasNext() ? readers.next() : null;
+	}
+
 	public static BufferedImage scaleImageToMaxTargetWidth(BufferedImage originalImage, int targetWidth) {
+		return scaleImageToMaxTargetWidth(originalImage, targetWidth, ScalingMethod.DEFAULT);
+	}
+
+	/**
+	 * Scale an image down to a target width, keeping its aspect ratio
+	 *
+	 * @param originalImage - the image
+	 * @param targetWidth - the widest the returned image may be
+	 * @param method - the speed/quality tradeoff
+	 * @return a scaled copy, or the original if it is no wider than the target
+	 */
+	public static BufferedImage scaleImageToMaxTargetWidth(BufferedImage originalImage, int targetWidth, ScalingMethod method) {
 		int originalWidth = originalImage.getWidth();
 		int originalHeight = originalImage.getHeight();
 
@@ -34,28 +204,124 @@ public class ImageUtil {
 		}
 
 		float scaleFactor = (float)targetWidth/originalWidth;
-		int targetHeight = (int)(originalHeight * scaleFactor);
-
-		BufferedImage resizedImage = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
+		int targetHeight = Math.max(1, (int)(originalHeight * scaleFactor));
 
-		Graphics2D graphics = resizedImage.createGraphics();
-		graphics.drawImage(originalImage, 0, 0, targetWidth,targetHeight, null);
-		graphics.dispose();
-
-		return resizedImage;
+		return ImageScaler.scale(originalImage, targetWidth, targetHeight, method);
 	}
 
 	public static InputStreamAndSize streamFromBufferedImage(BufferedImage bi, String imageType) throws IOException {
 		InputStreamAndSize sas = new InputStreamAndSize();
 
-		ByteArrayOutputStream  os = new ByteArrayOutputStream();
-		ImageIO.write(bi, imageType, os);
+		// the stream reads the encoder's own array rather than a copy of it
+		ByteArrayImageOutputStream os = new ByteArrayImageOutputStream(new byte[8192]);
+		ImageWriterPool.write(bi, EncodeOptions.of(imageType), os);
 		sas.setBytes(os.size());
-		sas.setStream(new ByteArrayInputStream(os.toByteArray()));
+		sas.setStream(new ByteArrayInputStream(os.buffer(), 0, os.size()));
 
 		return sas;
 	}
 
+	/**
+	 * Encode an image into a pooled buffer with the writer's default settings. Close the
+	 * result to hand the buffer back.
+	 *
+	 * @param bi - the image
+	 * @param imageType - the format name, e.g. jpg or png
+	 * @return the encoded image
+	 * @throws IllegalArgumentException if there is no writer for the format and image
+	 */
+	public static EncodedImage encode(BufferedImage bi, String imageType) throws IOException {
+		return encode(bi, EncodeOptions.of(imageType));
+	}
+
+	/**
+	 * Encode an image into a pooled buffer. Close the result to hand the buffer back.
+	 *
+	 * @param bi - the image
+	 * @param options - the format and its settings, e.g. {@link EncodeOptions#JPEG_BALANCED}
+	 * @return the encoded image
+	 * @throws IllegalArgumentException if there is no writer for the format and image, or
+	 * it doesn't support the settings
+	 */
+	public static EncodedImage encode(BufferedImage bi, EncodeOptions options) throws IOException {
+		ByteArrayImageOutputStream os = new ByteArrayImageOutputStream(BUFFERS.acquire());
+		try {
+			write(bi, options, os);
+		}
+		catch (IOException | RuntimeException ex) {
+			BUFFERS.release(os.buffer());
+			throw ex;
+		}
+		return new EncodedImage(BUFFERS, os.buffer(), os.size());
+	}
+
+	/**
+	 * Encode an image straight to a stream with the writer's default settings, without holding
+	 * the whole encoded image in memory. The stream is not closed.
+	 *
+	 * @param bi - the image
+	 * @param imageType - the format name, e.g. jpg or png
+	 * @param os - where to write it
+	 * @return the number of bytes written
+	 * @throws IllegalArgumentException if there is no writer for the format and image
+	 */
+	public static long writeImage(BufferedImage bi, String imageType, OutputStream os) throws IOException {
+		return writeImage(bi, EncodeOptions.of(imageType), os);
+	}
+
+	/**
+	 * Encode an image straight to a stream, without holding the whole encoded image in memory.
+	 * The stream is not closed.
+	 *
+	 * @param bi - the image
+	 * @param options - the format and its settings, e.g. {@link EncodeOptions#JPEG_BALANCED}
+	 * @param os - where to write it
+	 * @return the number of bytes written
+	 * @throws IllegalArgumentException if there is no writer for the format and image, or
+	 * it doesn't support the settings
+	 */
+	public static long writeImage(BufferedImage bi, EncodeOptions options, OutputStream os) throws IOException {
+		// not ImageIO.write(.., OutputStream), which may spool through a temp file
+		try (ImageOutputStream ios = new MemoryCacheImageOutputStream(os)) {
+			write(bi, options, ios);
+			return ios.length();
+		}
+	}
+
+	/**
+	 * Encode an image straight to a channel, e.g. a file or socket, with the writer's default
+	 * settings. The channel is not closed.
+	 *
+	 * @param bi - the image
+	 * @param imageType - the format name, e.g. jpg or png
+	 * @param channel - where to write it
+	 * @return the number of bytes written
+	 * @throws IllegalArgumentException if there is no writer for the format and image
+	 */
+	public static long writeImage(BufferedImage bi, String imageType, WritableByteChannel channel) throws IOException {
+		return writeImage(bi, EncodeOptions.of(imageType), Channels.newOutputStream(channel));
+	}
+
+	/**
+	 * Encode an image straight to a channel, e.g. a file or socket. The channel is not closed.
+	 *
+	 * @param bi - the image
+	 * @param options - the format and its settings, e.g. {@link EncodeOptions#JPEG_BALANCED}
+	 * @param channel - where to write it
+	 * @return the number of bytes written
+	 * @throws IllegalArgumentException if there is no writer for the format and image, or
+	 * it doesn't support the settings
+	 */
+	public static long writeImage(BufferedImage bi, EncodeOptions options, WritableByteChannel channel) throws IOException {
+		return writeImage(bi, options, Channels.newOutputStream(channel));
+	}
+
+	private static void write(BufferedImage bi, EncodeOptions options, ImageOutputStream ios) throws IOException {
+		if (!ImageWriterPool.write(bi, options, ios)) {
+			throw new IllegalArgumentException("No ImageWriter for " + options.getFormat() + " images of type " + bi.getType());
+		}
+	}
+
 	@Data
 	public static class InputStreamAndSize {
 		private InputStream stream;
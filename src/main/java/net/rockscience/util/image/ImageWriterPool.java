@@ -0,0 +1,135 @@
+package net.rockscience.util.image;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Keeps idle {@link ImageWriter}s per format, shared by all threads, so encoding doesn't go
+ * through the ImageIO service registry and build a new writer every time. A thread takes a
+ * writer for one image and hands it back reset, so short-lived and virtual threads reuse the
+ * same few writers. At most {@link #MAX_IDLE} are kept per format; any more are disposed,
+ * as is a writer that failed part way.
+ *
+ * @author bob damiano
+ */
+class ImageWriterPool {
+	private ImageWriterPool() {}
+
+	// enough for every core to be encoding at once
+	static final int MAX_IDLE = Runtime.getRuntime().availableProcessors() * 2;
+
+	private static final ConcurrentMap<String, Idle> IDLE = new ConcurrentHashMap<>();
+
+	/**
+	 * Encode an image to a stream
+	 *
+	 * @return false if no writer can write the image in the format
+	 */
+	static boolean write(BufferedImage bi, EncodeOptions options, ImageOutputStream ios) throws IOException {
+		Idle idle = IDLE.computeIfAbsent(options.getFormat(), f -> new Idle());
+		ImageWriter writer = idle.take();
+		boolean pooled = true;
+		if (writer == null || !writer.getOriginatingProvider().canEncodeImage(bi)) {
+			// the pooled writer is kept for the images it can handle; this one gets its own
+			if (writer != null) {
+				idle.give(writer);
+				pooled = false;
+			}
+			writer = find(bi, options.getFormat());
+			if (writer == null) {
+				return false;
+			}
+		}
+
+		boolean ok = false;
+		try {
+			writer.setOutput(ios);
+			writer.write(null, new IIOImage(bi, null, null), param(writer, options));
+			ios.flush();
+			ok = true;
+		}
+		finally {
+			if (ok && pooled) {
+				writer.reset();
+				idle.give(writer);
+			}
+			else {
+				writer.dispose();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The idle writers for one format. The count is kept beside the queue, as a
+	 * {@link ConcurrentLinkedQueue}'s size is a full walk
+	 */
+	private static class Idle {
+		private final Queue<ImageWriter> writers = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger count = new AtomicInteger();
+
+		ImageWriter take() {
+			ImageWriter writer = writers.poll();
+			if (writer != null) {
+				count.decrementAndGet();
+			}
+			return writer;
+		}
+
+		void give(ImageWriter writer) {
+			if (count.incrementAndGet() > MAX_IDLE) {
+				count.decrementAndGet();
+				writer.dispose();
+				return;
+			}
+			writers.add(writer);
+		}
+	}
+
+	private static ImageWriter find(BufferedImage bi, String format) {
+		Iterator<ImageWriter> writers = ImageIO.getImageWriters(ImageTypeSpecifier.createFromRenderedImage(bi), format);
+		return writers.hasNext() ? writers.next() : null;
+	}
+
+	private static ImageWriteParam param(ImageWriter writer, EncodeOptions options) {
+		if (options.isDefault()) {
+			return null;
+		}
+		ImageWriteParam param = writer.getDefaultWriteParam();
+		if (options.getQuality() != null || options.getCompressionType() != null) {
+			if (!param.canWriteCompressed()) {
+				throw new IllegalArgumentException(options.getFormat() + " has no compression settings");
+			}
+			param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			if (options.getCompressionType() != null) {
+				param.setCompressionType(options.getCompressionType());
+			}
+			else if (param.getCompressionType() == null) {
+				param.setCompressionType(param.getCompressionTypes()[0]);
+			}
+			if (options.getQuality() != null) {
+				param.setCompressionQuality(options.getQuality());
+			}
+		}
+		if (options.isProgressive()) {
+			if (!param.canWriteProgressive()) {
+				throw new IllegalArgumentException(options.getFormat() + " can't be written progressive");
+			}
+			param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+		}
+		return param;
+	}
+}
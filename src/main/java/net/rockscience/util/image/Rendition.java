@@ -0,0 +1,94 @@
+package net.rockscience.util.image;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import net.rockscience.util.cache.KeyedObjectCache.Cacheable;
+
+/**
+ * An encoded rendition from a {@link RenditionCache}. The bytes are immutable and shared by
+ * every caller that gets the same rendition: either a heap array, or a read only mapping of
+ * the disk tier's file.
+ *
+ * @author bob damiano
+ */
+public class Rendition implements Cacheable {
+	private final ByteBuffer bytes;
+	private final int cacheSeconds;
+
+	Rendition(ByteBuffer bytes, int cacheSeconds) {
+		this.bytes = bytes.asReadOnlyBuffer();
+		this.cacheSeconds = cacheSeconds;
+	}
+
+	/**
+	 * @return the encoded size in bytes
+	 */
+	public int size() {
+		return bytes.remaining();
+	}
+
+	/**
+	 * @return a read only buffer over the encoded bytes, positioned at the start
+	 */
+	public ByteBuffer byteBuffer() {
+		return bytes.duplicate();
+	}
+
+	/**
+	 * @return a stream reading the encoded bytes
+	 */
+	public InputStream inputStream() {
+		ByteBuffer b = byteBuffer();
+		return new InputStream() {
+			@Override
+			public int read() {
+				return b.hasRemaining() ? b.get() & 0xff : -1;
+			}
+
+			@Override
+			public int read(byte[] dst, int off, int len) {
+				if (len == 0) {
+					return 0;
+				}
+				if (!b.hasRemaining()) {
+					return -1;
+				}
+				int n = Math.min(len, b.remaining());
+				b.get(dst, off, n);
+				return n;
+			}
+
+			@Override
+			public int available() {
+				return b.remaining();
+			}
+		};
+	}
+
+	/**
+	 * Write the encoded bytes to a stream
+	 */
+	public void writeTo(OutputStream os) throws IOException {
+		writeTo(Channels.newChannel(os));
+	}
+
+	/**
+	 * Write the encoded bytes to a channel
+	 */
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		ByteBuffer b = byteBuffer();
+		while (b.hasRemaining()) {
+			channel.write(b);
+		}
+	}
+
+	@Override
+	public int getCacheSeconds() {
+		return cacheSeconds;
+	}
+}
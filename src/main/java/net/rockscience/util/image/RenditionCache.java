@@ -0,0 +1,318 @@
+package net.rockscience.util.image;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.imageio.stream.ImageInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.rockscience.util.cache.CacheStats;
+import net.rockscience.util.cache.KeyedObjectCache;
+import net.rockscience.util.cache.KeyedObjectCache.HasCacheKey;
+
+/**
+ * Caches encoded renditions of images, so asking again for the same source at the same width
+ * and format skips both the decode and the encode.
+ * <p>
+ * Renditions are keyed by a SHA-256 of the source bytes, the target width and the format, so
+ * the same image reached by different names or paths is only rendered once. Concurrent
+ * requests for the same rendition share one render.
+ * <p>
+ * The heap tier is a {@link KeyedObjectCache} bounded by the total encoded size, evicting the
+ * least recently used. It is split into no more lock segments than leave each one room for
+ * the largest expected rendition. A rendition heavier than its segment's share of the budget
+ * would be evicted as soon as it went in.
+ * <p>
+ * The optional disk tier keeps every rendition as a file and serves heap misses from a read
+ * only memory mapping of it, which survives restarts and isn't copied onto the heap. Nothing
+ * is ever evicted from it, so the directory is left for the caller to prune.
+ *
+ * @author bob damiano
+ */
+public class RenditionCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RenditionCache.class);
+
+	private static final int DEFAULT_CACHE_SECONDS = 24 * 60 * 60;
+	// about a full size 12MP photo as PNG
+	private static final long DEFAULT_MAX_RENDITION_BYTES = 32L * 1024 * 1024;
+
+	private final KeyedObjectCache<Request, Rendition> heap;
+	private Path diskDir;
+	private ScalingMethod scalingMethod = ScalingMethod.DEFAULT;
+	private int cacheSeconds = DEFAULT_CACHE_SECONDS;
+
+	private final LongAdder diskHits = new LongAdder();
+	private final LongAdder renders = new LongAdder();
+	private final LongAdder renderFailures = new LongAdder();
+	private final LongAdder renderNanos = new LongAdder();
+
+	/**
+	 * @param maxHeapBytes - the most encoded bytes to keep on the heap
+	 */
+	public RenditionCache(long maxHeapBytes) {
+		this(maxHeapBytes, DEFAULT_MAX_RENDITION_BYTES);
+	}
+
+	/**
+	 * @param maxHeapBytes - the most encoded bytes to keep on the heap
+	 * @param maxRenditionBytes - the size of the largest rendition expected. Every lock
+	 * segment of the heap tier gets at least this much of the budget
+	 */
+	public RenditionCache(long maxHeapBytes, long maxRenditionBytes) {
+		long fit = Math.max(1, maxHeapBytes / Math.max(1, maxRenditionBytes));
+		int segments = (int) Math.min(fit, Runtime.getRuntime().availableProcessors() * 2L);
+		heap = new KeyedObjectCache<Request, Rendition>(Integer.MAX_VALUE, this::load)
+				// rounded down, as the store rounds up to a power of two
+				.withConcurrencyLevel(Integer.highestOneBit(segments))
+				.withMaximumWeight(maxHeapBytes, Rendition::size);
+	}
+
+	/**
+	 * Keep renditions as files in a directory as well, and serve heap misses from there.
+	 * Call before the cache is used.
+	 *
+	 * @param dir - the directory, created if need be
+	 * @return this
+	 */
+	public RenditionCache withDiskTier(Path dir) throws IOException {
+		this.diskDir = Files.createDirectories(dir);
+		return this;
+	}
+
+	/**
+	 * Set how renditions are scaled. Defaults to {@link ScalingMethod#DEFAULT}. Call before
+	 * the cache is used, as renditions already cached (including on disk) are not redone.
+	 *
+	 * @param scalingMethod - the speed/quality tradeoff
+	 * @return this
+	 */
+	public RenditionCache withScalingMethod(ScalingMethod scalingMethod) {
+		this.scalingMethod = scalingMethod;
+		return this;
+	}
+
+	/**
+	 * Set how long a rendition stays in the heap tier. Defaults to a day. A rendition never
+	 * goes stale, since its key is its source's content, so this only ages out ones that
+	 * are no longer asked for.
+	 *
+	 * @param cacheSeconds - the time to keep a rendition
+	 * @return this
+	 */
+	public RenditionCache withCacheSeconds(int cacheSeconds) {
+		this.cacheSeconds = cacheSeconds;
+		return this;
+	}
+
+	/**
+	 * Get a rendition of an encoded image, no wider than the target width
+	 *
+	 * @param source - the encoded source image
+	 * @param width - the max width
+	 * @param format - the format to encode in, e.g. jpg
+	 * @return the rendition
+	 * @throws IOException if the source can't be decoded or the rendition encoded
+	 */
+	public Rendition get(byte[] source, int width, String format) throws IOException {
+		return get(ByteBuffer.wrap(source), width, format);
+	}
+
+	/**
+	 * Get a rendition of an image file, no wider than the target width. The file is
+	 * memory-mapped to hash and decode it.
+	 *
+	 * @param source - the source image file
+	 * @param width - the max width
+	 * @param format - the format to encode in, e.g. jpg
+	 * @return the rendition
+	 * @throws IOException if the source can't be read or decoded or the rendition encoded
+	 */
+	public Rendition get(Path source, int width, String format) throws IOException {
+		return get(map(source), width, format);
+	}
+
+	private Rendition get(ByteBuffer source, int width, String format) throws IOException {
+		if (width < 1) {
+			throw new IllegalArgumentException("width must be at least 1");
+		}
+		RenditionKey key = new RenditionKey(contentHash(source), width, format.toLowerCase(Locale.ROOT));
+		try {
+			return heap.getObject(new Request(key, source));
+		}
+		catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+	}
+
+	/**
+	 * Drop everything from the heap tier. The disk tier is left alone
+	 */
+	public void clear() {
+		heap.invalidateAll();
+	}
+
+	/**
+	 * Return a snapshot of the cache's counters
+	 * @return
+	 */
+	public RenditionCacheStats getStats() {
+		CacheStats h = heap.getStats();
+		return RenditionCacheStats.builder()
+				.heapHitCount(h.getHitCount())
+				.heapMissCount(h.getMissCount())
+				.diskHitCount(diskHits.sum())
+				.renderCount(renders.sum())
+				.renderFailureCount(renderFailures.sum())
+				.totalRenderNanos(renderNanos.sum())
+				.heapSize(h.getSize())
+				.heapBytes(h.getWeight())
+				.build();
+	}
+
+	/**
+	 * The heap tier's repo: the disk tier if there is one, otherwise a render
+	 */
+	private Rendition load(Request request) {
+		try {
+			if (diskDir != null) {
+				Rendition r = readDisk(request.key);
+				if (r != null) {
+					diskHits.increment();
+					return r;
+				}
+			}
+			return render(request);
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	private Rendition render(Request request) throws IOException {
+		RenditionKey key = request.key;
+		long start = System.nanoTime();
+		byte[] bytes;
+		try {
+			BufferedImage image;
+			try (ImageInputStream iis = new ByteBufferImageInputStream(request.source)) {
+				image = ImageUtil.decode(iis, key.width(), null, scalingMethod);
+			}
+			if (image == null) {
+				throw new IOException("No ImageReader for source " + key.hash());
+			}
+			try (EncodedImage encoded = ImageUtil.encode(image, key.format())) {
+				bytes = new byte[encoded.size()];
+				encoded.byteBuffer().get(bytes);
+			}
+		}
+		catch (IOException | RuntimeException ex) {
+			renderFailures.increment();
+			throw ex;
+		}
+		renders.increment();
+		renderNanos.add(System.nanoTime() - start);
+
+		if (diskDir != null) {
+			writeDisk(key, bytes);
+		}
+		return new Rendition(ByteBuffer.wrap(bytes), cacheSeconds);
+	}
+
+	private Rendition readDisk(RenditionKey key) throws IOException {
+		try {
+			return new Rendition(map(fileOf(key)), cacheSeconds);
+		}
+		catch (NoSuchFileException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Write to a temp file and move it into place, so a reader never maps a half written file
+	 */
+	private void writeDisk(RenditionKey key, byte[] bytes) {
+		Path file = fileOf(key);
+		Path temp = null;
+		try {
+			temp = Files.createTempFile(diskDir, file.getFileName().toString(), ".tmp");
+			Files.write(temp, bytes);
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException ex) {
+			// the rendition is still good, it just won't be on disk
+			LOGGER.warn("Failed to write rendition {} to the disk tier", file, ex);
+			try {
+				if (temp != null) {
+					Files.deleteIfExists(temp);
+				}
+			}
+			catch (IOException ignored) {
+			}
+		}
+	}
+
+	private Path fileOf(RenditionKey key) {
+		return diskDir.resolve(key.hash() + "-" + key.width() + "." + key.format());
+	}
+
+	private static ByteBuffer map(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Too large to map: " + file);
+			}
+			// the mapping stays valid after the channel is closed
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	static String contentHash(ByteBuffer source) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(source.duplicate());
+			return HexFormat.of().formatHex(digest.digest());
+		}
+		catch (NoSuchAlgorithmException ex) {
+			// every JRE has SHA-256
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * What a rendition is cached by
+	 */
+	record RenditionKey(String hash, int width, String format) {}
+
+	/**
+	 * A lookup: the key, plus the source to render from on a miss
+	 */
+	private static class Request implements HasCacheKey<RenditionKey> {
+		final RenditionKey key;
+		final ByteBuffer source;
+
+		Request(RenditionKey key, ByteBuffer source) {
+			this.key = key;
+			this.source = source;
+		}
+
+		@Override
+		public RenditionKey getCacheKey() {
+			return key;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package net.rockscience.util.image;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * An immutable snapshot of a {@link RenditionCache}'s counters
+ *
+ * @author bob damiano
+ */
+@Value
+@Builder
+public class RenditionCacheStats {
+	/** requests answered from the heap tier */
+	long heapHitCount;
+	/** requests that missed the heap tier */
+	long heapMissCount;
+	/** heap misses found in the disk tier */
+	long diskHitCount;
+	/** renditions made by decoding, scaling and encoding a source */
+	long renderCount;
+	/** renditions that couldn't be made */
+	long renderFailureCount;
+	/** total time spent making renditions */
+	long totalRenderNanos;
+	/** renditions in the heap tier when the snapshot was taken */
+	int heapSize;
+	/** encoded bytes in the heap tier when the snapshot was taken */
+	long heapBytes;
+
+	/**
+	 * Return the fraction of requests that didn't need a render, or 1.0 if there were none
+	 * @return
+	 */
+	public double getHitRate() {
+		long requests = heapHitCount + heapMissCount;
+		return requests == 0 ? 1.0 : 1.0 - (double) (renderCount + renderFailureCount) / requests;
+	}
+
+	/**
+	 * Return the fraction of requests answered from the heap tier, or 1.0 if there were none
+	 * @return
+	 */
+	public double getHeapHitRate() {
+		long requests = heapHitCount + heapMissCount;
+		return requests == 0 ? 1.0 : (double) heapHitCount / requests;
+	}
+
+	/**
+	 * Return the mean time to make a rendition in milliseconds
+	 * @return
+	 */
+	public double getAverageRenderMs() {
+		return renderCount == 0 ? 0.0 : totalRenderNanos / 1_000_000.0 / renderCount;
+	}
+
+	/**
+	 * Flatten the snapshot into name/value pairs for a metrics exporter
+	 * @return an ordered map of metric name to value
+	 */
+	public Map<String, Number> toMap() {
+		Map<String, Number> m = new LinkedHashMap<>();
+		m.put("heap_hits", heapHitCount);
+		m.put("heap_misses", heapMissCount);
+		m.put("disk_hits", diskHitCount);
+		m.put("renders", renderCount);
+		m.put("render_failures", renderFailureCount);
+		m.put("render_time_total_ns", totalRenderNanos);
+		m.put("heap_size", heapSize);
+		m.put("heap_bytes", heapBytes);
+		m.put("hit_rate", getHitRate());
+		m.put("heap_hit_rate", getHeapHitRate());
+		return m;
+	}
+}
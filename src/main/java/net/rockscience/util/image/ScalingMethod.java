@@ -0,0 +1,33 @@
+package net.rockscience.util.image;
+
+/**
+ * How {@link ImageUtil#scaleImageToMaxTargetWidth(java.awt.image.BufferedImage, int, ScalingMethod)}
+ * scales an image down, from fastest and roughest to slowest and sharpest.
+ *
+ * @author bob damiano
+ */
+public enum ScalingMethod {
+	/**
+	 * One {@code drawImage} with the default rendering hints, always to an RGB image. What the
+	 * JDK does varies by pipeline, but it is usually nearest neighbour, so fine detail aliases.
+	 */
+	DEFAULT,
+	/**
+	 * Bilinear {@code drawImage} steps that halve the image until one last step reaches the
+	 * target, with much less aliasing than {@link #DEFAULT}. Each step is a full pass, so it
+	 * costs well over an order of magnitude more than {@link #DEFAULT}: about 90 ms against
+	 * 3 ms for a 4032 pixel wide photo on one core (see ImageScalingBenchmark). That is about
+	 * the cost of {@link #BOX} and a third of {@link #LANCZOS3}.
+	 */
+	PROGRESSIVE_BILINEAR,
+	/**
+	 * A separable box filter: each target pixel is the average of the source pixels it covers.
+	 * Smooth and alias free, if a little soft, at about the cost of {@link #PROGRESSIVE_BILINEAR}.
+	 */
+	BOX,
+	/**
+	 * A separable three-lobe Lanczos filter: the sharpest result, at a few times the cost of
+	 * {@link #BOX}.
+	 */
+	LANCZOS3;
+}
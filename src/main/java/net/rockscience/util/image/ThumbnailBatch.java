@@ -0,0 +1,331 @@
+package net.rockscience.util.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Makes renditions at several widths for a batch of images, e.g. {@link ImageUtil#MAX_IMG_WIDTH}
+ * and {@link ImageUtil#THUMBNAIL_WIDTH}, using every core.
+ * <p>
+ * Each source is decoded once, straight to the widest rendition with
+ * {@link ImageUtil#bufferedImageFromStream(InputStream, int)}, and each narrower rendition is
+ * scaled from the one before it rather than from the original. Sources are handed to the
+ * worker threads through a bounded queue, so a large or lazily produced batch is read only as
+ * fast as the workers keep up and at most a queue's worth of images are waiting at a time.
+ * <p>
+ * A failure on one source is logged, passed to {@link RenditionSink#failed} and counted; the
+ * rest of the batch carries on.
+ *
+ * @author bob damiano
+ */
+public class ThumbnailBatch {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailBatch.class);
+
+	// tells a worker the batch is done
+	private static final Source END = Source.of("", new byte[0]);
+
+	private final EncodeOptions encodeOptions;
+	// widest first
+	private final int[] widths;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int queueSize = -1;
+	private ScalingMethod scalingMethod = ScalingMethod.DEFAULT;
+
+	/**
+	 * @param format - the format to encode renditions in, e.g. jpg
+	 * @param widths - the max width of each rendition
+	 */
+	public ThumbnailBatch(String format, int... widths) {
+		this(EncodeOptions.of(format), widths);
+	}
+
+	/**
+	 * @param encodeOptions - how to encode renditions, e.g. {@link EncodeOptions#JPEG_SMALL}
+	 * @param widths - the max width of each rendition
+	 */
+	public ThumbnailBatch(EncodeOptions encodeOptions, int... widths) {
+		if (widths.length == 0) {
+			throw new IllegalArgumentException("at least one width is needed");
+		}
+		this.encodeOptions = encodeOptions;
+		this.widths = IntStream.of(widths).distinct().boxed()
+				.sorted((a, b) -> b - a).mapToInt(Integer::intValue).toArray();
+		if (this.widths[this.widths.length - 1] < 1) {
+			throw new IllegalArgumentException("widths must be at least 1");
+		}
+	}
+
+	/**
+	 * Set the number of worker threads. Defaults to the number of cores.
+	 *
+	 * @param threads - the number of threads
+	 * @return this
+	 */
+	public ThumbnailBatch withThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be at least 1");
+		}
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * Set how many sources may wait for a worker. Defaults to twice the number of threads.
+	 *
+	 * @param queueSize - the queue capacity
+	 * @return this
+	 */
+	public ThumbnailBatch withQueueSize(int queueSize) {
+		if (queueSize < 1) {
+			throw new IllegalArgumentException("queueSize must be at least 1");
+		}
+		this.queueSize = queueSize;
+		return this;
+	}
+
+	/**
+	 * Set how renditions are scaled. Defaults to {@link ScalingMethod#DEFAULT}.
+	 *
+	 * @param scalingMethod - the speed/quality tradeoff
+	 * @return this
+	 */
+	public ThumbnailBatch withScalingMethod(ScalingMethod scalingMethod) {
+		this.scalingMethod = scalingMethod;
+		return this;
+	}
+
+	/**
+	 * @return the rendition widths, widest first
+	 */
+	public int[] getWidths() {
+		return widths.clone();
+	}
+
+	/**
+	 * Make every rendition of every source, blocking until the batch is done. The sink is
+	 * called from the worker threads.
+	 *
+	 * @param sources - the images
+	 * @param sink - takes each rendition
+	 * @return timings and counts for the batch
+	 */
+	public ThumbnailBatchStats run(Iterable<? extends Source> sources, RenditionSink sink) throws InterruptedException {
+		BlockingQueue<Source> queue = new ArrayBlockingQueue<>(queueSize > 0 ? queueSize : threads * 2);
+		Counters counters = new Counters();
+		long start = System.nanoTime();
+
+		List<Thread> workers = new ArrayList<>(threads);
+		for (int i = 0; i < threads; i++) {
+			workers.add(Thread.ofPlatform().daemon().name("thumbnail-batch-", i)
+					.start(() -> work(queue, sink, counters)));
+		}
+
+		try {
+			for (Source source : sources) {
+				long waitStart = System.nanoTime();
+				queue.put(source);
+				counters.queueWait.add(System.nanoTime() - waitStart);
+			}
+			for (int i = 0; i < threads; i++) {
+				queue.put(END);
+			}
+			for (Thread worker : workers) {
+				worker.join();
+			}
+		}
+		catch (InterruptedException | RuntimeException | Error ex) {
+			workers.forEach(Thread::interrupt);
+			throw ex;
+		}
+
+		return ThumbnailBatchStats.builder()
+				.sourceCount(counters.sources.sum())
+				.renditionCount(counters.renditions.sum())
+				.failureCount(counters.failures.sum())
+				.wallNanos(System.nanoTime() - start)
+				.queueWaitNanos(counters.queueWait.sum())
+				.decodeNanos(counters.decode.sum())
+				.scaleNanos(counters.scale.sum())
+				.encodeNanos(counters.encode.sum())
+				.sinkNanos(counters.sink.sum())
+				.build();
+	}
+
+	private void work(BlockingQueue<Source> queue, RenditionSink sink, Counters counters) {
+		try {
+			for (Source source = queue.take(); source != END; source = queue.take()) {
+				counters.sources.increment();
+				try {
+					process(source, sink, counters);
+				}
+				catch (Throwable ex) {
+					// Errors too: an OutOfMemoryError from one huge image mustn't take the
+					// worker down, or the producer would block forever on a full queue
+					LOGGER.warn("Failed to make renditions of {}", source.getId(), ex);
+					counters.failures.increment();
+					failed(sink, source, ex);
+				}
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void failed(RenditionSink sink, Source source, Throwable ex) {
+		try {
+			sink.failed(source, ex);
+		}
+		catch (Throwable sinkEx) {
+			// a worker must never die, or the batch would stall
+			LOGGER.warn("Sink failed handling the failure of {}", source.getId(), sinkEx);
+		}
+	}
+
+	private void process(Source source, RenditionSink sink, Counters counters) throws IOException {
+		long t = System.nanoTime();
+		BufferedImage image;
+		try (InputStream is = source.open()) {
+			image = ImageUtil.bufferedImageFromStream(is, widths[0], null, scalingMethod);
+		}
+		if (image == null) {
+			throw new IOException("No ImageReader for " + source.getId());
+		}
+		t = lap(counters.decode, t);
+
+		for (int width : widths) {
+			// each rendition is scaled from the last, which is already close to its size
+			image = ImageUtil.scaleImageToMaxTargetWidth(image, width, scalingMethod);
+			t = lap(counters.scale, t);
+			try (EncodedImage encoded = ImageUtil.encode(image, encodeOptions)) {
+				t = lap(counters.encode, t);
+				sink.accept(source, width, encoded);
+				t = lap(counters.sink, t);
+			}
+			counters.renditions.increment();
+		}
+	}
+
+	private static long lap(LongAdder stage, long start) {
+		long now = System.nanoTime();
+		stage.add(now - start);
+		return now;
+	}
+
+	private static class Counters {
+		final LongAdder sources = new LongAdder();
+		final LongAdder renditions = new LongAdder();
+		final LongAdder failures = new LongAdder();
+		final LongAdder queueWait = new LongAdder();
+		final LongAdder decode = new LongAdder();
+		final LongAdder scale = new LongAdder();
+		final LongAdder encode = new LongAdder();
+		final LongAdder sink = new LongAdder();
+	}
+
+	/**
+	 * An image to make renditions of
+	 *
+	 * @author bob damiano
+	 */
+	public static interface Source {
+		/**
+		 * @return a name for the image, for the sink and for logging
+		 */
+		String getId();
+
+		/**
+		 * @return a new stream of the encoded image. It is closed after decoding
+		 */
+		InputStream open() throws IOException;
+
+		/**
+		 * @return a source reading a file, named by its path
+		 */
+		static Source of(Path file) {
+			return of(file.toString(), () -> Files.newInputStream(file));
+		}
+
+		/**
+		 * @return a source reading encoded bytes
+		 */
+		static Source of(String id, byte[] bytes) {
+			return of(id, () -> new ByteArrayInputStream(bytes));
+		}
+
+		/**
+		 * @return a source with the given name, opened by the given function
+		 */
+		static Source of(String id, Opener opener) {
+			return new Source() {
+				@Override
+				public String getId() {
+					return id;
+				}
+
+				@Override
+				public InputStream open() throws IOException {
+					return opener.open();
+				}
+
+				@Override
+				public String toString() {
+					return id;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Opens a {@link Source}'s stream
+	 */
+	@FunctionalInterface
+	public static interface Opener {
+		InputStream open() throws IOException;
+	}
+
+	/**
+	 * Takes the finished renditions. Called from the worker threads, so it must be thread safe.
+	 *
+	 * @author bob damiano
+	 */
+	public static interface RenditionSink {
+		/**
+		 * Take one rendition. The encoded image is closed when this returns, so copy or write
+		 * it out before then.
+		 *
+		 * @param source - the source image
+		 * @param width - the rendition's max width
+		 * @param image - the encoded rendition
+		 */
+		void accept(Source source, int width, EncodedImage image) throws IOException;
+
+		/**
+		 * Called when a source could not be decoded or one of its renditions failed, including
+		 * with an Error such as running out of memory. Any renditions already accepted for it
+		 * stand.
+		 */
+		default void failed(Source source, Throwable ex) {
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ThumbnailBatch " + encodeOptions + " " + Arrays.toString(widths);
+	}
+}
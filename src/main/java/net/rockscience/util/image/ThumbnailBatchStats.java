@@ -0,0 +1,63 @@
+package net.rockscience.util.image;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Counts and timings for one {@link ThumbnailBatch} run. Stage times are summed across the
+ * worker threads, so together they can exceed the wall time.
+ *
+ * @author bob damiano
+ */
+@Value
+@Builder
+public class ThumbnailBatchStats {
+	/** sources taken from the batch */
+	long sourceCount;
+	/** renditions handed to the sink */
+	long renditionCount;
+	/** sources that failed */
+	long failureCount;
+	/** time from the start of the run to the last worker finishing */
+	long wallNanos;
+	/** time spent waiting for room in the queue, i.e. held back by the workers */
+	long queueWaitNanos;
+	/** time spent reading and decoding sources */
+	long decodeNanos;
+	/** time spent scaling renditions */
+	long scaleNanos;
+	/** time spent encoding renditions */
+	long encodeNanos;
+	/** time spent in the sink */
+	long sinkNanos;
+
+	/**
+	 * Return sources processed per second of wall time
+	 * @return
+	 */
+	public double getSourcesPerSecond() {
+		return wallNanos == 0 ? 0.0 : sourceCount * 1_000_000_000.0 / wallNanos;
+	}
+
+	/**
+	 * Flatten the stats into name/value pairs for a metrics exporter or log line
+	 * @return an ordered map of metric name to value
+	 */
+	public Map<String, Number> toMap() {
+		Map<String, Number> m = new LinkedHashMap<>();
+		m.put("sources", sourceCount);
+		m.put("renditions", renditionCount);
+		m.put("failures", failureCount);
+		m.put("wall_ms", wallNanos / 1_000_000);
+		m.put("queue_wait_ms", queueWaitNanos / 1_000_000);
+		m.put("decode_ms", decodeNanos / 1_000_000);
+		m.put("scale_ms", scaleNanos / 1_000_000);
+		m.put("encode_ms", encodeNanos / 1_000_000);
+		m.put("sink_ms", sinkNanos / 1_000_000);
+		m.put("sources_per_second", getSourcesPerSecond());
+		return m;
+	}
+}
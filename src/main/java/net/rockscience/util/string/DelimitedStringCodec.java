@@ -0,0 +1,207 @@
+package net.rockscience.util.string;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Encodes a list of strings to one delimited string and decodes it back exactly, whatever
+ * the values hold. Unlike {@link DelimitedStringList#toList(String)} nothing is trimmed or
+ * dropped: empty values, whitespace, delimiters and quotes all survive the round trip.
+ * <p>
+ * The delimiter is matched literally and may be several characters long. A value that holds
+ * the delimiter or the quote char, or is empty, is written quoted, with any quote inside it
+ * doubled, as CSV does: with the default quote {@code a,"b,c","say ""hi""",""}. Values that
+ * need none of that are written as they are, so a list with nothing to escape encodes to the
+ * same string as a plain join, and a string without a quote char is decoded by a plain split.
+ * <p>
+ * Decoding is lenient about a quote char inside an unquoted value, which is kept as is, and
+ * strict about anything that could only come from a broken encoding: an unclosed quote or
+ * text between a closing quote and the next delimiter is an {@link IllegalArgumentException}.
+ * <p>
+ * Immutable and thread safe.
+ *
+ * @author Bob Damiano
+ */
+public class DelimitedStringCodec {
+	public static final char DEFAULT_QUOTE = '"';
+
+	private final String delimiter;
+	private final char quote;
+	// the lengths k for which a value ending in the delimiter's first k chars would run into
+	// the delimiter after it and be split early, e.g. 1 for "::" and a value ending in ':'
+	private final int[] overlaps;
+
+	/**
+	 * @param delimiter - the literal delimiter, not empty
+	 */
+	public DelimitedStringCodec(String delimiter) {
+		this(delimiter, DEFAULT_QUOTE);
+	}
+
+	/**
+	 * @param delimiter - the literal delimiter, not empty
+	 * @param quote - the quote char, which can't be part of the delimiter
+	 */
+	public DelimitedStringCodec(String delimiter, char quote) {
+		if (delimiter == null || delimiter.isEmpty()) {
+			throw new IllegalArgumentException("The delimiter can't be empty");
+		}
+		if (delimiter.indexOf(quote) >= 0) {
+			throw new IllegalArgumentException("The delimiter '" + delimiter + "' contains the quote char " + quote);
+		}
+		this.delimiter = delimiter;
+		this.quote = quote;
+
+		int d = delimiter.length();
+		int[] found = new int[d];
+		int n = 0;
+		for (int k = 1; k < d; k++) {
+			if (delimiter.regionMatches(0, delimiter, k, d - k)) {
+				found[n++] = k;
+			}
+		}
+		this.overlaps = Arrays.copyOf(found, n);
+	}
+
+	public String getDelimiter() {
+		return delimiter;
+	}
+
+	public char getQuote() {
+		return quote;
+	}
+
+	/**
+	 * @param values - the values to encode. A null value is written as an empty one
+	 * @return the delimited string, empty for no values
+	 */
+	public String encode(Iterable<String> values) {
+		StringBuilder sb = new StringBuilder();
+		boolean first = true;
+		for (String value : values) {
+			if (!first) {
+				sb.append(delimiter);
+			}
+			first = false;
+			if (value == null) {
+				value = "";
+			}
+			if (needsQuoting(value)) {
+				appendQuoted(sb, value);
+			}
+			else {
+				sb.append(value);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param encoded - a string written by {@link #encode(Iterable)}, may be null
+	 * @return the values, empty for a null or empty string
+	 * @throws IllegalArgumentException if a quoted value is not closed or is followed by
+	 * anything but a delimiter
+	 */
+	public List<String> decode(String encoded) {
+		if (encoded == null || encoded.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<String> result = new ArrayList<>();
+		if (encoded.indexOf(quote) < 0) {
+			split(encoded, result);
+		}
+		else {
+			parse(encoded, result);
+		}
+		return result;
+	}
+
+	boolean needsQuoting(String value) {
+		if (value.isEmpty() || value.indexOf(quote) >= 0 || value.indexOf(delimiter) >= 0) {
+			return true;
+		}
+		for (int k : overlaps) {
+			if (value.regionMatches(value.length() - k, delimiter, 0, k)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void appendQuoted(StringBuilder sb, String value) {
+		sb.append(quote);
+		int from = 0;
+		for (int q = value.indexOf(quote); q >= 0; q = value.indexOf(quote, from)) {
+			sb.append(value, from, q + 1).append(quote);
+			from = q + 1;
+		}
+		sb.append(value, from, value.length()).append(quote);
+	}
+
+	/**
+	 * The fast path for input with nothing quoted
+	 */
+	private void split(String encoded, List<String> result) {
+		int from = 0;
+		for (int d = encoded.indexOf(delimiter); d >= 0; d = encoded.indexOf(delimiter, from)) {
+			result.add(encoded.substring(from, d));
+			from = d + delimiter.length();
+		}
+		result.add(encoded.substring(from));
+	}
+
+	/**
+	 * A state machine over the values: each starts either unquoted, running to the next
+	 * delimiter, or quoted, running to a quote that isn't doubled, which must be followed by a
+	 * delimiter or the end. Runs between quotes and delimiters are found with indexOf and
+	 * copied in bulk rather than char by char.
+	 */
+	private void parse(String encoded, List<String> result) {
+		int length = encoded.length();
+		int pos = 0;
+		StringBuilder sb = null;
+		while (true) {
+			int end;
+			if (pos < length && encoded.charAt(pos) == quote) {
+				if (sb == null) {
+					sb = new StringBuilder();
+				}
+				sb.setLength(0);
+				int from = pos + 1;
+				while (true) {
+					int q = encoded.indexOf(quote, from);
+					if (q < 0) {
+						throw new IllegalArgumentException("Unclosed quote at index " + pos);
+					}
+					sb.append(encoded, from, q);
+					if (q + 1 < length && encoded.charAt(q + 1) == quote) {
+						sb.append(quote);
+						from = q + 2;
+					}
+					else {
+						end = q + 1;
+						break;
+					}
+				}
+				if (end < length && !encoded.startsWith(delimiter, end)) {
+					throw new IllegalArgumentException("Expected a delimiter after the quoted value at index " + end);
+				}
+				result.add(sb.toString());
+			}
+			else {
+				end = encoded.indexOf(delimiter, pos);
+				if (end < 0) {
+					end = length;
+				}
+				result.add(encoded.substring(pos, end));
+			}
+
+			if (end >= length) {
+				return;
+			}
+			pos = end + delimiter.length();
+		}
+	}
+}
@@ -1,34 +1,40 @@
 package net.rockscience.util.string;
 
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
 
 import org.apache.commons.lang3.StringUtils;
 
 /**
  * A helper for compressing string lists to delimited strings and to 
- * expand delimited Strings into a string list
+ * expand delimited Strings into a string list.
+ * <p>
+ * The delimiter is matched literally, whatever characters it has, and values are trimmed
+ * with blank ones dropped. Besides {@link #toList(String)}, large delimited values can be
+ * walked a token at a time with {@link #tokens(CharSequence)} or
+ * {@link #forEachToken(CharSequence, TokenConsumer)} without building the list.
+ * <p>
+ * Those are lossy: a value holding the delimiter comes back as two. For values that must
+ * survive exactly, use {@link #encode(Iterable)} and {@link #decode(String)}, which quote
+ * and escape as needed with a {@link DelimitedStringCodec}.
  * @author Bob Damiano
  *
  */
 public class DelimitedStringList {
 	
-	private static final Map<String,String> delimsThatNeedEscape;
-	
-	static {
-		delimsThatNeedEscape = new HashMap<>();
-		delimsThatNeedEscape.put("|", "\\|");
-		// more...?
-	}
-	
 	public static List<String> fromCommaSeperated(String content) {
 		return new DelimitedStringList(",").toList(content);
 	}
 	
 	private final String delimiter;
+	// made on first use, as not every delimiter can be quoted
+	private DelimitedStringCodec codec;
 	
 	public DelimitedStringList(String delimiter) {
 		this.delimiter = delimiter;
@@ -39,29 +45,54 @@ public class DelimitedStringList {
 	}
 
 	public List<String> toList(String delimitedString) {
-		delimitedString = StringUtils.trimToNull(delimitedString);
-		
-		if(delimitedString == null) {
+		DelimitedTokenizer tokens = new DelimitedTokenizer(delimitedString, delimiter);
+		if(!tokens.next()) {
 			return Collections.emptyList();
 		}
 		
-		String delimRx = delimsThatNeedEscape.get(delimiter);
-		if(delimRx == null) {
-			delimRx = delimiter;
-		}
-		
-		String [] as = delimitedString.split(delimRx);
-		
 		List<String> result = new ArrayList<>();
-		for(String a : as) {
-			a = StringUtils.trimToNull(a);
-			if(a != null) {
-				result.add(a);
-			}
-		}
+		do {
+			result.add(delimitedString.substring(tokens.start, tokens.end));
+		} while(tokens.next());
 		return result;
 	}
 	
+	/**
+	 * Call back with the bounds of each non-blank, trimmed value in a delimited sequence, in
+	 * order. Nothing is copied or allocated per value.
+	 * 
+	 * @param delimited - the delimited values, may be null
+	 * @param consumer - called once per value
+	 */
+	public void forEachToken(CharSequence delimited, TokenConsumer consumer) {
+		DelimitedTokenizer tokens = new DelimitedTokenizer(delimited, delimiter);
+		while(tokens.next()) {
+			consumer.token(delimited, tokens.start, tokens.end);
+		}
+	}
+	
+	/**
+	 * The non-blank, trimmed values in a delimited sequence, found lazily as they are iterated.
+	 * Each value is a read only view of the sequence, not a copy, so it is only as stable as the
+	 * sequence; call toString() on it to keep it.
+	 * 
+	 * @param delimited - the delimited values, may be null
+	 * @return the values
+	 */
+	public Iterable<CharSequence> tokens(CharSequence delimited) {
+		return new Iterable<CharSequence>() {
+			@Override
+			public Iterator<CharSequence> iterator() {
+				return new TokenIterator(delimited);
+			}
+			
+			@Override
+			public Spliterator<CharSequence> spliterator() {
+				return Spliterators.spliteratorUnknownSize(iterator(), 
+						Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+			}
+		};
+	}
 	
 	public String toDelimitedString( Iterable<String> stringList) {
 		StringBuilder sb = new StringBuilder();
@@ -77,4 +108,79 @@ public class DelimitedStringList {
 		return sb.length() == 0 ? null : sb.toString();
 	}
 	
+	/**
+	 * Encode values so that {@link #decode(String)} gives them back exactly. Values are not
+	 * trimmed or dropped, and any that hold the delimiter or a quote are quoted.
+	 * 
+	 * @param values - the values
+	 * @return the delimited string, empty for no values
+	 * @see DelimitedStringCodec#encode(Iterable)
+	 */
+	public String encode(Iterable<String> values) {
+		return codec().encode(values);
+	}
+	
+	/**
+	 * Decode a string written by {@link #encode(Iterable)}
+	 * 
+	 * @param encoded - the delimited string, may be null
+	 * @return the values
+	 * @see DelimitedStringCodec#decode(String)
+	 */
+	public List<String> decode(String encoded) {
+		return codec().decode(encoded);
+	}
+	
+	private DelimitedStringCodec codec() {
+		// a benign race, the codec is immutable
+		if(codec == null) {
+			codec = new DelimitedStringCodec(delimiter);
+		}
+		return codec;
+	}
+	
+	/**
+	 * Takes each value found by {@link DelimitedStringList#forEachToken(CharSequence, TokenConsumer)}
+	 * @author Bob Damiano
+	 */
+	@FunctionalInterface
+	public static interface TokenConsumer {
+		/**
+		 * @param source - the whole delimited sequence
+		 * @param start - the index of the value's first char
+		 * @param end - the index after the value's last char
+		 */
+		void token(CharSequence source, int start, int end);
+	}
+	
+	private class TokenIterator implements Iterator<CharSequence> {
+		private final CharSequence source;
+		private final DelimitedTokenizer tokens;
+		private boolean ready;
+		private boolean more;
+		
+		TokenIterator(CharSequence source) {
+			this.source = source;
+			this.tokens = new DelimitedTokenizer(source, delimiter);
+		}
+		
+		@Override
+		public boolean hasNext() {
+			if(!ready) {
+				more = tokens.next();
+				ready = true;
+			}
+			return more;
+		}
+		
+		@Override
+		public CharSequence next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			ready = false;
+			return CharBuffer.wrap(source, tokens.start, tokens.end);
+		}
+	}
+	
 }
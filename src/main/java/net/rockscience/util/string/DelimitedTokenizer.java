@@ -0,0 +1,88 @@
+package net.rockscience.util.string;
+
+/**
+ * Walks the tokens of a delimited {@link CharSequence} in a single pass, without regexes and
+ * without copying: each call to {@link #next()} moves {@link #start} and {@link #end} to the
+ * next non-blank token, trimmed. The delimiter is matched literally, so any string works as
+ * one. Splitting on an empty delimiter makes every character a token, as
+ * {@code String.split("")} does.
+ *
+ * @author Bob Damiano
+ */
+class DelimitedTokenizer {
+	private final CharSequence source;
+	private final String delimiter;
+	private final int length;
+	private int pos;
+	private boolean done;
+
+	/** the current token's first char */
+	int start;
+	/** one past the current token's last char */
+	int end;
+
+	DelimitedTokenizer(CharSequence source, String delimiter) {
+		this.source = source;
+		this.delimiter = delimiter;
+		this.length = source == null ? 0 : source.length();
+		this.done = source == null;
+	}
+
+	/**
+	 * Move to the next token, skipping blank ones
+	 * @return false at the end of the input
+	 */
+	boolean next() {
+		while (!done) {
+			int delim = indexOfDelimiter(pos);
+			int a = pos;
+			int b = delim < 0 ? length : delim;
+			if (delim < 0) {
+				done = true;
+			}
+			else {
+				pos = delim + delimiter.length();
+			}
+
+			while (a < b && source.charAt(a) <= ' ') {
+				a++;
+			}
+			while (b > a && source.charAt(b - 1) <= ' ') {
+				b--;
+			}
+			if (a < b) {
+				start = a;
+				end = b;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int indexOfDelimiter(int from) {
+		if (delimiter.isEmpty()) {
+			return from + 1 < length ? from + 1 : -1;
+		}
+		if (source instanceof String s) {
+			// an intrinsic, and vectorised on most platforms
+			return s.indexOf(delimiter, from);
+		}
+		char first = delimiter.charAt(0);
+		int last = length - delimiter.length();
+		for (int i = from; i <= last; i++) {
+			if (source.charAt(i) == first && matchesAt(i)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private boolean matchesAt(int i) {
+		for (int j = 1; j < delimiter.length(); j++) {
+			if (source.charAt(i + j) != delimiter.charAt(j)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,46 @@
+package net.rockscience.util.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class ApproximateSizeTest {
+
+	@Test
+	public void testArrays() {
+		assertEquals(16, ApproximateSize.of(new byte[0]));
+		assertEquals(24, ApproximateSize.of(new byte[1]));
+		assertEquals(1040, ApproximateSize.of(new byte[1024]));
+		assertEquals(56, ApproximateSize.of(new int[10]));
+		assertEquals(0, ApproximateSize.of((byte[]) null));
+	}
+
+	@Test
+	public void testStrings() {
+		assertEquals(24 + 24, ApproximateSize.of("hello"));
+		// non Latin-1 takes two bytes a char
+		assertEquals(24 + 32, ApproximateSize.of("héllo世"));
+	}
+
+	@Test
+	public void testBuffers() {
+		long heap = ApproximateSize.of(ByteBuffer.allocate(1000));
+		long direct = ApproximateSize.of(ByteBuffer.allocateDirect(1000));
+		assertTrue(heap > 1000);
+		assertTrue(direct < 100);
+	}
+
+	@Test
+	public void testCollections() {
+		long list = ApproximateSize.ofStrings(List.of("a", "b", "c"));
+		assertTrue(list > 3 * ApproximateSize.of("a"));
+
+		long map = ApproximateSize.ofStrings(Map.of("k1", "v1", "k2", "v2"));
+		assertTrue(map > 4 * ApproximateSize.of("k1"));
+	}
+}
@@ -0,0 +1,137 @@
+package net.rockscience.util.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CacheSnapshotTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		Path file = dir.resolve("snap");
+		// enough records to go through the buffer several times, and one too big for it
+		try (CacheSnapshot.Writer w = new CacheSnapshot.Writer(file)) {
+			for (int i = 0; i < 5000; i++) {
+				w.add(i, new byte[] { (byte) i }, filled(100, i));
+			}
+			w.add(-1, new byte[] { 9 }, filled(200 * 1024, 7));
+			assertEquals(5001, w.commit());
+		}
+
+		try (CacheSnapshot.Reader r = new CacheSnapshot.Reader(file)) {
+			for (int i = 0; i < 5000; i++) {
+				CacheSnapshot.Record rec = r.next();
+				assertEquals(i, rec.lastUpdateMs());
+				assertEquals((byte) i, rec.key().get());
+				assertArrayEquals(filled(100, i), toArray(rec.value()));
+			}
+			CacheSnapshot.Record big = r.next();
+			assertEquals(-1, big.lastUpdateMs());
+			assertArrayEquals(filled(200 * 1024, 7), toArray(big.value()));
+			assertNull(r.next());
+		}
+	}
+
+	@Test
+	public void testUncommittedLeavesNothing() throws IOException {
+		Path file = dir.resolve("snap");
+		try (CacheSnapshot.Writer w = new CacheSnapshot.Writer(file)) {
+			w.add(0, new byte[] { 1 }, new byte[] { 2 });
+		}
+		assertFalse(Files.exists(file));
+		try (var files = Files.list(dir)) {
+			assertEquals(0, files.count());
+		}
+	}
+
+	@Test
+	public void testTruncated() throws IOException {
+		Path file = dir.resolve("snap");
+		try (CacheSnapshot.Writer w = new CacheSnapshot.Writer(file)) {
+			w.add(0, new byte[] { 1 }, filled(100, 1));
+			w.add(0, new byte[] { 2 }, filled(100, 2));
+			w.commit();
+		}
+		byte[] all = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(all, all.length - 50));
+
+		try (CacheSnapshot.Reader r = new CacheSnapshot.Reader(file)) {
+			r.next();
+			assertThrows(EOFException.class, () -> r.next());
+		}
+	}
+
+	@Test
+	public void testCorruptLengths() throws IOException {
+		Path file = dir.resolve("snap");
+		try (CacheSnapshot.Writer w = new CacheSnapshot.Writer(file)) {
+			w.add(0, new byte[] { 1 }, filled(100, 1));
+			w.commit();
+		}
+		// the first record's key length follows the header and its last update time
+		int keyLengthAt = 8 + 8;
+
+		byte[] negative = Files.readAllBytes(file);
+		ByteBuffer.wrap(negative).putInt(keyLengthAt, -5);
+		Files.write(file, negative);
+		try (CacheSnapshot.Reader r = new CacheSnapshot.Reader(file)) {
+			assertThrows(IOException.class, () -> r.next());
+		}
+
+		byte[] huge = Files.readAllBytes(file);
+		ByteBuffer.wrap(huge).putInt(keyLengthAt, 1).putInt(keyLengthAt + 4, Integer.MAX_VALUE);
+		Files.write(file, huge);
+		try (CacheSnapshot.Reader r = new CacheSnapshot.Reader(file)) {
+			assertThrows(EOFException.class, () -> r.next());
+		}
+	}
+
+	@Test
+	public void testFailedCommitLeavesNothing() throws IOException {
+		// the target is a non-empty directory, so the move into place fails
+		Path file = dir.resolve("snap");
+		Files.createDirectory(file);
+		Files.write(file.resolve("in-the-way"), new byte[] { 1 });
+
+		CacheSnapshot.Writer w = new CacheSnapshot.Writer(file);
+		w.add(0, new byte[] { 1 }, new byte[] { 2 });
+		assertThrows(IOException.class, () -> w.commit());
+		try (var files = Files.list(dir)) {
+			assertEquals(1, files.count());
+		}
+	}
+
+	@Test
+	public void testNotASnapshot() throws IOException {
+		Path file = dir.resolve("snap");
+		Files.write(file, "hello world".getBytes());
+		assertThrows(IOException.class, () -> new CacheSnapshot.Reader(file));
+	}
+
+	private static byte[] filled(int n, int v) {
+		byte[] b = new byte[n];
+		Arrays.fill(b, (byte) v);
+		return b;
+	}
+
+	private static byte[] toArray(ByteBuffer b) {
+		byte[] a = new byte[b.remaining()];
+		b.get(a);
+		return a;
+	}
+}
@@ -0,0 +1,48 @@
+package net.rockscience.util.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class CacheStatsTest {
+
+	@Test
+	public void testBuckets() {
+		assertEquals(0, CacheStatsCounter.bucketFor(0));
+		assertEquals(1, CacheStatsCounter.bucketFor(1));
+		assertEquals(2, CacheStatsCounter.bucketFor(3));
+		assertEquals(4, CacheStatsCounter.bucketFor(15));
+		assertEquals(5, CacheStatsCounter.bucketFor(16));
+		assertEquals(CacheStats.LOAD_TIME_BUCKET_MS.length - 1, CacheStatsCounter.bucketFor(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testSnapshot() {
+		CacheStatsCounter counter = new CacheStatsCounter();
+		counter.recordHit();
+		counter.recordHit();
+		counter.recordHit();
+		counter.recordMiss();
+		counter.recordLoad(20_000_000L, false);
+		counter.recordLoad(500_000L, true);
+
+		CacheStats stats = counter.snapshot(7, 0, 2, 0);
+		assertEquals(0.75, stats.getHitRate(), 0.0001);
+		assertEquals(2, stats.getLoadCount());
+		assertEquals(1, stats.getLoadFailureCount());
+		assertEquals(10.25, stats.getAverageLoadMs(), 0.0001);
+
+		Map<String, Number> m = stats.toMap();
+		assertEquals(3L, m.get("hits"));
+		assertEquals(1L, m.get("load_time_lt_1ms"));
+		assertEquals(1L, m.get("load_time_lt_32ms"));
+
+		// the snapshot's histogram can't be changed through its getter
+		stats.getLoadTimeHistogram()[0] = 99;
+		assertEquals(1, stats.getLoadTimeHistogram()[0]);
+		assertEquals(0L, m.get("load_time_inf"));
+		assertEquals(7, m.get("size"));
+	}
+}
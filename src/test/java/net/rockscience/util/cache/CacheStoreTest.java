@@ -0,0 +1,68 @@
+package net.rockscience.util.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+public class CacheStoreTest {
+
+	@Test
+	public void testSingleSegmentIsExactLru() {
+		CacheStore<String> underTest = new CacheStore<>(3, 1);
+		underTest.put("a", "A");
+		underTest.put("b", "B");
+		underTest.put("c", "C");
+
+		// touch a so b becomes the eldest
+		underTest.get("a");
+		underTest.put("d", "D");
+
+		assertNull(underTest.get("b"));
+		assertNotNull(underTest.get("a"));
+		assertNotNull(underTest.get("c"));
+		assertNotNull(underTest.get("d"));
+		assertEquals(3, underTest.size());
+	}
+
+	@Test
+	public void testSegmentedStaysBounded() {
+		CacheStore<Integer> underTest = new CacheStore<>(100, 16);
+		assertEquals(16, underTest.getSegmentCount());
+
+		for (int i = 0; i < 10000; i++) {
+			underTest.put(i, i);
+		}
+		assertEquals(100, underTest.size());
+	}
+
+	@Test
+	public void testSegmentsNeverExceedMaxSize() {
+		// can't give 8 segments a slot each out of 3 entries
+		CacheStore<Integer> underTest = new CacheStore<>(3, 8);
+		assertEquals(2, underTest.getSegmentCount());
+
+		for (int i = 0; i < 100; i++) {
+			underTest.put(i, i);
+		}
+		assertEquals(3, underTest.size());
+	}
+
+	@Test
+	public void testRemove() {
+		CacheStore<String> underTest = new CacheStore<>(10, 4);
+		underTest.put("a", "A");
+		assertEquals("A", underTest.remove("a"));
+		assertNull(underTest.get("a"));
+		assertEquals(0, underTest.size());
+	}
+
+	@Test
+	public void testPutIfAbsent() {
+		CacheStore<String> underTest = new CacheStore<>(10, 4);
+		assertNull(underTest.putIfAbsent("a", "A"));
+		assertEquals("A", underTest.putIfAbsent("a", "A2"));
+		assertEquals("A", underTest.get("a"));
+	}
+}
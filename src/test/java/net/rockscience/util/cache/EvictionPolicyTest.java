@@ -0,0 +1,150 @@
+package net.rockscience.util.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Hit rates of the eviction policies on synthetic traces
+ */
+public class EvictionPolicyTest {
+
+	private static final int CACHE_SIZE = 500;
+	private static final int KEYS = 20_000;
+
+	@Test
+	public void testZipf() {
+		// skewed popularity, no scans: TinyLFU should be at least as good as LRU
+		double lru = hitRate(EvictionPolicy.LRU, zipf(new Random(1), KEYS, 0.9), 200_000);
+		double lfu = hitRate(EvictionPolicy.TINY_LFU, zipf(new Random(1), KEYS, 0.9), 200_000);
+		assertTrue(lfu >= lru, String.format("lru %.3f tinylfu %.3f", lru, lfu));
+	}
+
+	@Test
+	public void testZipfWithScans() {
+		// a batch job touches a run of 2000 never-seen-again keys every 10000 requests
+		double lru = hitRate(EvictionPolicy.LRU, scanning(zipf(new Random(2), KEYS, 0.9)), 200_000);
+		double lfu = hitRate(EvictionPolicy.TINY_LFU, scanning(zipf(new Random(2), KEYS, 0.9)), 200_000);
+		assertTrue(lfu > lru + 0.05, String.format("lru %.3f tinylfu %.3f", lru, lfu));
+	}
+
+	@Test
+	public void testLoop() {
+		// cycling over a few more keys than fit is LRU's worst case: it never hits
+		long[] next = { 0 };
+		LongSupplier loop = () -> next[0]++ % (CACHE_SIZE + 50);
+		double lru = hitRate(EvictionPolicy.LRU, loop, 100_000);
+		next[0] = 0;
+		double lfu = hitRate(EvictionPolicy.TINY_LFU, loop, 100_000);
+		assertEquals(0.0, lru, 0.001);
+		assertTrue(lfu > 0.5, String.format("tinylfu %.3f", lfu));
+	}
+
+	@Test
+	public void testTinyLfuBounds() {
+		CacheStore<String> underTest = new CacheStore<>(100, Long.MAX_VALUE, null, EvictionPolicy.TINY_LFU, 1, null);
+		for (int i = 0; i < 10_000; i++) {
+			underTest.put(i, "v" + i);
+		}
+		assertEquals(100, underTest.size());
+
+		underTest.put("a", "A");
+		underTest.get("a");
+		assertEquals("A", underTest.remove("a"));
+		assertNull(underTest.get("a"));
+	}
+
+	@Test
+	public void testTinyLfuWeight() {
+		CacheStore<String> underTest = new CacheStore<>(1000, 100, String::length, EvictionPolicy.TINY_LFU, 1, null);
+		for (int i = 0; i < 100; i++) {
+			underTest.put(i, "0123456789");
+		}
+		assertTrue(underTest.weight() <= 100);
+		assertEquals(underTest.size() * 10, underTest.weight());
+	}
+
+	@Test
+	public void testTinyLfuKeepsHotKey() {
+		CacheStore<String> underTest = new CacheStore<>(100, Long.MAX_VALUE, null, EvictionPolicy.TINY_LFU, 1, null);
+		underTest.put("hot", "H");
+		for (int i = 0; i < 10; i++) {
+			underTest.get("hot");
+		}
+		// a scan of one-hit keys, three times the size of the cache
+		for (int i = 0; i < 300; i++) {
+			underTest.get(i);
+			underTest.put(i, "v");
+		}
+		assertNotNull(underTest.get("hot"));
+	}
+
+	@Test
+	public void testSketch() {
+		FrequencySketch underTest = new FrequencySketch(64);
+		assertEquals(0, underTest.frequency("a"));
+		for (int i = 0; i < 5; i++) {
+			underTest.increment("a");
+		}
+		assertEquals(5, underTest.frequency("a"));
+		for (int i = 0; i < 50; i++) {
+			underTest.increment("a");
+		}
+		// saturates
+		assertEquals(15, underTest.frequency("a"));
+
+		// enough other traffic and the old count ages
+		for (int i = 0; i < 1000; i++) {
+			underTest.increment("k" + i);
+		}
+		assertTrue(underTest.frequency("a") < 15);
+	}
+
+	private double hitRate(EvictionPolicy policy, LongSupplier trace, int requests) {
+		CacheStore<Long> store = new CacheStore<>(CACHE_SIZE, Long.MAX_VALUE, null, policy, 1, null);
+		int hits = 0;
+		for (int i = 0; i < requests; i++) {
+			Long key = trace.getAsLong();
+			if (store.get(key) != null) {
+				hits++;
+			}
+			else {
+				store.put(key, key);
+			}
+		}
+		return (double) hits / requests;
+	}
+
+	private static LongSupplier zipf(Random r, int n, double skew) {
+		double[] cdf = new double[n];
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			sum += 1.0 / Math.pow(i + 1, skew);
+			cdf[i] = sum;
+		}
+		final double total = sum;
+		return () -> {
+			int i = Arrays.binarySearch(cdf, r.nextDouble() * total);
+			return i >= 0 ? i : -i - 1;
+		};
+	}
+
+	private static LongSupplier scanning(LongSupplier base) {
+		long[] count = { 0 };
+		long[] scanKey = { 1_000_000 };
+		return () -> {
+			long c = count[0]++;
+			if (c % 10_000 < 2_000) {
+				return scanKey[0]++;
+			}
+			return base.getAsLong();
+		};
+	}
+}
@@ -0,0 +1,134 @@
+package net.rockscience.util.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import net.rockscience.util.cache.KeyedObjectCache.Cacheable;
+
+public class InvalidationBusTest {
+
+	@Test
+	public void testInvalidateReachesOtherNodes() {
+		LoopbackTransport transport = new LoopbackTransport();
+		AtomicInteger reads = new AtomicInteger();
+		List<KeyedObjectCache<String, Thing>> nodes = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			InvalidationBus bus = new InvalidationBus("node" + i, transport);
+			nodes.add(new KeyedObjectCache<String, Thing>(10, k -> {
+				reads.incrementAndGet();
+				return new Thing();
+			}).withInvalidationBus(bus, "things"));
+		}
+
+		for (KeyedObjectCache<String, Thing> node : nodes) {
+			node.getObject("a");
+			node.getObject("b");
+		}
+		assertEquals(6, reads.get());
+
+		nodes.get(0).invalidate("a");
+		for (KeyedObjectCache<String, Thing> node : nodes) {
+			node.getObject("a");
+			node.getObject("b");
+		}
+		// a was read again everywhere, b nowhere
+		assertEquals(9, reads.get());
+		assertEquals(1, transport.getPublishedCount());
+
+		nodes.get(1).invalidateAll();
+		for (KeyedObjectCache<String, Thing> node : nodes) {
+			assertEquals(0, node.getStats().getSize());
+		}
+	}
+
+	@Test
+	public void testIgnoresOwnMessagesAndOtherCaches() {
+		LoopbackTransport transport = new LoopbackTransport();
+		InvalidationBus a = new InvalidationBus("a", transport);
+		InvalidationBus b = new InvalidationBus("b", transport);
+		List<InvalidationMessage> toA = new ArrayList<>();
+		List<InvalidationMessage> toB = new ArrayList<>();
+		a.register("things", toA::add);
+		b.register("things", toB::add);
+		b.register("others", m -> toB.add(null));
+
+		a.invalidate("things", 42);
+		assertEquals(0, toA.size());
+		assertEquals(1, toB.size());
+		assertEquals("a", toB.get(0).sourceId());
+		assertEquals(List.of(42), toB.get(0).keys());
+
+		// closed buses stop listening
+		b.close();
+		a.invalidate("things", 43);
+		assertEquals(1, toB.size());
+	}
+
+	@Test
+	public void testBatchingCoalesces() {
+		LoopbackTransport transport = new LoopbackTransport();
+		InvalidationBus sender = new InvalidationBus("sender", transport).withBatching(60000, 100);
+		InvalidationBus receiver = new InvalidationBus("receiver", transport);
+		List<InvalidationMessage> received = new ArrayList<>();
+		receiver.register("things", received::add);
+		receiver.register("others", received::add);
+
+		sender.invalidate("things", "x");
+		sender.invalidate("things", "y");
+		sender.invalidate("things", "x");
+		sender.invalidate("others", "z");
+		sender.invalidateAll("others");
+		sender.invalidate("others", "w");
+		assertEquals(0, transport.getPublishedCount());
+
+		sender.flush();
+		// one message per cache, repeats sent once, everything covering its keys
+		assertEquals(2, transport.getPublishedCount());
+		InvalidationMessage others = received.get(0);
+		assertTrue(others.all());
+		assertEquals("others", others.cacheName());
+		InvalidationMessage things = received.get(1);
+		assertEquals(List.of("x", "y"), things.keys());
+
+		sender.flush();
+		assertEquals(2, transport.getPublishedCount());
+		sender.close();
+	}
+
+	@Test
+	public void testBatchSendsWhenFull() {
+		LoopbackTransport transport = new LoopbackTransport();
+		InvalidationBus sender = new InvalidationBus("sender", transport).withBatching(60000, 3);
+		sender.invalidate("things", 1);
+		sender.invalidate("things", 2);
+		assertEquals(0, transport.getPublishedCount());
+		sender.invalidate("things", 3);
+		assertEquals(1, transport.getPublishedCount());
+		sender.close();
+	}
+
+	@Test
+	public void testBatchSentOnInterval() throws InterruptedException {
+		LoopbackTransport transport = new LoopbackTransport();
+		InvalidationBus sender = new InvalidationBus("sender", transport).withBatching(10, 100);
+		sender.invalidate("things", 1);
+		for (int i = 0; i < 500 && transport.getPublishedCount() == 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, transport.getPublishedCount());
+		sender.close();
+	}
+
+	private static class Thing implements Cacheable {
+		@Override
+		public int getCacheSeconds() {
+			return 100;
+		}
+	}
+}
@@ -1,14 +1,43 @@
 package net.rockscience.util.cache;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
-
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import com.sun.management.ThreadMXBean;
+
 import net.rockscience.util.cache.KeyedObjectCache.Cacheable;
 import net.rockscience.util.cache.KeyedObjectCache.CacheableRepo;
 import net.rockscience.util.cache.KeyedObjectCache.HasCacheKey;
@@ -146,7 +175,672 @@ public class KeyedObjectCacheTest {
 		Mockito.verify(complexRepo, Mockito.times(2)).get(Mockito.any(ComplexKey.class));
 	}
 
+	@Test
+	public void testNullKey() {
+		Mockito.when(repo.get(null)).thenReturn(new Thing("nothing", 100000));
+		underTest.concurrent();
+
+		assertEquals("nothing", underTest.getObject(null).val);
+		assertEquals("nothing", underTest.getObject(null).val);
+		assertEquals("nothing", underTest.getObjectAsync(null).join().val);
+		assertEquals("nothing", underTest.getAll(Arrays.asList("x", null)).get(null).val);
+		Mockito.verify(repo, Mockito.times(1)).get(null);
+		assertEquals(3, underTest.getStats().getHitCount());
+
+		underTest.invalidate(null);
+		assertEquals("nothing", underTest.getObject(null).val);
+		Mockito.verify(repo, Mockito.times(2)).get(null);
+
+		// a cache key of null is the same
+		KeyedObjectCache<HasCacheKey<String>, Thing> nulls = new KeyedObjectCache<>(10, key -> new Thing("none", 100000));
+		HasCacheKey<String> k = () -> null;
+		assertSame(nulls.getObject(k), nulls.getObject(k));
+	}
+
+	@Test
+	public void testSingleFlightLoad() throws Exception {
+		final int threads = 8;
+		CountDownLatch release = new CountDownLatch(1);
+		Thing t = new Thing("e", 100000);
+
+		Mockito.when(repo.get("e")).thenAnswer(inv -> {
+			release.await(10, TimeUnit.SECONDS);
+			return t;
+		});
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Thing>> results = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				results.add(pool.submit(() -> underTest.getObject("e")));
+			}
+
+			// wait for everyone but the loader to pile up behind the in-flight load
+			long deadline = System.currentTimeMillis() + 10000;
+			while (underTest.getCoalescedLoadCount() < threads - 1 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+			release.countDown();
+
+			for (Future<Thing> f : results) {
+				assertSame(t, f.get(10, TimeUnit.SECONDS));
+			}
+		}
+		finally {
+			pool.shutdownNow();
+		}
+
+		// one trip to the repo, everyone else shared it
+		Mockito.verify(repo, Mockito.times(1)).get("e");
+		assertEquals(threads - 1, underTest.getCoalescedLoadCount());
+	}
+
+	@Test
+	public void testSingleFlightFailure() {
+		Mockito.when(repo.get("f")).thenThrow(new IllegalStateException("boom"))
+				.thenReturn(new Thing("f", 100000));
+
+		IllegalStateException ex = assertThrows(IllegalStateException.class, () -> underTest.getObject("f"));
+		assertEquals("boom", ex.getMessage());
+
+		// a failed load is not remembered, so the next caller tries again
+		assertNotNull(underTest.getObject("f"));
+		Mockito.verify(repo, Mockito.times(2)).get("f");
+		assertEquals(0, underTest.getCoalescedLoadCount());
+	}
+
+	@Test
+	public void testStaleWhileRevalidate() {
+		List<Runnable> refreshes = new ArrayList<>();
+		underTest.withStaleWhileRevalidate().withRefreshExecutor(refreshes::add);
+
+		// 0 cache seconds, so it's expired as soon as it is cached
+		Thing first = new Thing("g", 0);
+		Thing second = new Thing("g", 0);
+		Mockito.when(repo.get("g")).thenReturn(first, second);
+
+		// a plain miss still loads inline
+		assertSame(first, underTest.getObject("g"));
+		assertTrue(refreshes.isEmpty());
+
+		// expired: served stale and one refresh is queued no matter how many reads
+		assertSame(first, underTest.getObject("g"));
+		assertSame(first, underTest.getObject("g"));
+		assertEquals(1, refreshes.size());
+		Mockito.verify(repo, Mockito.times(1)).get("g");
+		// one entry expired, served stale twice
+		assertEquals(1, underTest.getStats().getExpirationCount());
+		assertEquals(2, underTest.getStats().getStaleServeCount());
+
+		refreshes.get(0).run();
+		Mockito.verify(repo, Mockito.times(2)).get("g");
+		assertSame(second, underTest.getObject("g"));
+	}
+
+	@Test
+	public void testStaleWhileRevalidateDropsDeleted() {
+		List<Runnable> refreshes = new ArrayList<>();
+		underTest.withStaleWhileRevalidate().withRefreshExecutor(refreshes::add);
+
+		Mockito.when(repo.get("h")).thenReturn(new Thing("h", 0), (Thing) null);
+
+		underTest.getObject("h");
+		underTest.getObject("h");
+		refreshes.get(0).run();
+
+		// the repo no longer has it, so the stale copy is gone and we read-thru again
+		assertNull(underTest.getObject("h"));
+		Mockito.verify(repo, Mockito.times(3)).get("h");
+	}
+
+	@Test
+	public void testRefreshAhead() {
+		List<Runnable> refreshes = new ArrayList<>();
+		underTest.withRefreshAhead(200).withRefreshExecutor(refreshes::add);
+
+		// fresh for 100 seconds, which is always inside the 200 second window
+		Thing first = new Thing("i", 100);
+		Thing second = new Thing("i", 100);
+		Mockito.when(repo.get("i")).thenReturn(first, second);
+
+		assertSame(first, underTest.getObject("i"));
+		assertSame(first, underTest.getObject("i"));
+		assertEquals(1, refreshes.size());
+
+		refreshes.get(0).run();
+		assertSame(second, underTest.getObject("i"));
+		Mockito.verify(repo, Mockito.times(2)).get("i");
+	}
+
+	@Test
+	public void testRefreshOnVirtualThreads() throws Exception {
+		underTest.withStaleWhileRevalidate();
+
+		CountDownLatch refreshed = new CountDownLatch(1);
+		Thing first = new Thing("j", 0);
+		Thing second = new Thing("j", 100000);
+		Mockito.when(repo.get("j")).thenReturn(first).thenAnswer(inv -> {
+			refreshed.countDown();
+			return second;
+		});
+
+		underTest.getObject("j");
+		assertSame(first, underTest.getObject("j"));
+		assertTrue(refreshed.await(10, TimeUnit.SECONDS));
+
+		// wait for the refresh to land in the cache
+		long deadline = System.currentTimeMillis() + 10000;
+		while (underTest.getObject("j") != second && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertSame(second, underTest.getObject("j"));
+	}
+
+	@Test
+	public void testGetAll() {
+		Thing a = new Thing("a", 100000);
+		Thing b = new Thing("b", 100000);
+		Thing c = new Thing("c", 100000);
+		Mockito.when(repo.get("a")).thenReturn(a);
+		Mockito.when(repo.getAll(List.of("b", "c", "x"))).thenReturn(Map.of("b", b, "c", c));
+
+		underTest = new KeyedObjectCache<String, Thing>(10, repo);
+		underTest.getObject("a");
+
+		Map<String, Thing> got = underTest.getAll(List.of("a", "b", "c", "x", "a"));
+		assertEquals(3, got.size());
+		assertSame(a, got.get("a"));
+		assertSame(b, got.get("b"));
+		assertSame(c, got.get("c"));
+
+		// the misses went to the repo in one batch, and are cached now
+		Mockito.verify(repo).getAll(List.of("b", "c", "x"));
+		assertSame(b, underTest.getObject("b"));
+		Mockito.verify(repo, Mockito.never()).get("b");
+		Mockito.verify(repo, Mockito.times(1)).get("a");
+	}
+
+	@Test
+	public void testGetAllDefaultRepo() {
+		List<String> reads = new ArrayList<>();
+		KeyedObjectCache<String, Thing> cache = new KeyedObjectCache<String, Thing>(10, k -> {
+			reads.add(k);
+			return "missing".equals(k) ? null : new Thing(k, 100000);
+		}).concurrent();
+
+		Map<String, Thing> got = cache.getAll(List.of("a", "b", "missing"));
+		assertEquals(2, got.size());
+		got = cache.getAll(List.of("a", "b", "missing"));
+		assertEquals(2, got.size());
+
+		// hits came from the cache, the missing one was looked up each time
+		assertEquals(List.of("a", "b", "missing", "missing"), reads);
+	}
+
+	@Test
+	public void testNegativeCaching() {
+		underTest.withNegativeCaching(100, 10);
+
+		assertNull(underTest.getObject("d"));
+		assertNull(underTest.getObject("d"));
+		assertNull(underTest.getObject("d"));
+
+		// only the first lookup reached the repo
+		Mockito.verify(repo, Mockito.times(1)).get("d");
+		assertEquals(2, underTest.getNegativeHitCount());
+		assertEquals(1, underTest.getNegativeCacheSize());
+
+		// and it doesn't get served to getAll either
+		assertTrue(underTest.getAll(List.of("d")).isEmpty());
+		Mockito.verify(repo, Mockito.never()).getAll(Mockito.anyCollection());
+	}
+
+	@Test
+	public void testNegativeCachingExpires() {
+		underTest.withNegativeCaching(0, 10);
+
+		underTest.getObject("d");
+		underTest.getObject("d");
+
+		Mockito.verify(repo, Mockito.times(2)).get("d");
+		assertEquals(0, underTest.getNegativeHitCount());
+	}
+
+	@Test
+	public void testNegativeCachingIsBounded() {
+		underTest.withNegativeCaching(100, 3);
+		for (int i = 0; i < 10; i++) {
+			underTest.getObject("missing" + i);
+		}
+		assertEquals(3, underTest.getNegativeCacheSize());
+
+		// they don't take room from real objects
+		Mockito.when(repo.get("b")).thenReturn(new Thing("b", 100000));
+		underTest.getObject("b");
+		underTest.getObject("missing20");
+		underTest.getObject("b");
+		Mockito.verify(repo, Mockito.times(1)).get("b");
+	}
+
+	@Test
+	public void testNegativeCachingSegmentsFollowTheCache() {
+		// the same two settings in either order give the same negative cache
+		KeyedObjectCache<String, Thing> before = new KeyedObjectCache<String, Thing>(100, repo)
+				.withNegativeCaching(100, 16)
+				.withConcurrencyLevel(16);
+		KeyedObjectCache<String, Thing> after = new KeyedObjectCache<String, Thing>(100, repo)
+				.withConcurrencyLevel(16)
+				.withNegativeCaching(100, 16);
+		for (int i = 0; i < 20; i++) {
+			before.getObject("missing" + i);
+			after.getObject("missing" + i);
+		}
+		assertEquals(after.getNegativeCacheSize(), before.getNegativeCacheSize());
+	}
+
+	@Test
+	public void testStats() {
+		Mockito.when(repo.get("a")).thenReturn(new Thing("a", 0));
+		Mockito.when(repo.get("b")).thenReturn(new Thing("b", 100000));
+		Mockito.when(repo.get("c")).thenReturn(new Thing("c", 100000));
+		Mockito.when(repo.get("x")).thenThrow(new IllegalStateException("boom"));
+
+		underTest.getObject("a");	// miss
+		underTest.getObject("a");	// expired, miss
+		underTest.getObject("b");	// miss
+		underTest.getObject("b");	// hit
+		underTest.getObject("c");	// miss, evicts a
+		assertThrows(IllegalStateException.class, () -> underTest.getObject("x"));
+
+		CacheStats stats = underTest.getStats();
+		assertEquals(1, stats.getHitCount());
+		assertEquals(5, stats.getMissCount());
+		assertEquals(1, stats.getExpirationCount());
+		assertEquals(1, stats.getEvictionCount());
+		assertEquals(5, stats.getLoadCount());
+		assertEquals(1, stats.getLoadFailureCount());
+		assertEquals(2, stats.getSize());
+		assertEquals(5, Arrays.stream(stats.getLoadTimeHistogram()).sum());
+		assertEquals(1.0 / 6, stats.getHitRate(), 0.0001);
+	}
+
+	@Test
+	public void testExpirySweep() {
+		underTest = new KeyedObjectCache<String, Thing>(10, repo).withExpirySweep(3600);
+		Mockito.when(repo.get("a")).thenReturn(new Thing("a", 0));
+		Mockito.when(repo.get("b")).thenReturn(new Thing("b", 100000));
+		Mockito.when(repo.get("c")).thenReturn(new Thing("c", -1));
+
+		underTest.getObject("a");
+		underTest.getObject("b");
+		underTest.getObject("c");
+		assertEquals(3, underTest.getStats().getSize());
+
+		// a is already expired, the others aren't due
+		underTest.cleanUp();
+		assertEquals(2, underTest.getStats().getSize());
+		assertEquals(1, underTest.getStats().getExpirationCount());
+
+		underTest.getObject("b");
+		underTest.getObject("c");
+		Mockito.verify(repo, Mockito.times(1)).get("b");
+		Mockito.verify(repo, Mockito.times(1)).get("c");
+	}
+
+	@Test
+	public void testExpirySweepKeepsScheduledEntries() {
+		AtomicLong now = new AtomicLong(System.currentTimeMillis());
+		underTest = new KeyedObjectCache<String, Thing>(10, repo).withExpirySweep(3600);
+		Mockito.when(repo.get("a")).thenReturn(new Thing("a", 10));
+		Mockito.when(repo.get("b")).thenReturn(new Thing("b", 10));
+		underTest.getObject("a");
+
+		// neither a second sweep nor a new clock loses what is already scheduled
+		underTest.withExpirySweep(60);
+		underTest.withClock(now::get);
+		underTest.getObject("b");
+		assertEquals(2, underTest.getStats().getSize());
+
+		now.addAndGet(20000);
+		underTest.cleanUp();
+		assertEquals(0, underTest.getStats().getSize());
+		assertEquals(2, underTest.getStats().getExpirationCount());
+	}
+
+	@Test
+	public void testMaximumWeight() {
+		// everything fits by count, but only 100 "bytes" of weight
+		underTest = new KeyedObjectCache<String, Thing>(10, repo).withMaximumWeight(100, t -> t.val.length());
+		Mockito.when(repo.get("a")).thenReturn(new Thing("a".repeat(40), 100000));
+		Mockito.when(repo.get("b")).thenReturn(new Thing("b".repeat(40), 100000));
+		Mockito.when(repo.get("c")).thenReturn(new Thing("c".repeat(40), 100000));
+		Mockito.when(repo.get("big")).thenReturn(new Thing("x".repeat(500), 100000));
+
+		underTest.getObject("a");
+		underTest.getObject("b");
+		assertEquals(80, underTest.getStats().getWeight());
+
+		// c pushes out a, the least recently used
+		underTest.getObject("c");
+		assertEquals(2, underTest.getStats().getSize());
+		assertEquals(80, underTest.getStats().getWeight());
+		assertEquals(1, underTest.getStats().getEvictionCount());
+
+		// too heavy to ever fit: returned but not cached
+		assertNotNull(underTest.getObject("big"));
+		assertTrue(underTest.getStats().getWeight() <= 100);
+		underTest.getObject("big");
+		Mockito.verify(repo, Mockito.times(2)).get("big");
+	}
+
+	@Test
+	public void testOffHeapTier() {
+		underTest = new KeyedObjectCache<String, Thing>(2, repo).withOffHeapTier(64 * 1024, new ThingCodec());
+		Mockito.when(repo.get("a")).thenReturn(new Thing("alpha", 100000));
+		Mockito.when(repo.get("b")).thenReturn(new Thing("beta", 100000));
+		Mockito.when(repo.get("c")).thenReturn(new Thing("gamma", 100000));
+
+		underTest.getObject("a");
+		underTest.getObject("b");
+		// pushes a off the heap and down to the off-heap tier
+		underTest.getObject("c");
+		assertEquals(1, underTest.getStats().getOffHeapSize());
+
+		// found off-heap, no trip to the repo
+		Thing a = underTest.getObject("a");
+		assertEquals("alpha", a.val);
+		assertEquals(100000, a.getCacheSeconds());
+		Mockito.verify(repo, Mockito.times(1)).get("a");
+		assertEquals(1, underTest.getStats().getOffHeapHitCount());
+
+		// and b went down to make room for it
+		assertEquals("beta", underTest.getAll(List.of("b")).get("b").val);
+		Mockito.verify(repo, Mockito.times(1)).get("b");
+		Mockito.verify(repo, Mockito.never()).getAll(Mockito.anyCollection());
+	}
+
+	@Test
+	public void testOffHeapEncodeOutsideLock() throws Exception {
+		// while an evicted entry is encoded, another thread must still get hits from the heap
+		ExecutorService other = Executors.newSingleThreadExecutor();
+		List<Boolean> readsDuringEncode = new ArrayList<>();
+		ThingCodec codec = new ThingCodec() {
+			@Override
+			public byte[] encode(Thing t) {
+				try {
+					readsDuringEncode.add(other.submit(() -> underTest.getObject("b")).get(5, TimeUnit.SECONDS) != null);
+				}
+				catch (Exception ex) {
+					readsDuringEncode.add(false);
+				}
+				return super.encode(t);
+			}
+		};
+		underTest = new KeyedObjectCache<String, Thing>(2, repo).withOffHeapTier(64 * 1024, codec);
+		Mockito.when(repo.get("a")).thenReturn(new Thing("alpha", 100000));
+		Mockito.when(repo.get("b")).thenReturn(new Thing("beta", 100000));
+		Mockito.when(repo.get("c")).thenReturn(new Thing("gamma", 100000));
+
+		try {
+			underTest.getObject("a");
+			underTest.getObject("b");
+			underTest.getObject("c");
+		}
+		finally {
+			other.shutdownNow();
+		}
+		assertEquals(List.of(true), readsDuringEncode);
+		assertEquals(1, underTest.getStats().getOffHeapSize());
+	}
+
+	@Test
+	public void testOffHeapInvalidatedWhileDecoding() {
+		AtomicInteger decodes = new AtomicInteger();
+		ThingCodec codec = new ThingCodec() {
+			@Override
+			public Thing decode(ByteBuffer bytes) {
+				if (decodes.incrementAndGet() == 1) {
+					underTest.invalidate("a");
+				}
+				return super.decode(bytes);
+			}
+		};
+		underTest = new KeyedObjectCache<String, Thing>(2, repo).withOffHeapTier(64 * 1024, codec);
+		Mockito.when(repo.get("a")).thenReturn(new Thing("alpha", 100000), new Thing("alpha2", 100000));
+		Mockito.when(repo.get("b")).thenReturn(new Thing("beta", 100000));
+		Mockito.when(repo.get("c")).thenReturn(new Thing("gamma", 100000));
+
+		underTest.getObject("a");
+		underTest.getObject("b");
+		underTest.getObject("c");
+		assertEquals(1, underTest.getStats().getOffHeapSize());
+
+		// the off-heap copy is dropped rather than put back over the invalidation
+		assertEquals("alpha2", underTest.getObject("a").val);
+		assertEquals("alpha2", underTest.getObject("a").val);
+		Mockito.verify(repo, Mockito.times(2)).get("a");
+		assertEquals(0, underTest.getStats().getOffHeapHitCount());
+	}
+
+	@Test
+	public void testSnapshotRoundTrip(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("cache.snapshot");
+		Mockito.when(repo.get("a")).thenReturn(new Thing("alpha", 100000));
+		Mockito.when(repo.get("b")).thenReturn(new Thing("beta", -1));
+		Mockito.when(repo.get("c")).thenReturn(new Thing("gamma", 0));
+		underTest = new KeyedObjectCache<String, Thing>(3, repo);
+		underTest.getObject("a");
+		underTest.getObject("b");
+		underTest.getObject("c");
+
+		// c is already expired so it's left out
+		assertEquals(2, underTest.saveSnapshot(file, new StringCodec(), new ThingCodec()));
+
+		KeyedObjectCache<String, Thing> restarted = new KeyedObjectCache<String, Thing>(3, repo);
+		assertEquals(2, restarted.loadSnapshot(file, new StringCodec(), new ThingCodec()));
+		assertEquals("alpha", restarted.getObject("a").val);
+		assertEquals("beta", restarted.getObject("b").val);
+		Mockito.verify(repo, Mockito.times(1)).get("a");
+		Mockito.verify(repo, Mockito.times(1)).get("b");
+	}
+
+	@Test
+	public void testSnapshotSkipsExpiredAndKeepsAge(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("cache.snapshot");
+		long now = System.currentTimeMillis();
+		try (CacheSnapshot.Writer w = new CacheSnapshot.Writer(file)) {
+			// saved a minute ago: a 30 second object has since expired, a 90 second one has
+			// half a minute left
+			w.add(now - 60000, bytes("old"), new ThingCodec().encode(new Thing("old", 30)));
+			w.add(now - 60000, bytes("young"), new ThingCodec().encode(new Thing("young", 90)));
+			w.commit();
+		}
+
+		assertEquals(1, underTest.loadSnapshot(file, new StringCodec(), new ThingCodec()));
+		Mockito.when(repo.get("old")).thenReturn(new Thing("old", 30));
+		underTest.getObject("old");
+		underTest.getObject("young");
+		Mockito.verify(repo, Mockito.times(1)).get("old");
+		Mockito.verify(repo, Mockito.never()).get("young");
+	}
+
+	@Test
+	public void testGetObjectAsync() throws Exception {
+		Mockito.when(repo.get("a")).thenReturn(new Thing("a", 100));
+
+		assertEquals("a", underTest.getObjectAsync("a").get(5, TimeUnit.SECONDS).val);
+		// now a hit, already complete
+		CompletableFuture<Thing> hit = underTest.getObjectAsync("a");
+		assertTrue(hit.isDone());
+		assertEquals("a", hit.get().val);
+		Mockito.verify(repo, Mockito.times(1)).get("a");
+
+		// the repo's failure comes back through the future
+		Mockito.when(repo.get("bad")).thenThrow(new IllegalStateException("down"));
+		ExecutionException ex = assertThrows(ExecutionException.class,
+				() -> underTest.getObjectAsync("bad").get(5, TimeUnit.SECONDS));
+		assertTrue(ex.getCause() instanceof IllegalStateException);
+	}
+
+	@Test
+	public void testAsyncRepoSharesInFlightLoad() throws Exception {
+		AtomicInteger reads = new AtomicInteger();
+		CompletableFuture<Thing> pending = new CompletableFuture<>();
+		KeyedObjectCache<String, Thing> cache = KeyedObjectCache.ofAsyncRepo(10, k -> {
+			reads.incrementAndGet();
+			return pending;
+		});
+
+		CompletableFuture<Thing> first = cache.getObjectAsync("a");
+		CompletableFuture<Thing> second = cache.getObjectAsync("a");
+		assertFalse(first.isDone());
+		// one caller giving up doesn't cancel the load for the other
+		second.cancel(false);
+
+		pending.complete(new Thing("a", 100));
+		assertEquals("a", first.get(5, TimeUnit.SECONDS).val);
+		assertEquals(1, reads.get());
+		assertEquals(1, cache.getStats().getCoalescedLoadCount());
+
+		// cached now, including for the blocking methods
+		assertEquals("a", cache.getObject("a").val);
+		assertEquals(1, reads.get());
+	}
+
+	@Test
+	public void testAsyncRepoBlockingPaths() {
+		KeyedObjectCache<String, Thing> cache = KeyedObjectCache.ofAsyncRepo(10,
+				k -> k.equals("missing") ? CompletableFuture.completedFuture(null)
+						: CompletableFuture.supplyAsync(() -> new Thing(k, 100)));
+
+		assertEquals("a", cache.getObject("a").val);
+		assertNull(cache.getObject("missing"));
+		Map<String, Thing> all = cache.getAll(List.of("a", "b", "c", "missing"));
+		assertEquals(3, all.size());
+		assertEquals("c", all.get("c").val);
+	}
+
+	@Test
+	public void testPluggableClock() {
+		AtomicLong now = new AtomicLong(1000000);
+		underTest = new KeyedObjectCache<String, Thing>(2, repo).withClock(now::get);
+		Mockito.when(repo.get("a")).thenReturn(new Thing("a", 10));
+
+		underTest.getObject("a");
+		now.addAndGet(9999);
+		underTest.getObject("a");
+		Mockito.verify(repo, Mockito.times(1)).get("a");
+
+		now.addAndGet(1);
+		underTest.getObject("a");
+		Mockito.verify(repo, Mockito.times(2)).get("a");
+	}
+
+	@Test
+	public void testCoarseClock() throws InterruptedException {
+		CacheClock coarse = CacheClock.coarse();
+		long start = coarse.millis();
+		assertTrue(Math.abs(start - System.currentTimeMillis()) < 1000);
+		Thread.sleep(50);
+		assertTrue(coarse.millis() > start);
+	}
+
+	/**
+	 * A hit should allocate nothing, with either eviction policy and either clock
+	 */
+	@Test
+	public void testHitDoesNotAllocate() {
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		Assumptions.assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		String[] keys = { "a", "b", "c" };
+		for (String k : keys) {
+			Mockito.when(repo.get(k)).thenReturn(new Thing(k, 1000));
+		}
+		List<KeyedObjectCache<String, Thing>> caches = List.of(
+				new KeyedObjectCache<String, Thing>(10, repo),
+				new KeyedObjectCache<String, Thing>(10, repo).concurrent().withClock(CacheClock.coarse()),
+				new KeyedObjectCache<String, Thing>(10, repo).withEvictionPolicy(EvictionPolicy.TINY_LFU));
+
+		final int hits = 200000;
+		for (KeyedObjectCache<String, Thing> cache : caches) {
+			// warm up, which also loads the keys
+			for (int i = 0; i < hits; i++) {
+				cache.getObject(keys[i % keys.length]);
+			}
+			long tid = Thread.currentThread().threadId();
+			long before = threads.getThreadAllocatedBytes(tid);
+			for (int i = 0; i < hits; i++) {
+				cache.getObject(keys[i % keys.length]);
+			}
+			long allocated = threads.getThreadAllocatedBytes(tid) - before;
+			assertEquals(0, allocated / hits, "bytes allocated per hit");
+		}
+	}
+
+	@Test
+	public void testInvalidate() {
+		Mockito.when(repo.get("a")).thenReturn(new Thing("a", 100));
+		Mockito.when(repo.get("b")).thenReturn(new Thing("b", 100));
+		underTest.getObject("a");
+		underTest.getObject("b");
+
+		underTest.invalidate("a");
+		underTest.getObject("a");
+		underTest.getObject("b");
+		Mockito.verify(repo, Mockito.times(2)).get("a");
+		Mockito.verify(repo, Mockito.times(1)).get("b");
+
+		underTest.invalidateAll();
+		assertEquals(0, underTest.getStats().getSize());
+		underTest.getObject("b");
+		Mockito.verify(repo, Mockito.times(2)).get("b");
+	}
+
+	@Test
+	public void testInvalidatedWhileLoadingIsNotCached() {
+		// the object changes while it is being read
+		Mockito.when(repo.get("a")).thenAnswer(inv -> {
+			underTest.invalidate("a");
+			return new Thing("old", 100);
+		}).thenReturn(new Thing("new", 100));
+
+		assertEquals("old", underTest.getObject("a").val);
+		assertEquals("new", underTest.getObject("a").val);
+		assertEquals("new", underTest.getObject("a").val);
+		Mockito.verify(repo, Mockito.times(2)).get("a");
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static class StringCodec implements CacheCodec<String> {
+		@Override
+		public byte[] encode(String s) {
+			return bytes(s);
+		}
+
+		@Override
+		public String decode(ByteBuffer bytes) {
+			return StandardCharsets.UTF_8.decode(bytes).toString();
+		}
+	}
 
+	private static class ThingCodec implements CacheCodec<Thing> {
+		@Override
+		public byte[] encode(Thing t) {
+			byte[] val = t.val.getBytes(StandardCharsets.UTF_8);
+			return ByteBuffer.allocate(4 + val.length).putInt(t.cs).put(val).array();
+		}
+
+		@Override
+		public Thing decode(ByteBuffer bytes) {
+			int cs = bytes.getInt();
+			return new Thing(StandardCharsets.UTF_8.decode(bytes).toString(), cs);
+		}
+	}
 
 		private static class Thing implements Cacheable {
 		public Thing(String v, int s) {
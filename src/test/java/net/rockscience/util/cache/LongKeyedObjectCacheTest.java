@@ -0,0 +1,131 @@
+package net.rockscience.util.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.sun.management.ThreadMXBean;
+
+import net.rockscience.util.cache.KeyedObjectCache.Cacheable;
+import net.rockscience.util.cache.LongKeyedObjectCache.LongCacheableRepo;
+
+@ExtendWith(MockitoExtension.class)
+public class LongKeyedObjectCacheTest {
+
+	private final AtomicLong now = new AtomicLong(1000000);
+	private LongKeyedObjectCache<Thing> underTest;
+
+	@Mock
+	LongCacheableRepo<Thing> repo;
+
+	@BeforeEach
+	public void setUp() {
+		underTest = new LongKeyedObjectCache<Thing>(2, repo).withClock(now::get);
+	}
+
+	@Test
+	public void testCacheTime() {
+		Mockito.when(repo.get(7)).thenReturn(new Thing(7, 10));
+
+		underTest.getObject(7);
+		now.addAndGet(9999);
+		underTest.getObject(7);
+		Mockito.verify(repo, Mockito.times(1)).get(7);
+
+		now.addAndGet(1);
+		underTest.getObject(7);
+		Mockito.verify(repo, Mockito.times(2)).get(7);
+		assertEquals(1, underTest.getStats().getHitCount());
+		assertEquals(1, underTest.getStats().getExpirationCount());
+	}
+
+	@Test
+	public void testForeverAndNever() {
+		Mockito.when(repo.get(1)).thenReturn(new Thing(1, -1));
+		Mockito.when(repo.get(2)).thenReturn(new Thing(2, 0));
+
+		underTest.getObject(1);
+		underTest.getObject(2);
+		now.addAndGet(Integer.MAX_VALUE);
+		underTest.getObject(1);
+		underTest.getObject(2);
+
+		Mockito.verify(repo, Mockito.times(1)).get(1);
+		Mockito.verify(repo, Mockito.times(2)).get(2);
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		Mockito.when(repo.get(Mockito.anyLong())).thenAnswer(inv -> new Thing(inv.getArgument(0), 100));
+
+		underTest.getObject(1);
+		underTest.getObject(2);
+		underTest.getObject(1);
+		// pushes out 2, the least recently used
+		underTest.getObject(3);
+		underTest.getObject(1);
+		underTest.getObject(2);
+
+		Mockito.verify(repo, Mockito.times(1)).get(1);
+		Mockito.verify(repo, Mockito.times(2)).get(2);
+		assertEquals(2, underTest.getStats().getEvictionCount());
+		assertEquals(2, underTest.getStats().getSize());
+	}
+
+	@Test
+	public void testNullDropsStaleCopy() {
+		Mockito.when(repo.get(5)).thenReturn(new Thing(5, 1), (Thing) null);
+
+		assertEquals(5, underTest.getObject(5).id);
+		now.addAndGet(1000);
+		assertNull(underTest.getObject(5));
+		assertEquals(0, underTest.getStats().getSize());
+	}
+
+	@Test
+	public void testHitDoesNotAllocate() {
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		Assumptions.assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		underTest = new LongKeyedObjectCache<Thing>(100, repo);
+		Mockito.when(repo.get(Mockito.anyLong())).thenAnswer(inv -> new Thing(inv.getArgument(0), 1000));
+
+		final int hits = 200000;
+		for (int i = 0; i < hits; i++) {
+			underTest.getObject(i % 64);
+		}
+		long tid = Thread.currentThread().threadId();
+		long before = threads.getThreadAllocatedBytes(tid);
+		for (int i = 0; i < hits; i++) {
+			underTest.getObject(i % 64);
+		}
+		long allocated = threads.getThreadAllocatedBytes(tid) - before;
+		assertEquals(0, allocated / hits, "bytes allocated per hit");
+	}
+
+	private static class Thing implements Cacheable {
+		private final long id;
+		private final int cs;
+
+		Thing(long id, int cs) {
+			this.id = id;
+			this.cs = cs;
+		}
+
+		@Override
+		public int getCacheSeconds() {
+			return cs;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package net.rockscience.util.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class LongLruTableTest {
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		LongLruTable<String> underTest = new LongLruTable<>(3);
+		underTest.put(1, "a", 0);
+		underTest.put(2, "b", 0);
+		underTest.put(3, "c", 0);
+
+		underTest.touch(underTest.find(1));
+		assertTrue(underTest.put(4, "d", 0));
+
+		assertEquals(LongLruTable.NONE, underTest.find(2));
+		assertEquals("a", underTest.value(underTest.find(1)));
+		assertEquals(3, underTest.size());
+	}
+
+	@Test
+	public void testReplaceDoesNotEvict() {
+		LongLruTable<String> underTest = new LongLruTable<>(2);
+		underTest.put(1, "a", 0);
+		underTest.put(2, "b", 0);
+		assertFalse(underTest.put(1, "A", 5));
+		assertEquals("A", underTest.value(underTest.find(1)));
+		assertEquals(5, underTest.deadline(underTest.find(1)));
+		assertEquals(2, underTest.size());
+	}
+
+	/**
+	 * Random puts, gets and removes against an access-ordered LinkedHashMap doing the same,
+	 * with keys crowded into a small range so probe runs collide and deletes shift entries back
+	 */
+	@Test
+	public void testMatchesLinkedHashMap() {
+		final int capacity = 50;
+		LongLruTable<Long> underTest = new LongLruTable<>(capacity);
+		Map<Long, Long> expected = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+				return size() > capacity;
+			}
+		};
+
+		Random r = new Random(42);
+		for (int i = 0; i < 200000; i++) {
+			long key = r.nextInt(120) * 1024L;
+			switch (r.nextInt(3)) {
+			case 0:
+				underTest.put(key, (long) i, 0);
+				expected.put(key, (long) i);
+				break;
+			case 1:
+				int n = underTest.find(key);
+				Long e = expected.get(key);
+				if (e == null) {
+					assertEquals(LongLruTable.NONE, n);
+				}
+				else {
+					assertEquals(e, underTest.value(n));
+					underTest.touch(n);
+				}
+				break;
+			default:
+				assertEquals(expected.remove(key) != null, underTest.remove(key));
+			}
+			assertEquals(expected.size(), underTest.size());
+		}
+
+		underTest.clear();
+		assertEquals(0, underTest.size());
+		assertEquals(LongLruTable.NONE, underTest.find(0));
+	}
+}
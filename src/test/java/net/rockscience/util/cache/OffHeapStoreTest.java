@@ -0,0 +1,99 @@
+package net.rockscience.util.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class OffHeapStoreTest {
+
+	private static final long NEVER = Long.MAX_VALUE;
+
+	@Test
+	public void testPutGet() {
+		OffHeapStore underTest = new OffHeapStore(1024);
+		underTest.put("a", new byte[] { 1, 2, 3 }, 100, NEVER);
+
+		OffHeapStore.Found f = underTest.get("a", 0);
+		assertArrayEquals(new byte[] { 1, 2, 3 }, f.payload());
+		assertEquals(100, f.lastUpdateMs());
+		assertNull(underTest.get("b", 0));
+	}
+
+	@Test
+	public void testReplaceAndRemove() {
+		OffHeapStore underTest = new OffHeapStore(1024);
+		underTest.put("a", new byte[] { 1 }, 0, NEVER);
+		underTest.put("a", new byte[] { 2 }, 0, NEVER);
+		assertArrayEquals(new byte[] { 2 }, underTest.get("a", 0).payload());
+		assertEquals(1, underTest.size());
+
+		underTest.remove("a");
+		assertNull(underTest.get("a", 0));
+	}
+
+	@Test
+	public void testExpired() {
+		OffHeapStore underTest = new OffHeapStore(1024);
+		underTest.put("a", new byte[] { 1 }, 0, 500);
+		assertNotNull(underTest.get("a", 499));
+		assertNull(underTest.get("a", 500));
+		assertEquals(0, underTest.size());
+	}
+
+	@Test
+	public void testWrapOverwritesOldest() {
+		// room for 4 records of 100 byte payloads (120 bytes with header)
+		OffHeapStore underTest = new OffHeapStore(500);
+		for (int i = 0; i < 4; i++) {
+			underTest.put(i, filled(100, i), 0, NEVER);
+		}
+		assertEquals(4, underTest.size());
+
+		// the fifth wraps round and overwrites the first
+		underTest.put(4, filled(100, 4), 0, NEVER);
+		assertNull(underTest.get(0, 0));
+		for (int i = 1; i < 5; i++) {
+			assertArrayEquals(filled(100, i), underTest.get(i, 0).payload());
+		}
+
+		// keep going round a few times and the newest four always survive intact
+		for (int i = 5; i < 50; i++) {
+			underTest.put(i, filled(100, i), 0, NEVER);
+		}
+		assertEquals(4, underTest.size());
+		for (int i = 46; i < 50; i++) {
+			assertArrayEquals(filled(100, i), underTest.get(i, 0).payload());
+		}
+	}
+
+	@Test
+	public void testTooBig() {
+		OffHeapStore underTest = new OffHeapStore(100);
+		underTest.put("a", new byte[200], 0, NEVER);
+		assertEquals(0, underTest.size());
+	}
+
+	@Test
+	public void testMappedFile(@TempDir Path dir) throws Exception {
+		Path file = dir.resolve("tier.dat");
+		OffHeapStore underTest = new OffHeapStore(file, 4096);
+		underTest.put("a", filled(1000, 7), 0, NEVER);
+
+		assertArrayEquals(filled(1000, 7), underTest.get("a", 0).payload());
+		assertEquals(4096, Files.size(file));
+	}
+
+	private static byte[] filled(int n, int v) {
+		byte[] b = new byte[n];
+		Arrays.fill(b, (byte) v);
+		return b;
+	}
+}
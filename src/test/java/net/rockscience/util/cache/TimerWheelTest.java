@@ -0,0 +1,98 @@
+package net.rockscience.util.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class TimerWheelTest {
+
+	private static final long START = 1_700_000_000_000L;
+
+	@Test
+	public void testExpiresAtDeadline() {
+		TimerWheel<TestNode> underTest = new TimerWheel<>(START);
+		TestNode soon = new TestNode(START + 500);
+		TestNode later = new TestNode(START + 5_000);
+		underTest.schedule(soon);
+		underTest.schedule(later);
+
+		assertTrue(underTest.advance(START + 100).isEmpty());
+		assertEquals(List.of(soon), underTest.advance(START + 600));
+		assertFalse(soon.isScheduled());
+
+		assertTrue(underTest.advance(START + 4_999).isEmpty());
+		assertEquals(List.of(later), underTest.advance(START + 5_000));
+	}
+
+	@Test
+	public void testAlreadyDue() {
+		TimerWheel<TestNode> underTest = new TimerWheel<>(START);
+		TestNode past = new TestNode(START - 10_000);
+		underTest.schedule(past);
+
+		// picked up on the very next advance, not a full rotation later
+		assertEquals(List.of(past), underTest.advance(START));
+	}
+
+	@Test
+	public void testDeschedule() {
+		TimerWheel<TestNode> underTest = new TimerWheel<>(START);
+		TestNode n = new TestNode(START + 1_000);
+		underTest.schedule(n);
+		underTest.deschedule(n);
+		assertFalse(n.isScheduled());
+		assertTrue(underTest.advance(START + 10_000).isEmpty());
+	}
+
+	@Test
+	public void testCascadesThroughLevels() {
+		TimerWheel<TestNode> underTest = new TimerWheel<>(START);
+		Random r = new Random(42);
+		List<TestNode> nodes = new ArrayList<>();
+
+		// deadlines from a second up to ~10 days out, so they land on every level below the top
+		for (int i = 0; i < 5_000; i++) {
+			TestNode n = new TestNode(START + 1 + (long) (r.nextDouble() * 10 * 24 * 3600 * 1000L));
+			nodes.add(n);
+			underTest.schedule(n);
+		}
+
+		// step forward in uneven jumps, checking nothing comes out early or is lost
+		Set<TestNode> expired = new HashSet<>();
+		long now = START;
+		while (expired.size() < nodes.size()) {
+			now += 1 + r.nextInt(2 * 3600 * 1000);
+			for (TestNode n : underTest.advance(now)) {
+				assertTrue(n.deadline <= now);
+				assertTrue(expired.add(n));
+			}
+			for (TestNode n : nodes) {
+				if (n.deadline <= now - 1024 * 2) {
+					// may be up to a level 0 bucket late, but no more
+					assertTrue(expired.contains(n));
+				}
+			}
+		}
+	}
+
+	private static class TestNode extends TimerWheel.Node {
+		private final long deadline;
+
+		TestNode(long deadline) {
+			this.deadline = deadline;
+		}
+
+		@Override
+		long getDeadlineMs() {
+			return deadline;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package net.rockscience.util.image;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+public class ByteArrayImageOutputStreamTest {
+
+	@Test
+	public void testGrowsFromRecycledArray() throws IOException {
+		byte[] recycled = new byte[4];
+		Arrays.fill(recycled, (byte) 9);
+		ByteArrayImageOutputStream os = new ByteArrayImageOutputStream(recycled);
+
+		os.write(new byte[] { 1, 2, 3 });
+		os.write(4);
+		os.write(5);
+		assertEquals(5, os.size());
+		assertArrayEquals(new byte[] { 1, 2, 3, 4, 5 }, Arrays.copyOf(os.buffer(), os.size()));
+	}
+
+	@Test
+	public void testSeekAndPatch() throws IOException {
+		byte[] recycled = new byte[16];
+		Arrays.fill(recycled, (byte) 9);
+		ByteArrayImageOutputStream os = new ByteArrayImageOutputStream(recycled);
+
+		// encoders write a length placeholder then go back and fill it in
+		os.writeInt(0);
+		os.write(new byte[] { 1, 2 });
+		os.seek(0);
+		os.writeInt(2);
+		assertEquals(6, os.size());
+		assertArrayEquals(new byte[] { 0, 0, 0, 2, 1, 2 }, Arrays.copyOf(os.buffer(), os.size()));
+
+		// writing past the end leaves zeros, not old bytes, in the gap
+		os.seek(8);
+		os.write(7);
+		assertArrayEquals(new byte[] { 0, 0, 0, 2, 1, 2, 0, 0, 7 }, Arrays.copyOf(os.buffer(), os.size()));
+
+		os.seek(4);
+		assertEquals(1, os.read());
+		byte[] b = new byte[10];
+		assertEquals(4, os.read(b, 0, 10));
+		assertEquals(-1, os.read());
+	}
+
+	@Test
+	public void testBits() throws IOException {
+		ByteArrayImageOutputStream os = new ByteArrayImageOutputStream(new byte[0]);
+		os.writeBits(0b101, 3);
+		os.write(0xff);
+		assertArrayEquals(new byte[] { (byte) 0b10100000, (byte) 0xff }, Arrays.copyOf(os.buffer(), os.size()));
+	}
+}
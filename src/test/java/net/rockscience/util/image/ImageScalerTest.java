@@ -0,0 +1,167 @@
+package net.rockscience.util.image;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.function.IntBinaryOperator;
+
+import org.junit.jupiter.api.Test;
+
+public class ImageScalerTest {
+
+	@Test
+	public void testSizeAndType() {
+		BufferedImage opaque = ImageUtilTest.image(1000, 500);
+		BufferedImage translucent = new BufferedImage(1000, 500, BufferedImage.TYPE_INT_ARGB);
+		for (ScalingMethod method : ScalingMethod.values()) {
+			BufferedImage bi = ImageUtil.scaleImageToMaxTargetWidth(opaque, 333, method);
+			assertEquals(333, bi.getWidth(), method.name());
+			assertEquals(166, bi.getHeight(), method.name());
+			assertEquals(BufferedImage.TYPE_INT_RGB, bi.getType(), method.name());
+
+			BufferedImage ta = ImageUtil.scaleImageToMaxTargetWidth(translucent, 333, method);
+			assertEquals(method == ScalingMethod.DEFAULT ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB,
+					ta.getType(), method.name());
+		}
+	}
+
+	@Test
+	public void testWeightsAreNormalised() {
+		for (ImageScaler.Kernel kernel : ImageScaler.Kernel.values()) {
+			for (int[] sizes : new int[][] { { 4032, 300 }, { 1000, 999 }, { 7, 3 }, { 100, 1 } }) {
+				ImageScaler.Weights w = new ImageScaler.Weights(sizes[0], sizes[1], kernel);
+				for (int t = 0; t < sizes[1]; t++) {
+					float total = 0;
+					for (int i = 0; i < w.count[t]; i++) {
+						total += w.weights[t * w.stride + i];
+					}
+					assertEquals(1.0, total, 1e-4, kernel + " " + sizes[0] + "->" + sizes[1]);
+					assertTrue(w.start[t] >= 0 && w.start[t] + w.count[t] <= sizes[0]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testFineDetailDoesNotAlias() {
+		// one pixel black and white stripes should shrink to an even grey
+		BufferedImage stripes = render(1200, 600, BufferedImage.TYPE_INT_RGB, (x, y) -> x % 2 == 0 ? 0 : 255);
+		BufferedImage grey = render(100, 50, BufferedImage.TYPE_INT_RGB, (x, y) -> 128);
+
+		double box = psnr(grey, ImageUtil.scaleImageToMaxTargetWidth(stripes, 100, ScalingMethod.BOX));
+		double lanczos = psnr(grey, ImageUtil.scaleImageToMaxTargetWidth(stripes, 100, ScalingMethod.LANCZOS3));
+		assertTrue(box > 40, "box " + box);
+		assertTrue(lanczos > 40, "lanczos " + lanczos);
+	}
+
+	@Test
+	public void testSmoothImageQuality() {
+		// a smooth pattern shrunk should match the same pattern drawn at the small size
+		IntBinaryOperator big = (x, y) -> wave(x, y, 2000, 1000);
+		IntBinaryOperator small = (x, y) -> wave(x * 10 + 5, y * 10 + 5, 2000, 1000);
+		BufferedImage source = render(2000, 1000, BufferedImage.TYPE_3BYTE_BGR, big);
+		BufferedImage expected = render(200, 100, BufferedImage.TYPE_INT_RGB, small);
+
+		for (ScalingMethod method : ScalingMethod.values()) {
+			double psnr = psnr(expected, ImageUtil.scaleImageToMaxTargetWidth(source, 200, method));
+			assertTrue(psnr > (method == ScalingMethod.DEFAULT ? 25 : 35), method + " " + psnr);
+		}
+	}
+
+	@Test
+	public void testRasterLayoutsAgree() {
+		IntBinaryOperator pattern = (x, y) -> (x * 7 + y * 13) % 256;
+		BufferedImage ints = render(640, 480, BufferedImage.TYPE_INT_RGB, pattern);
+		BufferedImage bytes = render(640, 480, BufferedImage.TYPE_3BYTE_BGR, pattern);
+		BufferedImage generic = render(640, 480, BufferedImage.TYPE_USHORT_565_RGB, (x, y) -> 0);
+		generic.createGraphics().drawImage(ints, 0, 0, null);
+
+		int[] expected = pixels(ImageUtil.scaleImageToMaxTargetWidth(ints, 100, ScalingMethod.LANCZOS3));
+		assertArrayEquals(expected, pixels(ImageUtil.scaleImageToMaxTargetWidth(bytes, 100, ScalingMethod.LANCZOS3)));
+
+		// a sub image shares its parent's array at an offset
+		BufferedImage parent = render(800, 600, BufferedImage.TYPE_INT_RGB,
+				(x, y) -> pattern.applyAsInt(x - 100, y - 50));
+		assertArrayEquals(expected, pixels(ImageUtil.scaleImageToMaxTargetWidth(
+				parent.getSubimage(100, 50, 640, 480), 100, ScalingMethod.LANCZOS3)));
+		BufferedImage byteParent = render(800, 600, BufferedImage.TYPE_3BYTE_BGR,
+				(x, y) -> pattern.applyAsInt(x - 100, y - 50));
+		assertArrayEquals(expected, pixels(ImageUtil.scaleImageToMaxTargetWidth(
+				byteParent.getSubimage(100, 50, 640, 480), 100, ScalingMethod.LANCZOS3)));
+
+		// 565 loses low bits, so just check the generic path lands close
+		assertTrue(psnr(ImageUtil.scaleImageToMaxTargetWidth(ints, 100, ScalingMethod.LANCZOS3),
+				ImageUtil.scaleImageToMaxTargetWidth(generic, 100, ScalingMethod.LANCZOS3)) > 30);
+	}
+
+	@Test
+	public void testTransparentPixelsDontBleed() {
+		// transparent green beside opaque red: no green may show in the result
+		BufferedImage bi = new BufferedImage(400, 100, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < 100; y++) {
+			for (int x = 0; x < 400; x++) {
+				bi.setRGB(x, y, x < 200 ? 0x0000ff00 : 0xffff0000);
+			}
+		}
+		for (ScalingMethod method : new ScalingMethod[] { ScalingMethod.BOX, ScalingMethod.LANCZOS3 }) {
+			BufferedImage scaled = ImageUtil.scaleImageToMaxTargetWidth(bi, 30, method);
+			for (int x = 0; x < 30; x++) {
+				int p = scaled.getRGB(x, 5);
+				if ((p >>> 24) > 0) {
+					assertEquals(0, (p >> 8) & 0xff, method + " x " + x + " " + Integer.toHexString(p));
+					assertEquals(0xff, (p >> 16) & 0xff, method + " x " + x + " " + Integer.toHexString(p));
+				}
+			}
+			assertEquals(0xff, scaled.getRGB(29, 5) >>> 24);
+			assertEquals(0, scaled.getRGB(0, 5) >>> 24);
+		}
+	}
+
+	private static int wave(int x, int y, int w, int h) {
+		return (int) Math.round(128 + 100 * Math.sin(2 * Math.PI * 3 * x / w) * Math.cos(2 * Math.PI * 2 * y / h));
+	}
+
+	/**
+	 * A grey image drawn from a function of x and y
+	 */
+	static BufferedImage render(int w, int h, int type, IntBinaryOperator grey) {
+		BufferedImage bi = new BufferedImage(w, h, type);
+		Graphics2D g = bi.createGraphics();
+		g.dispose();
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				int v = grey.applyAsInt(x, y) & 0xff;
+				bi.setRGB(x, y, 0xff000000 | v << 16 | v << 8 | v);
+			}
+		}
+		return bi;
+	}
+
+	/**
+	 * Peak signal to noise ratio of an image against a reference, in dB over the RGB channels
+	 */
+	static double psnr(BufferedImage expected, BufferedImage actual) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		double sum = 0;
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				int e = expected.getRGB(x, y);
+				int a = actual.getRGB(x, y);
+				for (int shift = 0; shift < 24; shift += 8) {
+					int d = ((e >> shift) & 0xff) - ((a >> shift) & 0xff);
+					sum += d * d;
+				}
+			}
+		}
+		double mse = sum / (expected.getWidth() * expected.getHeight() * 3.0);
+		return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255.0 * 255.0 / mse);
+	}
+
+	private static int[] pixels(BufferedImage bi) {
+		return bi.getRGB(0, 0, bi.getWidth(), bi.getHeight(), null, 0, bi.getWidth());
+	}
+}
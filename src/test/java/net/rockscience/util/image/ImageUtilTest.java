@@ -0,0 +1,298 @@
+package net.rockscience.util.image;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ImageUtilTest {
+
+	@Test
+	public void testDecodeToMaxWidth() throws IOException {
+		byte[] jpeg = encode(image(2000, 1000), "jpg");
+
+		BufferedImage bi = ImageUtil.bufferedImageFromStream(new ByteArrayInputStream(jpeg), 300);
+		assertEquals(300, bi.getWidth());
+		assertEquals(150, bi.getHeight());
+	}
+
+	@Test
+	public void testDecodeSmallerThanTarget() throws IOException {
+		byte[] png = encode(image(200, 100), "png");
+
+		BufferedImage bi = ImageUtil.bufferedImageFromStream(new ByteArrayInputStream(png), 300);
+		assertEquals(200, bi.getWidth());
+		assertEquals(100, bi.getHeight());
+	}
+
+	@Test
+	public void testDecodeRegion() throws IOException {
+		// left half red, right half blue
+		BufferedImage source = image(1000, 500);
+		byte[] png = encode(source, "png");
+
+		BufferedImage bi = ImageUtil.bufferedImageFromStream(new ByteArrayInputStream(png), 100,
+				new Rectangle(500, 0, 500, 500));
+		assertEquals(100, bi.getWidth());
+		assertEquals(100, bi.getHeight());
+		assertEquals(Color.BLUE.getRGB(), bi.getRGB(0, 0));
+		assertEquals(Color.BLUE.getRGB(), bi.getRGB(99, 99));
+	}
+
+	@Test
+	public void testDecodeRegionClipped() throws IOException {
+		byte[] png = encode(image(1000, 500), "png");
+
+		BufferedImage bi = ImageUtil.bufferedImageFromStream(new ByteArrayInputStream(png), 1000,
+				new Rectangle(900, 400, 500, 500));
+		assertEquals(100, bi.getWidth());
+		assertEquals(100, bi.getHeight());
+
+		assertThrows(IllegalArgumentException.class, () -> ImageUtil.bufferedImageFromStream(
+				new ByteArrayInputStream(png), 100, new Rectangle(2000, 0, 10, 10)));
+	}
+
+	@Test
+	public void testDecodeNotAnImage() throws IOException {
+		assertNull(ImageUtil.bufferedImageFromStream(new ByteArrayInputStream(new byte[] {1, 2, 3}), 100));
+	}
+
+	@Test
+	public void testSubsampling() {
+		assertEquals(1, ImageUtil.subsampling(100, 300));
+		assertEquals(1, ImageUtil.subsampling(599, 300));
+		assertEquals(2, ImageUtil.subsampling(600, 300));
+		assertEquals(13, ImageUtil.subsampling(4000, 300));
+	}
+
+	@Test
+	public void testScaleLeavesSmallImage() {
+		BufferedImage bi = image(100, 50);
+		assertSame(bi, ImageUtil.scaleImageToMaxTargetWidth(bi, 300));
+	}
+
+	@Test
+	public void testStreamFromBufferedImage() throws IOException {
+		BufferedImage source = image(200, 100);
+		byte[] expected = encode(source, "png");
+
+		ImageUtil.InputStreamAndSize sas = ImageUtil.streamFromBufferedImage(source, "png");
+		assertEquals(expected.length, sas.getBytes());
+		assertArrayEquals(expected, sas.getStream().readAllBytes());
+	}
+
+	@Test
+	public void testEncode() throws IOException {
+		BufferedImage source = image(200, 100);
+		byte[] expected = encode(source, "png");
+
+		EncodedImage encoded = ImageUtil.encode(source, "png");
+		assertEquals(expected.length, encoded.size());
+		assertArrayEquals(expected, encoded.inputStream().readAllBytes());
+
+		ByteBuffer b = encoded.byteBuffer();
+		assertEquals(expected.length, b.remaining());
+		assertEquals(ByteBuffer.wrap(expected), b);
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		encoded.writeTo(Channels.newChannel(os));
+		assertArrayEquals(expected, os.toByteArray());
+
+		encoded.close();
+		assertThrows(IllegalStateException.class, encoded::inputStream);
+		// closing twice is harmless
+		encoded.close();
+
+		// a recycled buffer still gives the right bytes
+		try (EncodedImage again = ImageUtil.encode(image(20, 10), "png")) {
+			assertArrayEquals(encode(image(20, 10), "png"), again.inputStream().readAllBytes());
+		}
+	}
+
+	@Test
+	public void testEncodeNoWriter() {
+		assertThrows(IllegalArgumentException.class, () -> ImageUtil.encode(image(20, 10), "nope"));
+	}
+
+	@Test
+	public void testWriteImage() throws IOException {
+		BufferedImage source = image(300, 200);
+		byte[] expected = encode(source, "jpg");
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		assertEquals(expected.length, ImageUtil.writeImage(source, "jpg", os));
+		assertArrayEquals(expected, os.toByteArray());
+
+		ByteArrayOutputStream viaChannel = new ByteArrayOutputStream();
+		assertEquals(expected.length, ImageUtil.writeImage(source, "jpg", Channels.newChannel(viaChannel)));
+		assertArrayEquals(expected, viaChannel.toByteArray());
+	}
+
+	@Test
+	public void testEncodeOptions() throws IOException {
+		BufferedImage source = ImageScalerTest.render(600, 400, BufferedImage.TYPE_INT_RGB, (x, y) -> (x * x + y * 3) % 256);
+
+		int low;
+		int high;
+		try (EncodedImage e = ImageUtil.encode(source, EncodeOptions.of("jpg").withQuality(0.3f))) {
+			low = e.size();
+		}
+		try (EncodedImage e = ImageUtil.encode(source, EncodeOptions.of("jpg").withQuality(0.95f))) {
+			high = e.size();
+			assertEquals(600, ImageIO.read(e.inputStream()).getWidth());
+		}
+		assertTrue(low < high, low + " < " + high);
+
+		try (EncodedImage e = ImageUtil.encode(source, EncodeOptions.JPEG_SMALL)) {
+			// a progressive JPEG has a SOF2 frame header
+			assertTrue(hasMarker(e.inputStream().readAllBytes(), 0xC2));
+			assertEquals(400, ImageIO.read(e.inputStream()).getHeight());
+		}
+		try (EncodedImage e = ImageUtil.encode(source, EncodeOptions.JPEG_HIGH)) {
+			assertFalse(hasMarker(e.inputStream().readAllBytes(), 0xC2));
+		}
+
+		// PNG is lossless whatever the effort
+		BufferedImage flat = image(600, 400);
+		byte[] fast;
+		byte[] small;
+		try (EncodedImage e = ImageUtil.encode(flat, EncodeOptions.PNG_FAST)) {
+			fast = e.inputStream().readAllBytes();
+		}
+		try (EncodedImage e = ImageUtil.encode(flat, EncodeOptions.PNG_SMALL)) {
+			small = e.inputStream().readAllBytes();
+		}
+		assertTrue(small.length < fast.length, small.length + " < " + fast.length);
+		assertEquals(Double.POSITIVE_INFINITY, ImageScalerTest.psnr(flat, ImageIO.read(new ByteArrayInputStream(fast))));
+		assertEquals(Double.POSITIVE_INFINITY, ImageScalerTest.psnr(flat, ImageIO.read(new ByteArrayInputStream(small))));
+
+		assertThrows(IllegalArgumentException.class, () -> EncodeOptions.of("jpg").withQuality(1.5f));
+		assertThrows(IllegalArgumentException.class, () -> ImageUtil.encode(source, EncodeOptions.of("bmp").withProgressive(true)));
+	}
+
+	@Test
+	public void testPooledWriterReuse() throws IOException {
+		BufferedImage source = image(300, 200);
+		byte[] first = ImageUtil.encode(source, "jpg").inputStream().readAllBytes();
+
+		// a JPEG writer can't take alpha; that must not spoil the pooled writer
+		BufferedImage translucent = new BufferedImage(30, 20, BufferedImage.TYPE_INT_ARGB);
+		assertThrows(IllegalArgumentException.class, () -> ImageUtil.encode(translucent, "jpg"));
+		assertThrows(IllegalArgumentException.class, () -> ImageUtil.encode(source, EncodeOptions.of("jpg").withCompressionType("nope")));
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		ImageUtil.writeImage(source, EncodeOptions.of("jpg"), os);
+		assertArrayEquals(first, os.toByteArray());
+		assertArrayEquals(first, ImageUtil.streamFromBufferedImage(source, "jpg").getStream().readAllBytes());
+	}
+
+	private static boolean hasMarker(byte[] jpeg, int marker) {
+		for (int i = 0; i + 1 < jpeg.length; i++) {
+			if ((jpeg[i] & 0xff) == 0xff && (jpeg[i + 1] & 0xff) == marker) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void testProbe() throws IOException {
+		ImageInfo png = ImageUtil.probe(new ByteArrayInputStream(encode(image(640, 480), "png")));
+		assertEquals(new ImageInfo(640, 480, "png", 1), png);
+		assertFalse(png.isQuarterTurned());
+
+		ImageInfo jpeg = ImageUtil.probe(new ByteArrayInputStream(encode(image(640, 480), "jpg")));
+		assertEquals(new ImageInfo(640, 480, "jpeg", 1), jpeg);
+
+		assertNull(ImageUtil.probe(new ByteArrayInputStream(new byte[] { 1, 2, 3 })));
+	}
+
+	@Test
+	public void testProbeExifOrientation() throws IOException {
+		byte[] jpeg = encode(image(640, 480), "jpg");
+		for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+			ImageInfo info = ImageUtil.probe(new ByteArrayInputStream(withOrientation(jpeg, 6, order)));
+			assertEquals(new ImageInfo(640, 480, "jpeg", 6), info, order.toString());
+			assertTrue(info.isQuarterTurned());
+			assertEquals(480, info.getDisplayWidth());
+			assertEquals(640, info.getDisplayHeight());
+		}
+		// out of range values are ignored
+		assertEquals(1, ImageUtil.probe(new ByteArrayInputStream(withOrientation(jpeg, 9, ByteOrder.BIG_ENDIAN)))
+				.getOrientation());
+
+		// the image still decodes after the EXIF segment
+		BufferedImage bi = ImageUtil.bufferedImageFromStream(
+				new ByteArrayInputStream(withOrientation(jpeg, 3, ByteOrder.BIG_ENDIAN)), 100);
+		assertEquals(100, bi.getWidth());
+	}
+
+	@Test
+	public void testProbeFile(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("photo.jpg");
+		Files.write(file, withOrientation(encode(image(800, 600), "jpg"), 8, ByteOrder.LITTLE_ENDIAN));
+		assertEquals(new ImageInfo(800, 600, "jpeg", 8), ImageUtil.probe(file));
+
+		Path notImage = dir.resolve("notes.txt");
+		Files.writeString(notImage, "hello");
+		assertNull(ImageUtil.probe(notImage));
+	}
+
+	/**
+	 * Insert an APP1 Exif segment holding just an orientation tag after a JPEG's SOI marker
+	 */
+	static byte[] withOrientation(byte[] jpeg, int orientation, ByteOrder order) {
+		ByteBuffer tiff = ByteBuffer.allocate(8 + 2 + 12 + 4).order(order);
+		tiff.putShort(order == ByteOrder.BIG_ENDIAN ? (short) 0x4D4D : (short) 0x4949)
+				.putShort((short) 42).putInt(8)
+				.putShort((short) 1)
+				.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0)
+				.putInt(0);
+
+		ByteBuffer out = ByteBuffer.allocate(jpeg.length + 4 + 6 + tiff.capacity());
+		out.put(jpeg, 0, 2);
+		out.putShort((short) 0xFFE1).putShort((short) (2 + 6 + tiff.capacity()));
+		out.put("Exif".getBytes()).putShort((short) 0);
+		out.put(tiff.array());
+		out.put(jpeg, 2, jpeg.length - 2);
+		return out.array();
+	}
+
+	static BufferedImage image(int width, int height) {
+		BufferedImage bi = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = bi.createGraphics();
+		g.setColor(Color.RED);
+		g.fillRect(0, 0, width / 2, height);
+		g.setColor(Color.BLUE);
+		g.fillRect(width / 2, 0, width - width / 2, height);
+		g.dispose();
+		return bi;
+	}
+
+	static byte[] encode(BufferedImage bi, String format) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		ImageIO.write(bi, format, os);
+		return os.toByteArray();
+	}
+}
@@ -0,0 +1,57 @@
+package net.rockscience.util.image;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+public class ImageWriterPoolTest {
+
+	@Test
+	public void testWritersAreSharedBetweenThreads() throws Exception {
+		BufferedImage bi = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < bi.getHeight(); y++) {
+			for (int x = 0; x < bi.getWidth(); x++) {
+				bi.setRGB(x, y, x * 4 << 16 | y * 5 << 8 | (x ^ y));
+			}
+		}
+		EncodeOptions[] options = { EncodeOptions.PNG_SMALL, EncodeOptions.PNG_FAST, EncodeOptions.JPEG_HIGH };
+		byte[][] expected = new byte[options.length][];
+		for (int i = 0; i < options.length; i++) {
+			expected[i] = write(bi, options[i]);
+		}
+
+		// a thread per image, as on virtual threads, with the settings changing between images
+		// on the same writers: each must come out as if written alone
+		try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+			List<Future<byte[]>> results = new ArrayList<>();
+			for (int i = 0; i < 60; i++) {
+				EncodeOptions o = options[i % options.length];
+				results.add(pool.submit(() -> write(bi, o)));
+			}
+			for (int i = 0; i < results.size(); i++) {
+				assertArrayEquals(expected[i % options.length], results.get(i).get(), "image " + i);
+			}
+		}
+	}
+
+	private static byte[] write(BufferedImage bi, EncodeOptions options) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ImageOutputStream ios = ImageIO.createImageOutputStream(bytes)) {
+			assertTrue(ImageWriterPool.write(bi, options, ios));
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,123 @@
+package net.rockscience.util.image;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class RenditionCacheTest {
+
+	private byte[] source;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		source = ImageUtilTest.encode(ImageUtilTest.image(1200, 800), "png");
+	}
+
+	@Test
+	public void testHeapHit() throws IOException {
+		RenditionCache cache = new RenditionCache(10_000_000);
+
+		Rendition r = cache.get(source, 300, "png");
+		BufferedImage bi = ImageIO.read(r.inputStream());
+		assertEquals(300, bi.getWidth());
+		assertEquals(200, bi.getHeight());
+
+		// same content in a different array is the same rendition
+		assertSame(r, cache.get(source.clone(), 300, "PNG"));
+		assertNotSame(r, cache.get(source, 300, "jpg"));
+		assertNotSame(r, cache.get(source, 100, "png"));
+
+		RenditionCacheStats stats = cache.getStats();
+		assertEquals(1, stats.getHeapHitCount());
+		assertEquals(3, stats.getHeapMissCount());
+		assertEquals(3, stats.getRenderCount());
+		assertEquals(0.25, stats.getHitRate(), 1e-9);
+		assertEquals(3, stats.getHeapSize());
+		assertTrue(stats.getHeapBytes() > r.size());
+	}
+
+	@Test
+	public void testHeapBound() throws IOException {
+		int size = new RenditionCache(10_000_000).get(source, 300, "png").size();
+		RenditionCache cache = new RenditionCache(size * 2L + size / 2);
+		for (int width = 300; width > 290; width--) {
+			cache.get(source, width, "png");
+		}
+		assertTrue(cache.getStats().getHeapBytes() <= size * 2L + size / 2);
+		assertTrue(cache.getStats().getHeapSize() <= 2);
+	}
+
+	@Test
+	public void testLargeRenditionStays() throws IOException {
+		// nearly the whole budget: split over segments it would never fit in its share
+		int size = new RenditionCache(10_000_000).get(source, 300, "png").size();
+		RenditionCache cache = new RenditionCache(size + size / 5);
+		Rendition r = cache.get(source, 300, "png");
+		assertSame(r, cache.get(source, 300, "png"));
+		assertEquals(1, cache.getStats().getRenderCount());
+
+		cache = new RenditionCache(size * 8L, size);
+		r = cache.get(source, 300, "png");
+		assertSame(r, cache.get(source, 300, "png"));
+	}
+
+	@Test
+	public void testDiskTier(@TempDir Path dir) throws IOException {
+		RenditionCache first = new RenditionCache(10_000_000).withDiskTier(dir.resolve("renditions"));
+		Rendition rendered = first.get(source, 300, "jpg");
+		assertEquals(1, first.getStats().getRenderCount());
+
+		// a new cache, as after a restart, finds it on disk
+		RenditionCache second = new RenditionCache(10_000_000).withDiskTier(dir.resolve("renditions"));
+		Rendition fromDisk = second.get(source, 300, "jpg");
+		assertEquals(rendered.byteBuffer(), fromDisk.byteBuffer());
+		assertSame(fromDisk, second.get(source, 300, "jpg"));
+
+		RenditionCacheStats stats = second.getStats();
+		assertEquals(0, stats.getRenderCount());
+		assertEquals(1, stats.getDiskHitCount());
+		assertEquals(1, stats.getHeapHitCount());
+		assertEquals(1.0, stats.getHitRate(), 1e-9);
+
+		// clearing the heap falls back to disk
+		second.clear();
+		second.get(source, 300, "jpg");
+		assertEquals(2, second.getStats().getDiskHitCount());
+		try (var files = Files.list(dir.resolve("renditions"))) {
+			assertEquals(1, files.count());
+		}
+	}
+
+	@Test
+	public void testFileSource(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("photo.png");
+		Files.write(file, source);
+
+		RenditionCache cache = new RenditionCache(10_000_000);
+		Rendition r = cache.get(file, 300, "png");
+		// keyed by content, not by name
+		assertSame(r, cache.get(source, 300, "png"));
+	}
+
+	@Test
+	public void testFailure() {
+		RenditionCache cache = new RenditionCache(10_000_000);
+		assertThrows(IOException.class, () -> cache.get(new byte[] { 1, 2, 3 }, 300, "png"));
+		assertThrows(IllegalArgumentException.class, () -> cache.get(source, 0, "png"));
+		assertEquals(1, cache.getStats().getRenderFailureCount());
+		assertEquals(0.0, cache.getStats().getHitRate(), 1e-9);
+	}
+}
@@ -0,0 +1,171 @@
+package net.rockscience.util.image;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+
+import net.rockscience.util.image.ThumbnailBatch.RenditionSink;
+import net.rockscience.util.image.ThumbnailBatch.Source;
+
+public class ThumbnailBatchTest {
+
+	@Test
+	public void testRenditions() throws Exception {
+		List<Source> sources = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			sources.add(Source.of("img" + i, ImageUtilTest.encode(ImageUtilTest.image(800 + i * 100, 400), "png")));
+		}
+
+		Map<String, BufferedImage> out = new ConcurrentHashMap<>();
+		ThumbnailBatch batch = new ThumbnailBatch("png", 100, 500).withThreads(3).withQueueSize(2);
+		assertArrayEquals(new int[] { 500, 100 }, batch.getWidths());
+
+		ThumbnailBatchStats stats = batch.run(sources,
+				(source, width, image) -> out.put(source.getId() + "@" + width, ImageIO.read(image.inputStream())));
+
+		assertEquals(6, stats.getSourceCount());
+		assertEquals(12, stats.getRenditionCount());
+		assertEquals(0, stats.getFailureCount());
+		assertTrue(stats.getDecodeNanos() > 0);
+		assertTrue(stats.getEncodeNanos() > 0);
+		assertEquals(12, out.size());
+		for (int i = 0; i < 6; i++) {
+			assertEquals(500, out.get("img" + i + "@500").getWidth());
+			assertEquals(100, out.get("img" + i + "@100").getWidth());
+		}
+		assertEquals(500 * 400 / 1300, out.get("img5@500").getHeight());
+	}
+
+	@Test
+	public void testFailuresDontStopTheBatch() throws Exception {
+		List<Source> sources = List.of(
+				Source.of("good", ImageUtilTest.encode(ImageUtilTest.image(400, 200), "png")),
+				Source.of("garbage", new byte[] { 1, 2, 3 }),
+				Source.of("unreadable", () -> {
+					throw new IOException("gone");
+				}));
+
+		List<String> failed = new ArrayList<>();
+		AtomicInteger accepted = new AtomicInteger();
+		ThumbnailBatchStats stats = new ThumbnailBatch("png", 100).withThreads(1).run(sources, new RenditionSink() {
+			@Override
+			public void accept(Source source, int width, EncodedImage image) {
+				accepted.incrementAndGet();
+			}
+
+			@Override
+			public void failed(Source source, Throwable ex) {
+				failed.add(source.getId());
+			}
+		});
+
+		assertEquals(3, stats.getSourceCount());
+		assertEquals(2, stats.getFailureCount());
+		assertEquals(1, accepted.get());
+		assertEquals(List.of("garbage", "unreadable"), failed);
+	}
+
+	@Test
+	public void testErrorsDontKillTheWorker() throws Exception {
+		byte[] png = ImageUtilTest.encode(ImageUtilTest.image(400, 200), "png");
+		List<Source> sources = new ArrayList<>();
+		sources.add(Source.of("huge", () -> {
+			throw new OutOfMemoryError("Java heap space");
+		}));
+		sources.add(Source.of("sinkError", png));
+		// more than the queue holds, so a dead worker would leave the producer blocked
+		for (int i = 0; i < 5; i++) {
+			sources.add(Source.of("good" + i, png));
+		}
+
+		List<String> failed = new ArrayList<>();
+		AtomicInteger accepted = new AtomicInteger();
+		ThumbnailBatchStats stats = assertTimeoutPreemptively(Duration.ofSeconds(30),
+				() -> new ThumbnailBatch("png", 100).withThreads(1).withQueueSize(1).run(sources, new RenditionSink() {
+					@Override
+					public void accept(Source source, int width, EncodedImage image) {
+						if (source.getId().equals("sinkError")) {
+							throw new StackOverflowError();
+						}
+						accepted.incrementAndGet();
+					}
+
+					@Override
+					public void failed(Source source, Throwable ex) {
+						failed.add(source.getId() + ":" + ex.getClass().getSimpleName());
+						// and a failing failure handler
+						throw new AssertionError("sink down");
+					}
+				}));
+
+		assertEquals(7, stats.getSourceCount());
+		assertEquals(2, stats.getFailureCount());
+		assertEquals(5, accepted.get());
+		assertEquals(List.of("huge:OutOfMemoryError", "sinkError:StackOverflowError"), failed);
+	}
+
+	@Test
+	public void testBackpressure() throws Exception {
+		byte[] png = ImageUtilTest.encode(ImageUtilTest.image(300, 200), "png");
+		AtomicInteger pulled = new AtomicInteger();
+		AtomicInteger done = new AtomicInteger();
+		AtomicInteger maxOutstanding = new AtomicInteger();
+
+		// a lazy batch that notes how far ahead of the workers it has been read
+		Iterable<Source> sources = () -> new Iterator<Source>() {
+			@Override
+			public boolean hasNext() {
+				return pulled.get() < 40;
+			}
+
+			@Override
+			public Source next() {
+				int outstanding = pulled.incrementAndGet() - done.get();
+				maxOutstanding.accumulateAndGet(outstanding, Math::max);
+				return Source.of("img", png);
+			}
+		};
+
+		ThumbnailBatchStats stats = new ThumbnailBatch("png", 50).withThreads(2).withQueueSize(3)
+				.run(sources, (source, width, image) -> {
+					sleep(2);
+					done.incrementAndGet();
+				});
+
+		assertEquals(40, stats.getRenditionCount());
+		// the queue, one source per worker and the one being put
+		assertTrue(maxOutstanding.get() <= 3 + 2 + 1, "outstanding " + maxOutstanding.get());
+	}
+
+	@Test
+	public void testBadConfig() {
+		assertThrows(IllegalArgumentException.class, () -> new ThumbnailBatch("png"));
+		assertThrows(IllegalArgumentException.class, () -> new ThumbnailBatch("png", 0));
+		assertThrows(IllegalArgumentException.class, () -> new ThumbnailBatch("png", 10).withThreads(0));
+	}
+
+	private static void sleep(long ms) {
+		try {
+			Thread.sleep(ms);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
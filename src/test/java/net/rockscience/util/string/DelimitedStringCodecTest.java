@@ -0,0 +1,133 @@
+package net.rockscience.util.string;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class DelimitedStringCodecTest {
+
+	@Test
+	public void testPlainValuesAreJoined() {
+		DelimitedStringCodec underTest = new DelimitedStringCodec(",");
+		List<String> values = List.of("A", " B ", "C D");
+		assertEquals("A, B ,C D", underTest.encode(values));
+		assertEquals(values, underTest.decode("A, B ,C D"));
+	}
+
+	@Test
+	public void testQuoting() {
+		DelimitedStringCodec underTest = new DelimitedStringCodec(",");
+		List<String> values = List.of("a", "b,c", "say \"hi\"", "");
+		String encoded = underTest.encode(values);
+		assertEquals("a,\"b,c\",\"say \"\"hi\"\"\",\"\"", encoded);
+		assertEquals(values, underTest.decode(encoded));
+	}
+
+	@Test
+	public void testEmpty() {
+		DelimitedStringCodec underTest = new DelimitedStringCodec("|");
+		assertEquals("", underTest.encode(Collections.emptyList()));
+		assertEquals(Collections.emptyList(), underTest.decode(""));
+		assertEquals(Collections.emptyList(), underTest.decode(null));
+
+		// one empty value is not the same as none
+		assertEquals("\"\"", underTest.encode(List.of("")));
+		assertEquals(List.of(""), underTest.decode("\"\""));
+		assertEquals(List.of("", ""), underTest.decode("|"));
+		assertEquals(List.of("", ""), underTest.decode("\"\"|"));
+
+		assertEquals(List.of("a", ""), underTest.decode(underTest.encode(Arrays.asList("a", null))));
+	}
+
+	@Test
+	public void testRegexCharsAreLiteral() {
+		for (String delimiter : new String[] { ".", "*", "|", "\\s+", "$" }) {
+			DelimitedStringCodec underTest = new DelimitedStringCodec(delimiter);
+			List<String> values = List.of("a", "b" + delimiter + "c", "d");
+			assertEquals(values, underTest.decode(underTest.encode(values)), delimiter);
+			assertEquals(List.of("x", "y"), underTest.decode("x" + delimiter + "y"), delimiter);
+		}
+	}
+
+	@Test
+	public void testMultiCharDelimiter() {
+		DelimitedStringCodec underTest = new DelimitedStringCodec("::");
+		assertEquals(List.of("a:b", "c"), underTest.decode("a:b::c"));
+		assertEquals("a:b::c", underTest.encode(List.of("a:b", "c")));
+
+		// would run into the delimiter and split one char early
+		assertTrue(underTest.needsQuoting("a:"));
+		assertFalse(underTest.needsQuoting(":a"));
+		List<String> values = List.of("a:", ":b", "::");
+		assertEquals("\"a:\":::b::\"::\"", underTest.encode(values));
+		assertEquals(values, underTest.decode(underTest.encode(values)));
+
+		DelimitedStringCodec abab = new DelimitedStringCodec("abab");
+		assertTrue(abab.needsQuoting("xab"));
+		assertFalse(abab.needsQuoting("xaba"));
+		assertFalse(abab.needsQuoting("xa"));
+	}
+
+	@Test
+	public void testQuoteInsideUnquotedValue() {
+		DelimitedStringCodec underTest = new DelimitedStringCodec(",");
+		assertEquals(List.of("a\"b", "c"), underTest.decode("a\"b,c"));
+	}
+
+	@Test
+	public void testBrokenInput() {
+		DelimitedStringCodec underTest = new DelimitedStringCodec(",");
+		assertThrows(IllegalArgumentException.class, () -> underTest.decode("a,\"b"));
+		assertThrows(IllegalArgumentException.class, () -> underTest.decode("\"a\"b,c"));
+		assertThrows(IllegalArgumentException.class, () -> underTest.decode("\"a\"\""));
+	}
+
+	@Test
+	public void testBadDelimiter() {
+		assertThrows(IllegalArgumentException.class, () -> new DelimitedStringCodec(""));
+		assertThrows(IllegalArgumentException.class, () -> new DelimitedStringCodec(null));
+		assertThrows(IllegalArgumentException.class, () -> new DelimitedStringCodec("\","));
+		assertThrows(IllegalArgumentException.class, () -> new DelimitedStringCodec("|'|", '\''));
+	}
+
+	@Test
+	public void testOtherQuote() {
+		DelimitedStringCodec underTest = new DelimitedStringCodec(",", '\'');
+		List<String> values = List.of("it's", "a,b", "\"");
+		assertEquals("'it''s','a,b',\"", underTest.encode(values));
+		assertEquals(values, underTest.decode(underTest.encode(values)));
+	}
+
+	@Test
+	public void testRandomRoundTrip() {
+		Random random = new Random(42);
+		String[] delimiters = { ",", "|", "::", "<>", "abab", "\t" };
+		// mostly the chars the delimiters and quote are made of
+		char[] alphabet = { ',', '|', ':', '<', '>', 'a', 'b', '\t', '"', ' ', 'x', '\n' };
+		for (String delimiter : delimiters) {
+			DelimitedStringCodec underTest = new DelimitedStringCodec(delimiter);
+			for (int i = 0; i < 2000; i++) {
+				List<String> values = new ArrayList<>();
+				int count = random.nextInt(5);
+				for (int v = 0; v < count; v++) {
+					char[] chars = new char[random.nextInt(6)];
+					for (int c = 0; c < chars.length; c++) {
+						chars[c] = alphabet[random.nextInt(alphabet.length)];
+					}
+					values.add(new String(chars));
+				}
+				String encoded = underTest.encode(values);
+				assertEquals(values, underTest.decode(encoded), "'" + delimiter + "' " + encoded);
+			}
+		}
+	}
+}
@@ -2,9 +2,16 @@ package net.rockscience.util.string;
 
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -79,4 +86,83 @@ public class DelimitedStringListTest {
 		assertEquals("A|B|C", s);
 	}
 	
+	@Test
+	public void testRegexCharsAreLiteral() {
+		assertEquals(List.of("A", "B", "C"), new DelimitedStringList(".").toList("A.B . C"));
+		assertEquals(List.of("A", "B"), new DelimitedStringList("*").toList("A*B"));
+		assertEquals(List.of("A|B", "C"), new DelimitedStringList("\\s+").toList("A|B\\s+C"));
+	}
+	
+	@Test
+	public void testMultiCharDelimiter() {
+		DelimitedStringList underTest = new DelimitedStringList("::");
+		assertEquals(List.of("A", "B:C", "D"), underTest.toList(" A::B:C:: ::D::"));
+		assertEquals("A::B", underTest.toDelimitedString(List.of("A", "B")));
+	}
+	
+	@Test
+	public void testEmptyDelimiter() {
+		// as String.split("") did, every char is a value
+		assertEquals(List.of("A", "B", "C"), new DelimitedStringList("").toList(" AB C "));
+	}
+	
+	@Test
+	public void testForEachToken() {
+		StringBuilder sb = new StringBuilder("  A| |Bee || C|||  ");
+		List<String> found = new ArrayList<>();
+		underTestPipe.forEachToken(sb, (source, start, end) -> {
+			assertTrue(source == sb);
+			found.add(source.subSequence(start, end).toString());
+		});
+		assertEquals(List.of("A", "Bee", "C"), found);
+		
+		underTestPipe.forEachToken(null, (source, start, end) -> found.add("none"));
+		underTestPipe.forEachToken(" | ", (source, start, end) -> found.add("none"));
+		assertEquals(3, found.size());
+	}
+	
+	@Test
+	public void testTokens() {
+		StringBuilder sb = new StringBuilder("a, b ,, c");
+		Iterator<CharSequence> it = underTestComma.tokens(sb).iterator();
+		assertTrue(it.hasNext());
+		assertTrue(it.hasNext());
+		assertEquals("a", it.next().toString());
+		assertEquals("b", it.next().toString());
+		assertEquals("c", it.next().toString());
+		assertFalse(it.hasNext());
+		assertThrows(NoSuchElementException.class, it::next);
+		
+		assertEquals(List.of("a", "b", "c"), StreamSupport.stream(underTestComma.tokens(sb).spliterator(), false)
+				.map(CharSequence::toString).collect(Collectors.toList()));
+		assertFalse(underTestComma.tokens(null).iterator().hasNext());
+	}
+	
+	@Test
+	public void testMatchesSplit() {
+		// the tokenizer against the old trim, split and trim, for inputs without regex chars
+		String[] inputs = { "", " ", ",", ",,", "a", " a ", "a,", ",a", "a,,b", " a , b , ", "\tx,\ny\r", "a b,c d" };
+		for (String in : inputs) {
+			List<String> expected = new ArrayList<>();
+			for (String t : in.trim().split(",")) {
+				if (!t.trim().isEmpty()) {
+					expected.add(t.trim());
+				}
+			}
+			assertEquals(expected, underTestComma.toList(in), "input '" + in + "'");
+		}
+	}
+	
+	@Test
+	public void testEncodeDecode() {
+		List<String> values = List.of("A", "B|C", " D ", "");
+		String encoded = underTestPipe.encode(values);
+		assertEquals("A|\"B|C\"| D |\"\"", encoded);
+		assertEquals(values, underTestPipe.decode(encoded));
+		// the lossy split of the same string
+		assertEquals(List.of("A", "\"B", "C\"", "D", "\"\""), underTestPipe.toList(encoded));
+		
+		assertThrows(IllegalArgumentException.class, () -> new DelimitedStringList("").encode(values));
+	}
+	
 }